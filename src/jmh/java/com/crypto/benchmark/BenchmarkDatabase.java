@@ -0,0 +1,122 @@
+package com.crypto.benchmark;
+
+import com.crypto.Candle;
+import com.crypto.CandleBuffer;
+import com.crypto.CryptoProperties;
+import com.crypto.DatabaseManager;
+import com.crypto.ImbalanceZones;
+import com.crypto.Indicators;
+import com.crypto.LiquidationBuckets;
+import com.crypto.MarketStream;
+import com.crypto.ModelCheckpointStore;
+import com.crypto.NeuralNetwork;
+import com.crypto.PipelineMetrics;
+import com.crypto.RuntimeSettings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Временная база SQLite и буфер свечей, заполненные синтетическими свечами, индикаторами и зонами дисбаланса.
+ * Файл (вместе с -wal/-shm) и контрольные точки модели потока удаляются в {@link #close()}.
+ */
+public final class BenchmarkDatabase implements AutoCloseable {
+    public static final MarketStream STREAM = new MarketStream("BENCHUSDT", "5m");
+    // Настройки по умолчанию, как без application.properties
+    private static final CryptoProperties PROPERTIES = new CryptoProperties();
+
+    private final Path file;
+    private final DatabaseManager dbManager;
+    private final CandleBuffer candleBuffer;
+    private final Indicators indicators;
+    private final ImbalanceZones imbalanceZones;
+    private final LiquidationBuckets liquidations;
+    private final List<Candle> candles;
+
+    private BenchmarkDatabase(Path file, List<Candle> candles) {
+        this.file = file;
+        this.candles = candles;
+        this.dbManager = new DatabaseManager("jdbc:sqlite:" + file.toAbsolutePath());
+        this.candleBuffer = new CandleBuffer(candles.size());
+        this.indicators = new Indicators(STREAM, dbManager, candleBuffer, PROPERTIES.getIndicators(),
+                PipelineMetrics.noop());
+        this.liquidations = new LiquidationBuckets(STREAM, dbManager, candles.size());
+        this.imbalanceZones = new ImbalanceZones(STREAM, dbManager, candleBuffer, newSettings(
+                PROPERTIES.getTraining().getModelType(), candles.size(), PROPERTIES.getTraining().getWorkspaceMode()),
+                PROPERTIES.getImbalance());
+    }
+
+    /** Создаёт базу с candleCount свечами и рассчитанными по ним индикаторами и зонами. */
+    public static BenchmarkDatabase create(int candleCount) throws IOException {
+        Path file = Files.createTempFile("crypto-bench-", ".db");
+        List<Candle> candles = SyntheticCandles.generate(candleCount, STREAM.getTimeframeMillis(), 42);
+        BenchmarkDatabase database = new BenchmarkDatabase(file, candles);
+        database.dbManager.saveCandles(STREAM, candles);
+        database.candleBuffer.load(candles);
+        database.indicators.calculateAndSaveIndicators();
+        database.imbalanceZones.update();
+        database.imbalanceZones.persist();
+        return database;
+    }
+
+    public DatabaseManager getDbManager() {
+        return dbManager;
+    }
+
+    public CandleBuffer getCandleBuffer() {
+        return candleBuffer;
+    }
+
+    /** Модель поверх этой базы и буфера. */
+    public NeuralNetwork newNeuralNetwork(String modelType, int trainingPeriod) {
+        return newNeuralNetwork(modelType, trainingPeriod, PROPERTIES.getTraining().getWorkspaceMode());
+    }
+
+    /** workspaceMode — ENABLED или NONE, как crypto.training.workspace-mode. */
+    public NeuralNetwork newNeuralNetwork(String modelType, int trainingPeriod, String workspaceMode) {
+        CryptoProperties.Checkpoints checkpoints = PROPERTIES.getCheckpoints();
+        return new NeuralNetwork(STREAM, candleBuffer, newSettings(modelType, trainingPeriod, workspaceMode),
+                new ModelCheckpointStore(checkpoints.getDir() + "/" + STREAM.getKey(), checkpoints.getKeep()),
+                PipelineMetrics.noop());
+    }
+
+    private RuntimeSettings newSettings(String modelType, int trainingPeriod, String workspaceMode) {
+        CryptoProperties.Training training = PROPERTIES.getTraining()
+                .withUpdates(Map.of("modelType", modelType, "trainingPeriod", trainingPeriod,
+                        "workspaceMode", workspaceMode));
+        return new RuntimeSettings(training, candleBuffer.capacity());
+    }
+
+    public Indicators getIndicators() {
+        return indicators;
+    }
+
+    public ImbalanceZones getImbalanceZones() {
+        return imbalanceZones;
+    }
+
+    public List<Candle> getCandles() {
+        return candles;
+    }
+
+    @Override
+    public void close() throws IOException {
+        dbManager.close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Path.of(file + "-wal"));
+        Files.deleteIfExists(Path.of(file + "-shm"));
+        Path checkpoints = Path.of(PROPERTIES.getCheckpoints().getDir(), STREAM.getKey());
+        if (Files.exists(checkpoints)) {
+            try (Stream<Path> paths = Files.walk(checkpoints)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.crypto.benchmark;
+
+import com.crypto.Candle;
+import com.crypto.DatabaseManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись и чтение SQLite: одиночная вставка свечи (путь WebSocket), пакетная вставка
+ * (путь догрузки истории) и чтение окна свечей.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"500", "2000"})
+    public int trainingPeriod;
+
+    private BenchmarkDatabase database;
+    private DatabaseManager dbManager;
+    private List<Candle> batch;
+    private long nextTimestamp;
+
+    @Setup
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.create(trainingPeriod);
+        dbManager = database.getDbManager();
+        batch = SyntheticCandles.generate(BATCH_SIZE, BenchmarkDatabase.STREAM.getTimeframeMillis(), 7);
+        nextTimestamp = database.getCandles().get(trainingPeriod - 1).getTimestamp();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public void saveCandle() {
+        nextTimestamp += BenchmarkDatabase.STREAM.getTimeframeMillis();
+        dbManager.saveCandle(BenchmarkDatabase.STREAM, nextTimestamp, 60_000, 60_100, 59_900, 60_050, 120);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void saveCandlesBatch() {
+        // Повторная вставка тех же свечей — upsert, размер таблицы не растёт
+        dbManager.saveCandles(BenchmarkDatabase.STREAM, batch);
+    }
+
+    @Benchmark
+    public List<Candle> readCandleWindow() {
+        return dbManager.getCandles(BenchmarkDatabase.STREAM, trainingPeriod);
+    }
+}
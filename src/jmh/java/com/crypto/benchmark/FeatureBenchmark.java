@@ -0,0 +1,76 @@
+package com.crypto.benchmark;
+
+import com.crypto.Candle;
+import com.crypto.FeatureMatrix;
+import com.crypto.NeuralNetwork;
+import org.nd4j.linalg.dataset.DataSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сборка входов модели: признаки одной свечи (getInputForCandle), матрица признаков
+ * за окно обучения из буфера свечей и построение из неё тензоров DataSet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeatureBenchmark {
+    @Param({"500", "2000"})
+    public int trainingPeriod;
+
+    @Param({"MLP", "LSTM"})
+    public String modelType;
+
+    private BenchmarkDatabase database;
+    private NeuralNetwork neuralNetwork;
+    private FeatureMatrix features;
+    private List<Candle> candles;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.create(trainingPeriod);
+        neuralNetwork = database.newNeuralNetwork(modelType, trainingPeriod);
+        features = neuralNetwork.loadFeatures(trainingPeriod);
+        candles = database.getCandles();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public double[] inputForCandle() {
+        Candle candle = candles.get(next);
+        next = (next + 1) % candles.size();
+        return neuralNetwork.getInputForCandle(candle);
+    }
+
+    @Benchmark
+    public FeatureMatrix loadFeatures() {
+        return neuralNetwork.loadFeatures(trainingPeriod);
+    }
+
+    @Benchmark
+    public DataSet buildDataSet() {
+        return neuralNetwork.buildDataSet(features, features.getMaxClose());
+    }
+}
@@ -0,0 +1,71 @@
+package com.crypto.benchmark;
+
+import com.crypto.Candle;
+import com.crypto.ImbalanceZone;
+import com.crypto.ImbalanceZones;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запросы к зонам дисбаланса из индекса в памяти: влияние на цену и список зон в диапазоне ±2%
+ * по ценам закрытия окна по кругу.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImbalanceZoneBenchmark {
+    @Param({"500", "2000"})
+    public int candleCount;
+
+    private BenchmarkDatabase database;
+    private ImbalanceZones imbalanceZones;
+    private double[] prices;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.create(candleCount);
+        imbalanceZones = database.getImbalanceZones();
+        List<Candle> candles = database.getCandles();
+        prices = new double[candles.size()];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = candles.get(i).getClose();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public double influence() {
+        double price = prices[next];
+        next = (next + 1) % prices.length;
+        return imbalanceZones.getImbalanceInfluence(price);
+    }
+
+    @Benchmark
+    public List<ImbalanceZone> zonesWithin() {
+        double price = prices[next];
+        next = (next + 1) % prices.length;
+        return imbalanceZones.zonesWithin(price, 2.0);
+    }
+}
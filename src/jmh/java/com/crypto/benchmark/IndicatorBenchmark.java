@@ -0,0 +1,75 @@
+package com.crypto.benchmark;
+
+import com.crypto.Candle;
+import com.crypto.CryptoProperties;
+import com.crypto.StreamingIndicators;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расчёт индикаторов: полный прогрев по окну истории (то, что делается при старте и после разрыва)
+ * и одно инкрементальное обновление по новой свече.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndicatorBenchmark {
+    @Param({"500", "2000", "5000"})
+    public int trainingPeriod;
+
+    private double[] highs;
+    private double[] lows;
+    private double[] closes;
+    private StreamingIndicators warmEngine;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Candle> candles = SyntheticCandles.generate(trainingPeriod, 300_000L, 42);
+        highs = new double[trainingPeriod];
+        lows = new double[trainingPeriod];
+        closes = new double[trainingPeriod];
+        for (int i = 0; i < trainingPeriod; i++) {
+            Candle candle = candles.get(i);
+            highs[i] = candle.getHigh();
+            lows[i] = candle.getLow();
+            closes[i] = candle.getClose();
+        }
+        warmEngine = new StreamingIndicators(new CryptoProperties().getIndicators());
+        for (int i = 0; i < trainingPeriod; i++) {
+            warmEngine.update(highs[i], lows[i], closes[i]);
+        }
+    }
+
+    @Benchmark
+    public void warmUpWindow(Blackhole blackhole) {
+        StreamingIndicators engine = new StreamingIndicators(new CryptoProperties().getIndicators());
+        for (int i = 0; i < trainingPeriod; i++) {
+            blackhole.consume(engine.update(highs[i], lows[i], closes[i]));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double[] updateOneCandle() {
+        int i = next;
+        next = (i + 1) % trainingPeriod;
+        return warmEngine.update(highs[i], lows[i], closes[i]);
+    }
+}
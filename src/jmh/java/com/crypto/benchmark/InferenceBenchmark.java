@@ -0,0 +1,73 @@
+package com.crypto.benchmark;
+
+import com.crypto.FeatureMatrix;
+import com.crypto.NeuralNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Прогноз обученной модели: один шаг по новой строке признаков (для LSTM — rnnTimeStep
+ * по прогретому состоянию) и полный пересчёт прогноза с загрузкой последних свечей из БД.
+ * workspaceMode сравнивает рабочие пространства ND4J с выделением массивов на каждый вызов;
+ * выделения на операцию показывает -prof gc (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InferenceBenchmark {
+    @Param({"500", "2000"})
+    public int trainingPeriod;
+
+    @Param({"MLP", "LSTM"})
+    public String modelType;
+
+    @Param({"ENABLED", "NONE"})
+    public String workspaceMode;
+
+    private BenchmarkDatabase database;
+    private NeuralNetwork neuralNetwork;
+    private FeatureMatrix features;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.create(trainingPeriod);
+        neuralNetwork = database.newNeuralNetwork(modelType, trainingPeriod, workspaceMode);
+        neuralNetwork.trainModel();
+        features = neuralNetwork.loadFeatures(trainingPeriod);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public double predictOneRow() {
+        double[] row = features.getRow(next);
+        next = (next + 1) % features.size();
+        return neuralNetwork.predict(row);
+    }
+
+    @Benchmark
+    public double refreshPrediction() {
+        neuralNetwork.refreshPrediction();
+        return neuralNetwork.getPredictedPrice();
+    }
+}
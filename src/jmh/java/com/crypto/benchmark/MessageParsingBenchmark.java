@@ -0,0 +1,124 @@
+package com.crypto.benchmark;
+
+import com.crypto.BybitMessageParser;
+import com.crypto.MarketStream;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор сообщений Bybit WebSocket: kline (подтверждённая и промежуточная свеча) и liquidation.
+ * Потоковый BybitMessageParser сравнивается с прежним разбором через дерево org.json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageParsingBenchmark {
+    static final String KLINE_CONFIRMED = "{\"topic\":\"kline.5.BTCUSDT\",\"data\":[{\"start\":1700000000000," +
+            "\"end\":1700000299999,\"interval\":\"5\",\"open\":\"60000.5\",\"close\":\"60050.1\"," +
+            "\"high\":\"60100.9\",\"low\":\"59950.2\",\"volume\":\"123.456\",\"turnover\":\"7412345.67\"," +
+            "\"confirm\":true,\"timestamp\":1700000299999}],\"ts\":1700000299999,\"type\":\"snapshot\"}";
+    static final String KLINE_UNCONFIRMED = KLINE_CONFIRMED.replace("\"confirm\":true", "\"confirm\":false");
+    static final String LIQUIDATION = "{\"topic\":\"liquidation.BTCUSDT\",\"type\":\"snapshot\"," +
+            "\"ts\":1700000123456,\"data\":{\"updatedTime\":1700000123456,\"symbol\":\"BTCUSDT\"," +
+            "\"side\":\"Buy\",\"size\":\"0.015\",\"price\":\"60010.0\"}}";
+
+    private final BybitMessageParser parser = new BybitMessageParser(
+            List.of(new MarketStream("BTCUSDT", "5")), Set.of("BTCUSDT"));
+    private final RecordingHandler handler = new RecordingHandler();
+
+    @Benchmark
+    public double streamingKlineConfirmed() {
+        parser.parse(KLINE_CONFIRMED, handler);
+        return handler.checksum;
+    }
+
+    @Benchmark
+    public double streamingKlineUnconfirmed() {
+        parser.parse(KLINE_UNCONFIRMED, handler);
+        return handler.checksum;
+    }
+
+    @Benchmark
+    public double streamingLiquidation() {
+        parser.parse(LIQUIDATION, handler);
+        return handler.checksum;
+    }
+
+    @Benchmark
+    public void orgJsonKlineConfirmed(Blackhole blackhole) {
+        parseWithOrgJson(KLINE_CONFIRMED, blackhole);
+    }
+
+    @Benchmark
+    public void orgJsonKlineUnconfirmed(Blackhole blackhole) {
+        parseWithOrgJson(KLINE_UNCONFIRMED, blackhole);
+    }
+
+    @Benchmark
+    public void orgJsonLiquidation(Blackhole blackhole) {
+        parseWithOrgJson(LIQUIDATION, blackhole);
+    }
+
+    /** Прежний разбор из BybitClient.onMessage (до BybitMessageParser), без записи в БД. */
+    static void parseWithOrgJson(String message, Blackhole blackhole) {
+        JSONObject json = new JSONObject(message);
+        String topic = json.optString("topic", "");
+
+        if (topic.startsWith("liquidation.")) {
+            blackhole.consume(topic.substring("liquidation.".length()));
+            blackhole.consume(json.getLong("ts"));
+            JSONObject data = json.getJSONObject("data");
+            blackhole.consume(data.getString("side").equals("Buy") ? "short" : "long");
+            blackhole.consume(data.getDouble("size"));
+        }
+
+        if (topic.startsWith("kline.")) {
+            String[] parts = topic.split("\\.");
+            blackhole.consume(parts);
+            JSONArray dataArray = json.getJSONArray("data");
+            if (dataArray.length() > 0) {
+                JSONObject data = dataArray.getJSONObject(0);
+                blackhole.consume(data.getLong("start"));
+                blackhole.consume(data.getDouble("open"));
+                blackhole.consume(data.getDouble("high"));
+                blackhole.consume(data.getDouble("low"));
+                blackhole.consume(data.getDouble("close"));
+                blackhole.consume(data.getDouble("volume"));
+                blackhole.consume(data.getBoolean("confirm"));
+            }
+        }
+    }
+
+    /** Сохраняет разобранные значения в поля состояния, чтобы JIT не выбросил разбор. */
+    private static final class RecordingHandler implements BybitMessageParser.Handler {
+        private double checksum;
+
+        @Override
+        public void onConfirmedKline(MarketStream stream, long start, double open, double high, double low,
+                                     double close, double volume) {
+            checksum = start + open + high + low + close + volume;
+        }
+
+        @Override
+        public void onLiquidation(String symbol, long timestamp, String side, double size) {
+            checksum = timestamp + size + side.length();
+        }
+    }
+}
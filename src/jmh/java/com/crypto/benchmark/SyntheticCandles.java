@@ -0,0 +1,33 @@
+package com.crypto.benchmark;
+
+import com.crypto.Candle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Детерминированный ряд свечей для бенчмарков: геометрическое случайное блуждание
+ * цены закрытия с правдоподобными high/low и объёмом. Свечи идут от старой к новой.
+ */
+public final class SyntheticCandles {
+    public static final long START_TIMESTAMP = 1_700_000_000_000L;
+
+    private SyntheticCandles() {
+    }
+
+    public static List<Candle> generate(int count, long timeframeMillis, long seed) {
+        Random random = new Random(seed);
+        List<Candle> candles = new ArrayList<>(count);
+        double close = 60_000.0;
+        for (int i = 0; i < count; i++) {
+            double open = close;
+            close = open * Math.exp(random.nextGaussian() * 0.002);
+            double high = Math.max(open, close) * (1 + random.nextDouble() * 0.001);
+            double low = Math.min(open, close) * (1 - random.nextDouble() * 0.001);
+            double volume = 50 + random.nextDouble() * 450;
+            candles.add(new Candle(START_TIMESTAMP + i * timeframeMillis, open, high, low, close, volume));
+        }
+        return candles;
+    }
+}
@@ -0,0 +1,64 @@
+package com.crypto.benchmark;
+
+import com.crypto.NeuralNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Один полный проход trainModel (загрузка окна, все эпохи, контрольная точка) на свежей модели.
+ * Проход длится секунды, поэтому режим — однократный замер на итерацию.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TrainingBenchmark {
+    @Param({"500", "2000"})
+    public int trainingPeriod;
+
+    @Param({"MLP", "LSTM"})
+    public String modelType;
+
+    @Param({"ENABLED", "NONE"})
+    public String workspaceMode;
+
+    private BenchmarkDatabase database;
+    private NeuralNetwork neuralNetwork;
+
+    @Setup(Level.Trial)
+    public void setUpDatabase() throws IOException {
+        database = BenchmarkDatabase.create(trainingPeriod);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpModel() {
+        neuralNetwork = database.newNeuralNetwork(modelType, trainingPeriod, workspaceMode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public double trainModel() {
+        neuralNetwork.trainModel();
+        return neuralNetwork.getPredictedPrice();
+    }
+}
@@ -0,0 +1,119 @@
+package com.crypto;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Параметры обучения на ходу. PATCH /admin/settings принимает JSON с изменяемыми полями
+ * (имена как в ответе GET), например {"lstmEpochs": 20, "trainingPeriod": 1000}.
+ * Новые значения действуют со следующего цикла обучения; при смене архитектуры модели
+ * каждому потоку ставится цикл, в котором модель пересоздаётся и обучается заново. Смена
+ * trainingPeriod в том же цикле перестраивает зоны дисбаланса по новому окну.
+ * Изменение настроек и /admin/database требуют заголовка X-Admin-Token, равного crypto.admin.token;
+ * пока токен не задан, они отклоняются.
+ */
+@RestController
+public class AdminController {
+    private final RuntimeSettings settings;
+    private final StreamRegistry streamRegistry;
+    private final TrainingPipeline trainingPipeline;
+    private final DatabaseManager dbManager;
+    private final byte[] token;
+
+    public AdminController(RuntimeSettings settings, StreamRegistry streamRegistry,
+                           TrainingPipeline trainingPipeline, DatabaseManager dbManager,
+                           CryptoProperties properties) {
+        this.settings = settings;
+        this.streamRegistry = streamRegistry;
+        this.trainingPipeline = trainingPipeline;
+        this.dbManager = dbManager;
+        this.token = properties.getAdmin().getToken().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @GetMapping("/admin/settings")
+    public CryptoProperties.Training getSettings() {
+        return settings.get();
+    }
+
+    /**
+     * Число строк по таблицам, размер файла и планы основных запросов. Подсчёт строк — полный
+     * проход по каждой таблице, поэтому, как и PATCH, требует X-Admin-Token.
+     */
+    @GetMapping("/admin/database")
+    public Map<String, Object> getDatabase(@RequestHeader(value = "X-Admin-Token", required = false) String providedToken) {
+        requireToken(providedToken);
+        return dbManager.describeStorage();
+    }
+
+    /**
+     * Разовый перевод существующей базы в incremental auto-vacuum полным VACUUM. Выполняется
+     * синхронно и на всё время перестройки файла блокирует запись свечей и прогнозов.
+     */
+    @PostMapping("/admin/database/incremental-vacuum")
+    public Map<String, Object> convertToIncrementalVacuum(
+            @RequestHeader(value = "X-Admin-Token", required = false) String providedToken) {
+        requireToken(providedToken);
+        long started = System.currentTimeMillis();
+        boolean converted;
+        try {
+            converted = dbManager.convertToIncrementalVacuum();
+        } catch (SQLException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("converted", converted);
+        response.put("durationMs", System.currentTimeMillis() - started);
+        return response;
+    }
+
+    @PatchMapping("/admin/settings")
+    public Map<String, Object> updateSettings(@RequestBody Map<String, Object> updates,
+                                              @RequestHeader(value = "X-Admin-Token", required = false) String providedToken) {
+        requireToken(providedToken);
+        CryptoProperties.Training previous;
+        try {
+            previous = settings.update(updates);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        CryptoProperties.Training current = settings.get();
+
+        if (current.getThreads() != previous.getThreads()) {
+            trainingPipeline.setThreads(current.getThreads());
+        }
+        boolean reinitialize = !current.architecture().equals(previous.architecture());
+        if (reinitialize) {
+            // Модель пересоздаётся в цикле обучения потока, а не здесь: так она не меняется во время обучения
+            for (StreamContext context : streamRegistry.getAll()) {
+                trainingPipeline.requestRetrain(context.getStream());
+            }
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("settings", current);
+        response.put("modelReinitialized", reinitialize);
+        return response;
+    }
+
+    /** Без настроенного токена доступ закрыт; сравнение за постоянное время. */
+    private void requireToken(String providedToken) {
+        if (token.length == 0) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Admin token is not configured");
+        }
+        if (providedToken == null || !MessageDigest.isEqual(token, providedToken.getBytes(StandardCharsets.UTF_8))) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Invalid admin token");
+        }
+    }
+}
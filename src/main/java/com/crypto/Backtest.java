@@ -0,0 +1,84 @@
+package com.crypto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Запуск walk-forward бэктеста по базе crypto_data.db без Spring и WebSocket
+ * (application.properties не читается, настройки — значения по умолчанию CryptoProperties):
+ *
+ * mvn compile exec:java -Dexec.mainClass=com.crypto.Backtest -Dexec.args="--symbol ETHUSDT --timeframe 5m --days 30 --models MLP,LSTM"
+ *
+ * Параметры: --symbol, --timeframe, --days (глубина истории), --models (через запятую),
+ * --train и --test (окна в свечах), --threads (параллельность, по умолчанию — число ядер).
+ */
+public class Backtest {
+    private static final Logger log = LoggerFactory.getLogger(Backtest.class);
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parseArgs(args);
+        CryptoProperties properties = new CryptoProperties();
+        MarketStream defaultStream = MarketStream.parseList(properties.getStreams()).get(0);
+        MarketStream stream = new MarketStream(options.getOrDefault("symbol", defaultStream.getSymbol()),
+                options.getOrDefault("timeframe", defaultStream.getTimeframe()));
+        CryptoProperties.Backtest defaults = properties.getBacktest();
+        int days = Integer.parseInt(options.getOrDefault("days", String.valueOf(defaults.getDays())));
+        int trainWindow = Integer.parseInt(options.getOrDefault("train", String.valueOf(defaults.getTrainWindow())));
+        int testWindow = Integer.parseInt(options.getOrDefault("test", String.valueOf(defaults.getTestWindow())));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        List<WalkForwardBacktest.Config> configs = new ArrayList<>();
+        CryptoProperties.Training training = properties.getTraining();
+        for (String modelType : options.getOrDefault("models", training.getModelType()).split(",")) {
+            configs.add(new WalkForwardBacktest.Config(
+                    training.withUpdates(Map.of("modelType", modelType.trim())), trainWindow, testWindow));
+        }
+
+        long to = System.currentTimeMillis();
+        long from = to - days * 24L * 60 * 60 * 1000;
+        DatabaseManager dbManager = new DatabaseManager(PipelineMetrics.noop());
+        FeatureMatrix history;
+        try {
+            history = WalkForwardBacktest.loadHistory(dbManager, stream, properties.getIndicators(), from, to);
+        } finally {
+            dbManager.close();
+        }
+        log.info("Loaded {} candles for {} over {} days.", history.size(), stream, days);
+        if (history.size() <= trainWindow) {
+            log.warn("Not enough history for train window {}.", trainWindow);
+            return;
+        }
+
+        long started = System.nanoTime();
+        List<WalkForwardBacktest.Result> results = new WalkForwardBacktest(stream, history, threads).run(configs);
+        long wallMillis = (System.nanoTime() - started) / 1_000_000;
+
+        System.out.println();
+        System.out.printf("%-28s %6s %10s %10s %8s %12s %14s%n",
+                "config", "steps", "MAE", "RMSE", "dir.acc", "train ms/step", "predict us/row");
+        for (WalkForwardBacktest.Result result : results) {
+            System.out.printf("%-28s %6d %10.4f %10.4f %7.1f%% %12.1f %14.1f%n",
+                    result.getConfig(), result.getWindows().size(), result.getMae(), result.getRmse(),
+                    result.getDirectionalAccuracy() * 100, result.getTrainMillisPerStep(),
+                    result.getPredictMicrosPerCandle());
+        }
+        System.out.println("Wall-clock: " + wallMillis + " ms on " + threads + " threads.");
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --name value, got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
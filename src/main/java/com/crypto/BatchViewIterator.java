@@ -0,0 +1,130 @@
+package com.crypto;
+
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Мини-батчи образцов [from, to) набора как представления (view) его массивов, без копирования:
+ * набор лежит в переиспользуемых буферах NeuralNetwork. Если задан random, порядок батчей
+ * перемешивается при каждом reset (в начале эпохи); состав батчей не меняется, образцы внутри
+ * батча идут подряд по времени.
+ */
+public final class BatchViewIterator implements DataSetIterator {
+    private static final long serialVersionUID = 1L;
+
+    private final DataSet data;
+    private final int from;
+    private final int to;
+    private final int batchSize;
+    private final Random random;
+    private final int[] order;
+    private int cursor;
+    private DataSetPreProcessor preProcessor;
+
+    public BatchViewIterator(DataSet data, int from, int to, int batchSize, Random random) {
+        if (from < 0 || to > data.numExamples() || from >= to || batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch range [" + from + ", " + to + ") of " +
+                    data.numExamples() + " with batch size " + batchSize);
+        }
+        this.data = data;
+        this.from = from;
+        this.to = to;
+        this.batchSize = batchSize;
+        this.random = random;
+        this.order = new int[(to - from + batchSize - 1) / batchSize];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        shuffle();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < order.length;
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int start = from + order[cursor++] * batchSize;
+        int end = Math.min(to, start + batchSize);
+        DataSet batch = new DataSet(data.getFeatures().get(NDArrayIndex.interval(start, end)),
+                data.getLabels().get(NDArrayIndex.interval(start, end)));
+        if (preProcessor != null) {
+            preProcessor.preProcess(batch);
+        }
+        return batch;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException("Batch size is fixed: " + batchSize);
+    }
+
+    @Override
+    public void reset() {
+        cursor = 0;
+        shuffle();
+    }
+
+    /** Перемешивает порядок батчей, если задан random. */
+    private void shuffle() {
+        if (random == null) {
+            return;
+        }
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    @Override
+    public int inputColumns() {
+        return (int) data.getFeatures().size(1);
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return (int) data.getLabels().size(1);
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+}
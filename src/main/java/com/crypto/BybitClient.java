@@ -1,15 +1,17 @@
 package com.crypto;
 
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.websocket.*;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -21,35 +23,57 @@ import java.util.concurrent.TimeUnit;
 @Component
 @ClientEndpoint
 public class BybitClient {
+    private static final Logger log = LoggerFactory.getLogger(BybitClient.class);
+    // Сколько раз заново запрашивать страницы, не загруженные при докачке
+    private static final int BACKFILL_ROUNDS = 3;
     private final DatabaseManager dbManager;
-    private final Indicators indicators;
-    private final ImbalanceZones imbalanceZones;
-    private final NeuralNetwork neuralNetwork;
+    private final StreamRegistry streamRegistry;
     private final PredictionWebSocketHandler webSocketHandler;
-    private final PredictionController predictionController;
+    private final PredictionHistory predictionHistory;
+    private final TrainingPipeline trainingPipeline;
+    private final CryptoProperties properties;
+    private final Timer handledMessages;
+    private final Timer ignoredMessages;
+    private final Timer failedMessages;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final HistoricalBackfill backfill;
+    private final BybitMessageParser messageParser;
 
     private Session webSocketSession;
     private volatile boolean initialDataLoaded = false;
 
-    public BybitClient(DatabaseManager dbManager, Indicators indicators, ImbalanceZones imbalanceZones,
-                       NeuralNetwork neuralNetwork, PredictionWebSocketHandler webSocketHandler,
-                       PredictionController predictionController) {
+    public BybitClient(DatabaseManager dbManager, StreamRegistry streamRegistry,
+                       PredictionWebSocketHandler webSocketHandler,
+                       PredictionHistory predictionHistory, TrainingPipeline trainingPipeline,
+                       CryptoProperties properties, PipelineMetrics metrics) {
         this.dbManager = dbManager;
-        this.indicators = indicators;
-        this.imbalanceZones = imbalanceZones;
-        this.neuralNetwork = neuralNetwork;
+        this.streamRegistry = streamRegistry;
         this.webSocketHandler = webSocketHandler;
-        this.predictionController = predictionController;
+        this.predictionHistory = predictionHistory;
+        this.trainingPipeline = trainingPipeline;
+        this.properties = properties;
+        this.handledMessages = metrics.bybitMessage("handled");
+        this.ignoredMessages = metrics.bybitMessage("ignored");
+        this.failedMessages = metrics.bybitMessage("error");
+        CryptoProperties.Backfill backfillSettings = properties.getBackfill();
+        this.backfill = new HistoricalBackfill(httpClient, properties.getBybit().getApiUrl(), dbManager,
+                backfillSettings.getMaxInFlight(), backfillSettings.getRequestsPerSecond(),
+                backfillSettings.getMaxRetries(), backfillSettings.getFlushSize());
+        List<MarketStream> streams = new ArrayList<>();
+        for (StreamContext context : streamRegistry.getAll()) {
+            streams.add(context.getStream());
+        }
+        this.messageParser = new BybitMessageParser(streams, streamRegistry.getSymbols());
     }
 
     @PostConstruct
     public void init() {
-        loadCandles();
-        indicators.calculateAndSaveIndicators(); // Сначала рассчитываем индикаторы
-        imbalanceZones.calculateAndSaveZones();  // Затем зоны дисбаланса
-        neuralNetwork.trainModel();              // Теперь обучение
-        double predictedPrice = neuralNetwork.getPredictedPrice();
-        webSocketHandler.broadcastPrediction(predictedPrice);
+        for (StreamContext context : streamRegistry.getAll()) {
+            initStream(context);
+        }
 
         initialDataLoaded = true;
         connectWebSocket();
@@ -57,165 +81,160 @@ public class BybitClient {
         executor.scheduleAtFixedRate(this::sendPing, 20, 20, TimeUnit.SECONDS);
     }
 
+    private void initStream(StreamContext context) {
+        MarketStream stream = context.getStream();
+        NeuralNetwork neuralNetwork = context.getNeuralNetwork();
+        loadCandles(stream);
+        // Единственное чтение свечей из БД: дальше буфер пополняется из TrainingPipeline
+        context.getCandles().load(dbManager.getCandles(stream, properties.getCandleBufferCapacity()));
+        context.getIndicators().calculateAndSaveIndicators(); // Прогрев индикаторов по истории
+        context.getLiquidations().load();
+        context.getImbalanceZones().load();                   // Затем зоны дисбаланса
+        context.getImbalanceZones().update();
+        if (neuralNetwork.restoreCheckpoint()) {
+            // Сразу отдаём прогноз сохранённой модели, обучение догоняем в фоне
+            neuralNetwork.refreshPrediction();
+            trainingPipeline.requestRetrain(stream);
+        } else {
+            neuralNetwork.trainModel();
+        }
+        double predictedPrice = context.getPredictedPrice();
+        if (predictedPrice == 0.0) {
+            // Модель ещё не дала прогноза: 0 не пишем в историю и не рассылаем
+            log.warn("[{}] No prediction available at startup.", stream);
+            return;
+        }
+        long lastTimestamp = context.getCandles().getLastTimestamp();
+        if (lastTimestamp > 0) {
+            predictionHistory.record(stream, lastTimestamp + stream.getTimeframeMillis(),
+                    neuralNetwork.getModelVersion(), predictedPrice);
+        }
+        webSocketHandler.broadcastPrediction(stream, predictedPrice, context.getHorizonPredictions());
+    }
+
     private void sendPing() {
         if (webSocketSession != null && webSocketSession.isOpen()) {
             String pingMessage = "{\"op\":\"ping\"}";
             webSocketSession.getAsyncRemote().sendText(pingMessage);
-            //ystem.out.println("Sent ping to keep WebSocket alive.");
         }
     }
 
-    private void loadCandles() {
-        long lastTimestamp = dbManager.getLastCandleTimestamp();
+    /**
+     * Докачивает свечи с последней сохранённой до текущего момента. Страницы, не загруженные
+     * и после повторов внутри HistoricalBackfill, запрашиваются ещё до BACKFILL_ROUNDS раз;
+     * если дыры остались, запуск прерывается — иначе индикаторы и модель молча считались бы
+     * по ряду с пропусками ниже последней свечи.
+     */
+    private void loadCandles(MarketStream stream) {
+        long lastTimestamp = dbManager.getLastCandleTimestamp(stream);
         long now = System.currentTimeMillis();
+        long startTime;
 
         if (lastTimestamp == 0) {
-            System.out.println("Candles table is empty, loading initial " + Constants.TRAINING_PERIOD + " candles.");
-            loadHistoricalData(now - Constants.TRAINING_PERIOD * getTimeframeMillis(Constants.TIMEFRAME), Constants.TRAINING_PERIOD);
+            // Заполняем весь буфер свечей, чтобы окно обучения можно было увеличить на ходу
+            int initialCandles = properties.getCandleBufferCapacity();
+            log.info("[{}] Candles table is empty, loading initial {} candles.", stream, initialCandles);
+            startTime = now - initialCandles * stream.getTimeframeMillis();
         } else {
-            System.out.println("Updating candles from last timestamp: " + lastTimestamp);
-            loadHistoricalData(getNextStartTime(lastTimestamp, Constants.TIMEFRAME), -1);
+            log.info("[{}] Updating candles from last timestamp: {}", stream, lastTimestamp);
+            startTime = lastTimestamp + stream.getTimeframeMillis();
         }
 
-//        indicators.calculateAndSaveIndicators();
-//        imbalanceZones.calculateAndSaveZones();
-//        neuralNetwork.trainModel();
-    }
-
-    private void loadHistoricalData(long startTime, int limit) {
-        HttpClient client = HttpClient.newHttpClient();
-        int totalCandlesLoaded = 0;
-        long currentStart = startTime;
-        long now = System.currentTimeMillis();
-
-        while ((limit == -1 && currentStart < now) || (limit > 0 && totalCandlesLoaded < limit)) {
-            String url = Constants.BYBIT_API_URL + "/v5/market/kline?category=linear&symbol=" + Constants.CURRENCY_PAIR +
-                    "&interval=" + Constants.TIMEFRAME + "&start=" + currentStart + "&limit=200";
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .GET()
-                    .build();
-
-            try {
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                JSONObject json = new JSONObject(response.body());
-                JSONArray result = json.getJSONObject("result").getJSONArray("list");
-
-                if (result.length() == 0) {
-                    System.out.println("No more candles to load at timestamp: " + currentStart);
-                    break;
-                }
-
-                for (int i = result.length() - 1; i >= 0; i--) {
-                    JSONArray candle = result.getJSONArray(i);
-                    long timestamp = candle.getLong(0);
-                    double open = candle.getDouble(1);
-                    double high = candle.getDouble(2);
-                    double low = candle.getDouble(3);
-                    double close = candle.getDouble(4);
-                    double volume = candle.getDouble(5);
-                    dbManager.saveCandle(timestamp, open, high, low, close, volume);
-                    totalCandlesLoaded++;
-                }
-                System.out.println("Loaded " + totalCandlesLoaded + " candles so far...");
-
-                currentStart = getNextStartTime(result.getJSONArray(0).getLong(0) ,
-                        Constants.TIMEFRAME);
-            } catch (Exception e) {
-                System.err.println("Error loading candles: " + e.getMessage());
-                e.printStackTrace();
-                break;
+        List<HistoricalBackfill.Range> failed = backfill.load(stream, startTime, now).getFailedRanges();
+        for (int round = 1; round <= BACKFILL_ROUNDS && !failed.isEmpty(); round++) {
+            log.warn("[{}] Reloading {} failed candle ranges (round {} of {}).", stream, failed.size(), round,
+                    BACKFILL_ROUNDS);
+            List<HistoricalBackfill.Range> stillFailed = new ArrayList<>();
+            for (HistoricalBackfill.Range range : failed) {
+                stillFailed.addAll(backfill.load(stream, range.getStart(), range.getEnd()).getFailedRanges());
             }
+            failed = stillFailed;
+        }
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException("[" + stream + "] Failed to load candle ranges " + failed);
         }
-
-        System.out.println("Total loaded " + totalCandlesLoaded + " candles into database.");
     }
 
     private void connectWebSocket() {
         try {
             WebSocketContainer container = ContainerProvider.getWebSocketContainer();
-            container.connectToServer(this, new URI(Constants.BYBIT_WS_URL));
+            container.connectToServer(this, new URI(properties.getBybit().getWsUrl()));
         } catch (Exception e) {
-            System.err.println("Failed to connect to WebSocket: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
-    private void subscribeToLiquidations() {
-        if (webSocketSession != null && webSocketSession.isOpen()) {
-            String subscriptionMessage = "{\"op\":\"subscribe\",\"args\":[\"liquidation.ETHUSDT\"]}";
-            webSocketSession.getAsyncRemote().sendText(subscriptionMessage);
-            System.out.println("Subscribed to liquidation.ETHUSDT");
+            log.error("Failed to connect to WebSocket", e);
         }
     }
 
-    private void subscribeToCandles() {
+    /**
+     * Одна подписка на все потоки: kline.{tf}.{symbol} для каждого потока
+     * и liquidation.{symbol} для каждого инструмента.
+     */
+    private void subscribeToStreams() {
         if (webSocketSession != null && webSocketSession.isOpen()) {
-            String subscriptionMessage = "{\"op\":\"subscribe\",\"args\":[\"kline." + Constants.TIMEFRAME + "." + Constants.CURRENCY_PAIR + "\"]}";
-            webSocketSession.getAsyncRemote().sendText(subscriptionMessage);
-            System.out.println("Subscribed to kline." + Constants.TIMEFRAME + "." + Constants.CURRENCY_PAIR);
+            JSONArray args = new JSONArray();
+            for (String symbol : streamRegistry.getSymbols()) {
+                args.put("liquidation." + symbol);
+            }
+            for (StreamContext context : streamRegistry.getAll()) {
+                MarketStream stream = context.getStream();
+                args.put("kline." + stream.getTimeframe() + "." + stream.getSymbol());
+            }
+            JSONObject subscriptionMessage = new JSONObject();
+            subscriptionMessage.put("op", "subscribe");
+            subscriptionMessage.put("args", args);
+            webSocketSession.getAsyncRemote().sendText(subscriptionMessage.toString());
+            log.info("Subscribed to {}", args);
         }
     }
 
     @OnOpen
     public void onOpen(Session session) {
         this.webSocketSession = session;
-        System.out.println("WebSocket session opened.");
-        subscribeToLiquidations();
-        subscribeToCandles();
+        log.info("WebSocket session opened.");
+        subscribeToStreams();
     }
 
     @OnMessage
     public void onMessage(String message) {
-        //System.out.println("WebSocket raw message: " + message);
+        log.trace("WebSocket raw message: {}", message);
+        long started = System.nanoTime();
+        Timer timer;
         try {
-            JSONObject json = new JSONObject(message);
+            timer = messageParser.parse(message, messageHandler) ? handledMessages : ignoredMessages;
+        } catch (Exception e) {
+            timer = failedMessages;
+            log.error("Error processing WebSocket message: {}", message, e);
+        }
+        timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
 
-            if (json.has("topic") && json.getString("topic").startsWith("liquidation")) {
-                long timestamp = json.getLong("ts"); // Исправлено: берем "ts" из верхнего уровня
-                JSONObject data = json.getJSONObject("data");
-                String side = data.getString("side").equals("Buy") ? "short" : "long";
-                double qty = data.getDouble("size");
-                dbManager.saveLiquidation(timestamp, side, qty);
+    private final BybitMessageParser.Handler messageHandler = new BybitMessageParser.Handler() {
+        @Override
+        public void onConfirmedKline(MarketStream stream, long timestamp, double open, double high, double low,
+                                     double close, double volume) {
+            if (!initialDataLoaded) {
+                return;
             }
+            dbManager.saveCandle(stream, timestamp, open, high, low, close, volume);
+            log.debug("[{}] New confirmed candle: timestamp={}, close={}, volume={}", stream, timestamp, close, volume);
+            // Пересчёт и обучение выполняются в TrainingPipeline, чтобы не блокировать приём сообщений
+            trainingPipeline.submit(stream, new Candle(timestamp, open, high, low, close, volume));
+        }
 
-            if (initialDataLoaded && json.has("topic") && json.getString("topic").startsWith("kline")) {
-                JSONArray dataArray = json.getJSONArray("data");
-                if (dataArray.length() > 0) {
-                    JSONObject data = dataArray.getJSONObject(0);
-                    long timestamp = data.getLong("start");
-                    double open = data.getDouble("open");
-                    double high = data.getDouble("high");
-                    double low = data.getDouble("low");
-                    double close = data.getDouble("close");
-                    double volume = data.getDouble("volume");
-                    Boolean confirm = data.getBoolean("confirm");
-
-                    if (confirm) {
-                        dbManager.saveCandle(timestamp, open, high, low, close, volume);
-                        //System.out.println("New confirmed candle received: timestamp=" + timestamp + ", close=" + close + ", volume=" + volume);
-                        printSortedValues(high, low, neuralNetwork.getPredictedPrice());
-                        Candle currentCandle = new Candle(timestamp, open, high, low, close, volume);
-
-                        indicators.calculateAndSaveIndicators();
-                        imbalanceZones.calculateAndSaveZones();
-                        neuralNetwork.trainModel();
-                        double predictedPrice = neuralNetwork.getPredictedPrice();
-                        webSocketHandler.broadcastPrediction(predictedPrice);
-                    } else {
-                        //System.out.println("Received unconfirmed candle: timestamp=" + timestamp + ", close=" + close + ", skipping processing.");
-                    }
+        @Override
+        public void onLiquidation(String symbol, long timestamp, String side, double size) {
+            dbManager.saveLiquidation(symbol, timestamp, side, size);
+            for (StreamContext context : streamRegistry.getAll()) {
+                if (context.getStream().getSymbol().equals(symbol)) {
+                    context.getLiquidations().add(timestamp, side, size);
                 }
             }
-        } catch (Exception e) {
-            System.err.println("Error processing WebSocket message: " + e.getMessage());
-            System.out.println("Last raw message: " + message);
-            e.printStackTrace();
         }
-    }
+    };
 
     public static void printSortedValues(double high, double low, double predicted) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
         final String RESET = "\u001B[0m";
         final String RED = "\u001B[31m";
         final String GREEN = "\u001B[32m";
@@ -229,7 +248,7 @@ public class BybitClient {
         List<Map.Entry<String, Double>> sorted = new ArrayList<>(values.entrySet());
         sorted.sort((a, b) -> Double.compare(b.getValue(), a.getValue())); // по убыванию
 
-        System.out.println("=============================");
+        StringBuilder table = new StringBuilder("\n=============================\n");
         for (Map.Entry<String, Double> entry : sorted) {
             String label = entry.getKey();
             double value = entry.getValue();
@@ -243,53 +262,21 @@ public class BybitClient {
                 color = BLUE;
             }
 
-            System.out.printf("%s%-16s: %.2f%s%n", color, label, value, RESET);
+            table.append(String.format("%s%-16s: %.2f%s%n", color, label, value, RESET));
         }
-        System.out.println("=============================");
+        table.append("=============================");
+        log.info(table.toString());
     }
 
-    public static long getTimeframeMillis(String timeframeStr) {
-        int minutes;
-
-        if (timeframeStr.endsWith("m")) {
-            minutes = Integer.parseInt(timeframeStr.replace("m", ""));
-        } else if (timeframeStr.endsWith("h")) {
-            minutes = Integer.parseInt(timeframeStr.replace("h", "")) * 60;
-        } else if (timeframeStr.endsWith("d")) {
-            minutes = Integer.parseInt(timeframeStr.replace("d", "")) * 60 * 24;
-        } else {
-            // Если нет суффикса — считаем, что указано в минутах
-            minutes = Integer.parseInt(timeframeStr);
-        }
-
-        return minutes * 60 * 1000L;
-    }
-    private static long getNextStartTime(long lastCandleTime, String timeframeStr) {
-        int minutes;
-
-        if (timeframeStr.endsWith("m")) {
-            minutes = Integer.parseInt(timeframeStr.replace("m", ""));
-        } else if (timeframeStr.endsWith("h")) {
-            minutes = Integer.parseInt(timeframeStr.replace("h", "")) * 60;
-        } else if (timeframeStr.endsWith("d")) {
-            minutes = Integer.parseInt(timeframeStr.replace("d", "")) * 60 * 24;
-        } else {
-            // Если нет суффикса — по умолчанию считаем, что это минуты (например, "1", "15")
-            minutes = Integer.parseInt(timeframeStr);
-        }
-
-        return lastCandleTime + minutes * 60 * 1000L;
-    }
     @OnClose
     public void onClose(Session session, CloseReason reason) {
         this.webSocketSession = null;
-        System.out.println("WebSocket closed: " + reason.getReasonPhrase());
+        log.warn("WebSocket closed: {}", reason.getReasonPhrase());
         connectWebSocket();
     }
 
     @OnError
     public void onError(Session session, Throwable throwable) {
-        System.err.println("WebSocket error: " + throwable.getMessage());
-        throwable.printStackTrace();
+        log.error("WebSocket error", throwable);
     }
 }
\ No newline at end of file
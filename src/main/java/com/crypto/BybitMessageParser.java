@@ -0,0 +1,439 @@
+package com.crypto;
+
+import java.util.Collection;
+
+/**
+ * Потоковый разбор сообщений Bybit v5 (kline.* и liquidation.*) без построения дерева JSON.
+ * Тема сверяется с известными подписками прямо в тексте сообщения, числовые поля читаются
+ * сразу в примитивы. У неподтверждённой свечи читается только поле confirm — остальные поля
+ * лишь пропускаются.
+ * Экземпляр не потокобезопасен: сообщения одной сессии WebSocket приходят последовательно.
+ */
+public class BybitMessageParser {
+    public interface Handler {
+        void onConfirmedKline(MarketStream stream, long start, double open, double high, double low,
+                              double close, double volume);
+
+        /** side — сторона ликвидированной позиции: "long" или "short". */
+        void onLiquidation(String symbol, long timestamp, String side, double size);
+    }
+
+    private static final int NOT_FOUND = -1;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    // Степени десяти, точно представимые в double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final String[] klineTopics;
+    private final MarketStream[] klineStreams;
+    private final String[] liquidationTopics;
+    private final String[] liquidationSymbols;
+
+    // Состояние текущего разбора
+    private String message;
+    private int pos;
+    private int stringStart;
+    private int stringEnd;
+    private boolean stringEscaped;
+
+    public BybitMessageParser(Collection<MarketStream> streams, Collection<String> symbols) {
+        klineStreams = streams.toArray(new MarketStream[0]);
+        klineTopics = new String[klineStreams.length];
+        for (int i = 0; i < klineStreams.length; i++) {
+            klineTopics[i] = "kline." + klineStreams[i].getTimeframe() + "." + klineStreams[i].getSymbol();
+        }
+        liquidationSymbols = symbols.toArray(new String[0]);
+        liquidationTopics = new String[liquidationSymbols.length];
+        for (int i = 0; i < liquidationSymbols.length; i++) {
+            liquidationTopics[i] = "liquidation." + liquidationSymbols[i];
+        }
+    }
+
+    /**
+     * Разбирает сообщение и вызывает обработчик для подтверждённой свечи или ликвидации.
+     * Возвращает false, если сообщение не несёт таких данных (pong, ответ на subscribe,
+     * неподтверждённая свеча, неизвестная тема).
+     */
+    public boolean parse(String message, Handler handler) {
+        this.message = message;
+        this.pos = 0;
+        try {
+            return parseEnvelope(handler);
+        } finally {
+            this.message = null;
+        }
+    }
+
+    private boolean parseEnvelope(Handler handler) {
+        int klineIndex = NOT_FOUND;
+        int liquidationIndex = NOT_FOUND;
+        long ts = 0;
+        int dataAt = NOT_FOUND;
+
+        expect('{');
+        if (!tryConsume('}')) {
+            do {
+                readString();
+                expect(':');
+                if (stringEquals("topic")) {
+                    readString();
+                    klineIndex = findTopic(klineTopics);
+                    liquidationIndex = findTopic(liquidationTopics);
+                } else if (stringEquals("ts")) {
+                    ts = readLong();
+                } else if (stringEquals("data")) {
+                    // "data" может идти раньше "topic" — запоминаем позицию и разбираем после
+                    skipWhitespace();
+                    dataAt = pos;
+                    skipValue();
+                } else {
+                    skipValue();
+                }
+            } while (tryConsume(','));
+            expect('}');
+        }
+
+        if (dataAt == NOT_FOUND) {
+            return false;
+        }
+        if (liquidationIndex != NOT_FOUND) {
+            pos = dataAt;
+            return parseLiquidation(liquidationSymbols[liquidationIndex], ts, handler);
+        }
+        if (klineIndex != NOT_FOUND) {
+            pos = dataAt;
+            return parseKline(klineStreams[klineIndex], handler);
+        }
+        return false;
+    }
+
+    private boolean parseLiquidation(String symbol, long ts, Handler handler) {
+        String side = null;
+        double size = Double.NaN;
+        expect('{');
+        if (!tryConsume('}')) {
+            do {
+                readString();
+                expect(':');
+                if (stringEquals("side")) {
+                    readString();
+                    // Ликвидация Buy закрывает шорт, Sell — лонг
+                    side = stringEquals("Buy") ? "short" : "long";
+                } else if (stringEquals("size")) {
+                    size = readDouble();
+                } else {
+                    skipValue();
+                }
+            } while (tryConsume(','));
+            expect('}');
+        }
+        if (side == null || Double.isNaN(size)) {
+            throw malformed("liquidation without side or size");
+        }
+        handler.onLiquidation(symbol, ts, side, size);
+        return true;
+    }
+
+    private boolean parseKline(MarketStream stream, Handler handler) {
+        expect('[');
+        if (tryConsume(']')) {
+            return false;
+        }
+        int startAt = NOT_FOUND;
+        int openAt = NOT_FOUND;
+        int highAt = NOT_FOUND;
+        int lowAt = NOT_FOUND;
+        int closeAt = NOT_FOUND;
+        int volumeAt = NOT_FOUND;
+        boolean confirm = false;
+
+        // Первый проход только запоминает позиции полей; числа читаются, лишь если свеча подтверждена
+        expect('{');
+        if (!tryConsume('}')) {
+            do {
+                readString();
+                expect(':');
+                skipWhitespace();
+                int valueAt = pos;
+                if (stringEquals("confirm")) {
+                    confirm = readBoolean();
+                    if (!confirm) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (stringEquals("start")) {
+                    startAt = valueAt;
+                } else if (stringEquals("open")) {
+                    openAt = valueAt;
+                } else if (stringEquals("high")) {
+                    highAt = valueAt;
+                } else if (stringEquals("low")) {
+                    lowAt = valueAt;
+                } else if (stringEquals("close")) {
+                    closeAt = valueAt;
+                } else if (stringEquals("volume")) {
+                    volumeAt = valueAt;
+                }
+                skipValue();
+            } while (tryConsume(','));
+            expect('}');
+        }
+        if (!confirm) {
+            return false;
+        }
+        if (startAt == NOT_FOUND || openAt == NOT_FOUND || highAt == NOT_FOUND
+                || lowAt == NOT_FOUND || closeAt == NOT_FOUND || volumeAt == NOT_FOUND) {
+            throw malformed("kline without start/open/high/low/close/volume");
+        }
+        long start = readLongAt(startAt);
+        double open = readDoubleAt(openAt);
+        double high = readDoubleAt(highAt);
+        double low = readDoubleAt(lowAt);
+        double close = readDoubleAt(closeAt);
+        double volume = readDoubleAt(volumeAt);
+        handler.onConfirmedKline(stream, start, open, high, low, close, volume);
+        return true;
+    }
+
+    private int findTopic(String[] topics) {
+        for (int i = 0; i < topics.length; i++) {
+            if (stringEquals(topics[i])) {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private boolean stringEquals(String literal) {
+        if (stringEscaped) {
+            // Редкий случай: сравниваем раскрытую строку, как её видит org.json
+            return unescape().equals(literal);
+        }
+        int length = stringEnd - stringStart;
+        return length == literal.length() && message.regionMatches(stringStart, literal, 0, length);
+    }
+
+    /**
+     * Читает строку; её границы без кавычек — в stringStart/stringEnd. Escape-последовательности
+     * раскрываются только при сравнении (stringEscaped).
+     */
+    private void readString() {
+        skipWhitespace();
+        expect('"');
+        stringStart = pos;
+        stringEscaped = false;
+        while (true) {
+            char c = current();
+            if (c == '\\') {
+                stringEscaped = true;
+                pos += 2;
+            } else if (c == '"') {
+                break;
+            } else {
+                pos++;
+            }
+        }
+        stringEnd = pos;
+        pos++;
+    }
+
+    private String unescape() {
+        StringBuilder value = new StringBuilder(stringEnd - stringStart);
+        for (int i = stringStart; i < stringEnd; i++) {
+            char c = message.charAt(i);
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            char escaped = message.charAt(++i);
+            switch (escaped) {
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'n' -> value.append('\n');
+                case 'r' -> value.append('\r');
+                case 't' -> value.append('\t');
+                case 'u' -> {
+                    if (i + 4 >= stringEnd) {
+                        throw malformed("truncated \\u escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(message, i + 1, i + 5, 16));
+                    } catch (NumberFormatException e) {
+                        throw malformed("invalid \\u escape");
+                    }
+                    i += 4;
+                }
+                default -> value.append(escaped);
+            }
+        }
+        return value.toString();
+    }
+
+    private long readLongAt(int at) {
+        pos = at;
+        return readLong();
+    }
+
+    private double readDoubleAt(int at) {
+        pos = at;
+        return readDouble();
+    }
+
+    /** Целое число; Bybit передаёт его как число или как строку. */
+    private long readLong() {
+        skipWhitespace();
+        boolean quoted = tryConsume('"');
+        boolean negative = tryConsume('-');
+        int digitsFrom = pos;
+        long value = 0;
+        while (pos < message.length() && isDigit(message.charAt(pos))) {
+            value = value * 10 + (message.charAt(pos) - '0');
+            pos++;
+        }
+        if (pos == digitsFrom) {
+            throw malformed("expected integer");
+        }
+        if (quoted) {
+            expect('"');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Десятичное число (цены и объёмы Bybit приходят строками). Если мантисса не больше 2^53,
+     * а дробных знаков не больше 22, результат — одно деление точных double, то есть корректно
+     * округлённое значение, как у Double.parseDouble. Иначе — Double.parseDouble по подстроке.
+     */
+    private double readDouble() {
+        skipWhitespace();
+        boolean quoted = tryConsume('"');
+        int start = pos;
+        while (pos < message.length() && isNumberChar(message.charAt(pos))) {
+            pos++;
+        }
+        int end = pos;
+        if (end == start) {
+            throw malformed("expected number");
+        }
+        if (quoted) {
+            expect('"');
+        }
+
+        int i = start;
+        boolean negative = message.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        boolean fastPath = i < end;
+        for (; i < end && fastPath; i++) {
+            char c = message.charAt(i);
+            if (isDigit(c)) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (fraction) {
+                    fractionDigits++;
+                }
+                fastPath = mantissa <= MAX_EXACT_MANTISSA && fractionDigits < POWERS_OF_TEN.length;
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                fastPath = false;
+            }
+        }
+        if (!fastPath) {
+            return Double.parseDouble(message.substring(start, end));
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private boolean readBoolean() {
+        skipWhitespace();
+        if (message.startsWith("true", pos)) {
+            pos += 4;
+            return true;
+        }
+        if (message.startsWith("false", pos)) {
+            pos += 5;
+            return false;
+        }
+        throw malformed("expected boolean");
+    }
+
+    private void skipValue() {
+        skipWhitespace();
+        char c = current();
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = current();
+                if (c == '"') {
+                    readString();
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+                pos++;
+            } while (depth > 0);
+        } else {
+            // Число, true, false или null
+            while (pos < message.length()) {
+                c = message.charAt(pos);
+                if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                    break;
+                }
+                pos++;
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < message.length() && Character.isWhitespace(message.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private boolean tryConsume(char expected) {
+        skipWhitespace();
+        if (pos < message.length() && message.charAt(pos) == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char expected) {
+        if (!tryConsume(expected)) {
+            throw malformed("expected '" + expected + "'");
+        }
+    }
+
+    private char current() {
+        if (pos >= message.length()) {
+            throw malformed("unexpected end of message");
+        }
+        return message.charAt(pos);
+    }
+
+    private IllegalArgumentException malformed(String reason) {
+        return new IllegalArgumentException("Malformed Bybit message at " + pos + ": " + reason);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNumberChar(char c) {
+        return isDigit(c) || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E';
+    }
+}
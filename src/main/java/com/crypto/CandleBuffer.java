@@ -0,0 +1,228 @@
+package com.crypto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Последние свечи потока в памяти: кольцевой буфер фиксированной ёмкости, по массиву
+ * примитивов на колонку (timestamp, OHLCV и рассчитанные для свечи индикаторы).
+ * Индикаторы, ImbalanceZones и NeuralNetwork читают окно отсюда; SQLite остаётся только хранилищем.
+ *
+ * Запись идёт из одного потока — цикла обработки своего потока свечей в TrainingPipeline
+ * (или из инициализации до подключения WebSocket). Представления не копируют данные,
+ * поэтому пользоваться ими нужно там же, где нет параллельной записи.
+ */
+public class CandleBuffer {
+    private final int capacity;
+    private final long[] timestamps;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] volume;
+    private final double[] sma;
+    private final double[] rsi;
+    private final double[] stochasticK;
+    private final double[] stochasticD;
+    private final double[] stochRsiK;
+    private final double[] stochRsiD;
+    // Всего добавлено свечей; последняя лежит в слоте (appended - 1) % capacity
+    private volatile long appended;
+
+    public CandleBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Candle buffer capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.open = new double[capacity];
+        this.high = new double[capacity];
+        this.low = new double[capacity];
+        this.close = new double[capacity];
+        this.volume = new double[capacity];
+        this.sma = new double[capacity];
+        this.rsi = new double[capacity];
+        this.stochasticK = new double[capacity];
+        this.stochasticD = new double[capacity];
+        this.stochRsiK = new double[capacity];
+        this.stochRsiD = new double[capacity];
+    }
+
+    /** Заменяет содержимое свечами из БД (в любом порядке); индикаторы обнуляются. */
+    public synchronized void load(List<Candle> candles) {
+        List<Candle> sorted = new ArrayList<>(candles);
+        sorted.sort(Comparator.comparingLong(Candle::getTimestamp));
+        appended = 0;
+        for (Candle candle : sorted) {
+            append(candle);
+        }
+    }
+
+    /**
+     * Добавляет подтверждённую свечу. Свеча с тем же временем, что и последняя, перезаписывает её
+     * (индикаторы сохраняются), более старая — игнорируется. Возвращает false, если свеча не записана.
+     */
+    public synchronized boolean append(Candle candle) {
+        long timestamp = candle.getTimestamp();
+        long count = appended;
+        int slot;
+        if (count > 0 && timestamp <= timestamps[slotOf(count - 1)]) {
+            if (timestamp < timestamps[slotOf(count - 1)]) {
+                return false;
+            }
+            slot = slotOf(count - 1);
+        } else {
+            slot = slotOf(count);
+            timestamps[slot] = timestamp;
+            sma[slot] = 0;
+            rsi[slot] = 0;
+            stochasticK[slot] = 0;
+            stochasticD[slot] = 0;
+            stochRsiK[slot] = 0;
+            stochRsiD[slot] = 0;
+            count++;
+        }
+        open[slot] = candle.getOpen();
+        high[slot] = candle.getHigh();
+        low[slot] = candle.getLow();
+        close[slot] = candle.getClose();
+        volume[slot] = candle.getVolume();
+        appended = count;
+        return true;
+    }
+
+    /** Записывает индикаторы свечи row.getTimestamp(); если свечи уже нет в буфере, ничего не делает. */
+    public synchronized void setIndicators(IndicatorRow row) {
+        View all = view(capacity);
+        int index = all.indexOf(row.getTimestamp());
+        if (index < 0) {
+            return;
+        }
+        int slot = all.slot(index);
+        sma[slot] = row.getSma();
+        rsi[slot] = row.getRsi();
+        stochasticK[slot] = row.getStochasticK();
+        stochasticD[slot] = row.getStochasticD();
+        stochRsiK[slot] = row.getStochRsiK();
+        stochRsiD[slot] = row.getStochRsiD();
+    }
+
+    public int size() {
+        return (int) Math.min(appended, capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Время последней свечи или 0, если буфер пуст. */
+    public long getLastTimestamp() {
+        long count = appended;
+        return count == 0 ? 0 : timestamps[slotOf(count - 1)];
+    }
+
+    /** Последние min(limit, size()) свечей, от старой к новой. */
+    public View view(int limit) {
+        long count = appended;
+        int size = (int) Math.min(Math.min(count, capacity), limit);
+        return new View(count - size, size);
+    }
+
+    private int slotOf(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    /** Окно буфера только для чтения; индекс 0 — самая старая свеча окна. */
+    public final class View {
+        private final long firstSequence;
+        private final int size;
+
+        private View(long firstSequence, int size) {
+            this.firstSequence = firstSequence;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private int slot(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for candle view of size " + size);
+            }
+            return slotOf(firstSequence + index);
+        }
+
+        public long getTimestamp(int index) {
+            return timestamps[slot(index)];
+        }
+
+        public double getOpen(int index) {
+            return open[slot(index)];
+        }
+
+        public double getHigh(int index) {
+            return high[slot(index)];
+        }
+
+        public double getLow(int index) {
+            return low[slot(index)];
+        }
+
+        public double getClose(int index) {
+            return close[slot(index)];
+        }
+
+        public double getVolume(int index) {
+            return volume[slot(index)];
+        }
+
+        public double getSma(int index) {
+            return sma[slot(index)];
+        }
+
+        public double getRsi(int index) {
+            return rsi[slot(index)];
+        }
+
+        public double getStochasticK(int index) {
+            return stochasticK[slot(index)];
+        }
+
+        public double getStochasticD(int index) {
+            return stochasticD[slot(index)];
+        }
+
+        public double getStochRsiK(int index) {
+            return stochRsiK[slot(index)];
+        }
+
+        public double getStochRsiD(int index) {
+            return stochRsiD[slot(index)];
+        }
+
+        public Candle getCandle(int index) {
+            int slot = slot(index);
+            return new Candle(timestamps[slot], open[slot], high[slot], low[slot], close[slot], volume[slot]);
+        }
+
+        /** Индекс свечи с указанным временем (двоичный поиск) или -1. */
+        public int indexOf(long timestamp) {
+            int lo = 0;
+            int hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                long value = timestamps[slotOf(firstSequence + mid)];
+                if (value < timestamp) {
+                    lo = mid + 1;
+                } else if (value > timestamp) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+}
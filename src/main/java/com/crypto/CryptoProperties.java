@@ -0,0 +1,920 @@
+package com.crypto;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Настройки приложения из application.properties (префикс crypto.*). Значения по умолчанию
+ * совпадают с прежними константами, поэтому без файла настроек поведение не меняется.
+ *
+ * Всё, кроме группы training, читается один раз при старте. Группа training — параметры обучения,
+ * которые можно менять на ходу через /admin/settings; действующий снимок хранит RuntimeSettings.
+ */
+@ConfigurationProperties(prefix = "crypto")
+public class CryptoProperties {
+    // Потоки в одном процессе: "SYMBOL:TIMEFRAME" через запятую
+    private String streams = "ETHUSDT:5m";
+    private int candleBufferCapacity = 2000; // свечей потока в памяти; не меньше training.training-period
+    private final Bybit bybit = new Bybit();
+    private final Backfill backfill = new Backfill();
+    private final Indicators indicators = new Indicators();
+    private final Training training = new Training();
+    private final WebSocket webSocket = new WebSocket();
+    private final Predictions predictions = new Predictions();
+    private final Checkpoints checkpoints = new Checkpoints();
+    private final Backtest backtest = new Backtest();
+    private final Admin admin = new Admin();
+    private final Retention retention = new Retention();
+    private final Ensemble ensemble = new Ensemble();
+    private final Imbalance imbalance = new Imbalance();
+
+    public String getStreams() {
+        return streams;
+    }
+
+    public void setStreams(String streams) {
+        this.streams = streams;
+    }
+
+    public int getCandleBufferCapacity() {
+        return candleBufferCapacity;
+    }
+
+    public void setCandleBufferCapacity(int candleBufferCapacity) {
+        this.candleBufferCapacity = candleBufferCapacity;
+    }
+
+    public Bybit getBybit() {
+        return bybit;
+    }
+
+    public Backfill getBackfill() {
+        return backfill;
+    }
+
+    public Indicators getIndicators() {
+        return indicators;
+    }
+
+    public Training getTraining() {
+        return training;
+    }
+
+    public WebSocket getWebSocket() {
+        return webSocket;
+    }
+
+    public Predictions getPredictions() {
+        return predictions;
+    }
+
+    public Checkpoints getCheckpoints() {
+        return checkpoints;
+    }
+
+    public Backtest getBacktest() {
+        return backtest;
+    }
+
+    public Admin getAdmin() {
+        return admin;
+    }
+
+    public Retention getRetention() {
+        return retention;
+    }
+
+    public Ensemble getEnsemble() {
+        return ensemble;
+    }
+
+    public Imbalance getImbalance() {
+        return imbalance;
+    }
+
+    public static class Bybit {
+        private String apiUrl = "https://api.bybit.com";
+        private String wsUrl = "wss://stream.bybit.com/v5/public/linear";
+
+        public String getApiUrl() {
+            return apiUrl;
+        }
+
+        public void setApiUrl(String apiUrl) {
+            this.apiUrl = apiUrl;
+        }
+
+        public String getWsUrl() {
+            return wsUrl;
+        }
+
+        public void setWsUrl(String wsUrl) {
+            this.wsUrl = wsUrl;
+        }
+    }
+
+    /** Докачка истории. */
+    public static class Backfill {
+        private int maxInFlight = 4;
+        private int requestsPerSecond = 10;
+        private int maxRetries = 3;
+        private int flushSize = 2000; // свечей на транзакцию
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        public int getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public void setRequestsPerSecond(int requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public int getFlushSize() {
+            return flushSize;
+        }
+
+        public void setFlushSize(int flushSize) {
+            this.flushSize = flushSize;
+        }
+    }
+
+    /** Периоды индикаторов. */
+    public static class Indicators {
+        private int smaPeriod = 14;
+        private int rsiPeriod = 14;
+        private int stochasticKPeriod = 14;
+        private int stochasticKSmoothing = 3;
+        private int stochasticDSmoothing = 3;
+        private int stochRsiPeriod = 14;
+        private int stochRsiKSmoothing = 3;
+        private int stochRsiDSmoothing = 3;
+
+        public int getSmaPeriod() {
+            return smaPeriod;
+        }
+
+        public void setSmaPeriod(int smaPeriod) {
+            this.smaPeriod = smaPeriod;
+        }
+
+        public int getRsiPeriod() {
+            return rsiPeriod;
+        }
+
+        public void setRsiPeriod(int rsiPeriod) {
+            this.rsiPeriod = rsiPeriod;
+        }
+
+        public int getStochasticKPeriod() {
+            return stochasticKPeriod;
+        }
+
+        public void setStochasticKPeriod(int stochasticKPeriod) {
+            this.stochasticKPeriod = stochasticKPeriod;
+        }
+
+        public int getStochasticKSmoothing() {
+            return stochasticKSmoothing;
+        }
+
+        public void setStochasticKSmoothing(int stochasticKSmoothing) {
+            this.stochasticKSmoothing = stochasticKSmoothing;
+        }
+
+        public int getStochasticDSmoothing() {
+            return stochasticDSmoothing;
+        }
+
+        public void setStochasticDSmoothing(int stochasticDSmoothing) {
+            this.stochasticDSmoothing = stochasticDSmoothing;
+        }
+
+        public int getStochRsiPeriod() {
+            return stochRsiPeriod;
+        }
+
+        public void setStochRsiPeriod(int stochRsiPeriod) {
+            this.stochRsiPeriod = stochRsiPeriod;
+        }
+
+        public int getStochRsiKSmoothing() {
+            return stochRsiKSmoothing;
+        }
+
+        public void setStochRsiKSmoothing(int stochRsiKSmoothing) {
+            this.stochRsiKSmoothing = stochRsiKSmoothing;
+        }
+
+        public int getStochRsiDSmoothing() {
+            return stochRsiDSmoothing;
+        }
+
+        public void setStochRsiDSmoothing(int stochRsiDSmoothing) {
+            this.stochRsiDSmoothing = stochRsiDSmoothing;
+        }
+    }
+
+    /**
+     * Параметры обучения, изменяемые на ходу. Опубликованный в RuntimeSettings экземпляр
+     * не меняется: обновление делает копию через {@link #withUpdates(Map)}.
+     */
+    public static class Training {
+        private String modelType = "LSTM"; // "MLP" или "LSTM"
+        private int trainingPeriod = 2000; // свечей в окне полного обучения
+        // Горизонты прогноза в свечах, по выходу сети на каждый; первый — 1 (следующая свеча)
+        private List<Integer> horizons = List.of(1);
+        private int lstmHiddenSize = 50;
+        private double lstmLearningRate = 0.001;
+        private int lstmEpochs = 50;
+        private int mlpEpochs = 200;
+        // Полное обучение мини-батчами с ранним остановом; lstmEpochs/mlpEpochs — верхняя граница эпох
+        private int batchSize = 128;
+        private int prefetchBatches = 2;          // батчей, готовящихся в фоне; 0 — без фонового потока
+        private double validationFraction = 0.1;  // доля последних образцов, отложенная для валидации
+        private int earlyStoppingPatience = 5;    // эпох без улучшения ошибки на валидации до останова
+        private double earlyStoppingMinImprovement = 1e-6;
+        private int maxTrainingSeconds = 120;     // 0 — без ограничения
+        private int threads = 2; // потоков пула обучения (TrainingPipeline)
+        // Рабочие пространства ND4J для обучения и прогноза: ENABLED — активации и градиенты
+        // переиспользуют память между итерациями, NONE — каждый массив выделяется заново
+        private String workspaceMode = "ENABLED";
+        // Онлайн-дообучение: на каждой свече дообучаем модель на буфере образцов,
+        // полное переобучение — по расписанию или при дрейфе ошибки
+        private boolean onlineTraining = true;
+        private int onlineRecentSamples = 32;
+        private int onlineReservoirSize = 256;
+        private int onlineIterations = 5;
+        private int onlineTrainingInterval = 1; // дообучение раз в N свечей, между ними только rnnTimeStep
+        private int fullRetrainInterval = 288;  // в свечах (сутки на 5m)
+        private int driftWindow = 12;           // число последних реализованных ошибок
+        private double driftThreshold = 2.0;    // во сколько раз ошибка выше базовой
+
+        /**
+         * Копия с изменёнными полями; ключи — имена свойств в camelCase, как в ответе /admin/settings.
+         * Неизвестный ключ или значение неверного типа — IllegalArgumentException.
+         */
+        public Training withUpdates(Map<String, Object> updates) {
+            Training copy = copy();
+            for (Map.Entry<String, Object> entry : updates.entrySet()) {
+                Object value = entry.getValue();
+                switch (entry.getKey()) {
+                    case "modelType" -> copy.modelType = String.valueOf(value).toUpperCase();
+                    case "trainingPeriod" -> copy.trainingPeriod = toInt(entry.getKey(), value);
+                    case "horizons" -> copy.horizons = toIntList(entry.getKey(), value);
+                    case "lstmHiddenSize" -> copy.lstmHiddenSize = toInt(entry.getKey(), value);
+                    case "lstmLearningRate" -> copy.lstmLearningRate = toDouble(entry.getKey(), value);
+                    case "lstmEpochs" -> copy.lstmEpochs = toInt(entry.getKey(), value);
+                    case "mlpEpochs" -> copy.mlpEpochs = toInt(entry.getKey(), value);
+                    case "batchSize" -> copy.batchSize = toInt(entry.getKey(), value);
+                    case "prefetchBatches" -> copy.prefetchBatches = toInt(entry.getKey(), value);
+                    case "validationFraction" -> copy.validationFraction = toDouble(entry.getKey(), value);
+                    case "earlyStoppingPatience" -> copy.earlyStoppingPatience = toInt(entry.getKey(), value);
+                    case "earlyStoppingMinImprovement" ->
+                            copy.earlyStoppingMinImprovement = toDouble(entry.getKey(), value);
+                    case "maxTrainingSeconds" -> copy.maxTrainingSeconds = toInt(entry.getKey(), value);
+                    case "threads" -> copy.threads = toInt(entry.getKey(), value);
+                    case "workspaceMode" -> copy.workspaceMode = String.valueOf(value).toUpperCase();
+                    case "onlineTraining" -> copy.onlineTraining = toBoolean(entry.getKey(), value);
+                    case "onlineRecentSamples" -> copy.onlineRecentSamples = toInt(entry.getKey(), value);
+                    case "onlineReservoirSize" -> copy.onlineReservoirSize = toInt(entry.getKey(), value);
+                    case "onlineIterations" -> copy.onlineIterations = toInt(entry.getKey(), value);
+                    case "onlineTrainingInterval" -> copy.onlineTrainingInterval = toInt(entry.getKey(), value);
+                    case "fullRetrainInterval" -> copy.fullRetrainInterval = toInt(entry.getKey(), value);
+                    case "driftWindow" -> copy.driftWindow = toInt(entry.getKey(), value);
+                    case "driftThreshold" -> copy.driftThreshold = toDouble(entry.getKey(), value);
+                    default -> throw new IllegalArgumentException("Unknown training setting: " + entry.getKey());
+                }
+            }
+            return copy;
+        }
+
+        /** Проверка согласованности; candleBufferCapacity — ёмкость буфера свечей потока. */
+        public void validate(int candleBufferCapacity) {
+            if (!modelType.equals("MLP") && !modelType.equals("LSTM")) {
+                throw new IllegalArgumentException("modelType must be MLP or LSTM: " + modelType);
+            }
+            if (horizons.isEmpty() || horizons.get(0) != 1) {
+                throw new IllegalArgumentException("horizons must start with 1: " + horizons);
+            }
+            for (int i = 1; i < horizons.size(); i++) {
+                if (horizons.get(i) <= horizons.get(i - 1)) {
+                    throw new IllegalArgumentException("horizons must be strictly increasing: " + horizons);
+                }
+            }
+            if (horizons.get(horizons.size() - 1) > (trainingPeriod - Constants.LSTM_TIME_STEPS) / 2) {
+                throw new IllegalArgumentException("Largest horizon must leave at least half of trainingPeriod " +
+                        "for samples: " + horizons);
+            }
+            if (!workspaceMode.equals("ENABLED") && !workspaceMode.equals("NONE")) {
+                throw new IllegalArgumentException("workspaceMode must be ENABLED or NONE: " + workspaceMode);
+            }
+            if (trainingPeriod <= Constants.LSTM_TIME_STEPS || trainingPeriod > candleBufferCapacity) {
+                throw new IllegalArgumentException("trainingPeriod must be in (" + Constants.LSTM_TIME_STEPS + ", " +
+                        candleBufferCapacity + "]: " + trainingPeriod);
+            }
+            if (lstmHiddenSize < 2 || !(lstmLearningRate > 0) || lstmEpochs < 1 || mlpEpochs < 1 || threads < 1
+                    || batchSize < 1 || prefetchBatches < 0 || !(validationFraction > 0 && validationFraction < 0.5)
+                    || earlyStoppingPatience < 1 || !(earlyStoppingMinImprovement >= 0) || maxTrainingSeconds < 0
+                    || onlineRecentSamples < 1 || onlineReservoirSize < 0 || onlineIterations < 1
+                    || onlineTrainingInterval < 1 || fullRetrainInterval < 1 || driftWindow < 1 || !(driftThreshold > 0)) {
+                throw new IllegalArgumentException("Training settings out of range: " + this);
+            }
+        }
+
+        /** Параметры, от которых зависит устройство сети: при их изменении модель создаётся заново. */
+        public String architecture() {
+            return "modelType=" + modelType + ";hiddenSize=" + lstmHiddenSize + ";learningRate=" + lstmLearningRate +
+                    ";horizons=" + horizons + ";workspaceMode=" + workspaceMode;
+        }
+
+        public Training copy() {
+            Training copy = new Training();
+            copy.modelType = modelType;
+            copy.trainingPeriod = trainingPeriod;
+            copy.horizons = horizons;
+            copy.lstmHiddenSize = lstmHiddenSize;
+            copy.lstmLearningRate = lstmLearningRate;
+            copy.lstmEpochs = lstmEpochs;
+            copy.mlpEpochs = mlpEpochs;
+            copy.batchSize = batchSize;
+            copy.prefetchBatches = prefetchBatches;
+            copy.validationFraction = validationFraction;
+            copy.earlyStoppingPatience = earlyStoppingPatience;
+            copy.earlyStoppingMinImprovement = earlyStoppingMinImprovement;
+            copy.maxTrainingSeconds = maxTrainingSeconds;
+            copy.threads = threads;
+            copy.workspaceMode = workspaceMode;
+            copy.onlineTraining = onlineTraining;
+            copy.onlineRecentSamples = onlineRecentSamples;
+            copy.onlineReservoirSize = onlineReservoirSize;
+            copy.onlineIterations = onlineIterations;
+            copy.onlineTrainingInterval = onlineTrainingInterval;
+            copy.fullRetrainInterval = fullRetrainInterval;
+            copy.driftWindow = driftWindow;
+            copy.driftThreshold = driftThreshold;
+            return copy;
+        }
+
+        private static int toInt(String key, Object value) {
+            if (value instanceof Number number && number.doubleValue() == number.intValue()) {
+                return number.intValue();
+            }
+            try {
+                return Integer.parseInt(String.valueOf(value));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(key + " must be an integer: " + value);
+            }
+        }
+
+        /** Список целых: JSON-массив или строка через запятую, как в application.properties. */
+        private static List<Integer> toIntList(String key, Object value) {
+            List<Integer> list = new ArrayList<>();
+            if (value instanceof List<?> items) {
+                for (Object item : items) {
+                    list.add(toInt(key, item));
+                }
+            } else {
+                for (String item : String.valueOf(value).split(",")) {
+                    list.add(toInt(key, item.trim()));
+                }
+            }
+            return List.copyOf(list);
+        }
+
+        private static double toDouble(String key, Object value) {
+            if (value instanceof Number number) {
+                return number.doubleValue();
+            }
+            try {
+                return Double.parseDouble(String.valueOf(value));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(key + " must be a number: " + value);
+            }
+        }
+
+        private static boolean toBoolean(String key, Object value) {
+            if (value instanceof Boolean flag) {
+                return flag;
+            }
+            String text = String.valueOf(value);
+            if (!text.equals("true") && !text.equals("false")) {
+                throw new IllegalArgumentException(key + " must be true or false: " + value);
+            }
+            return Boolean.parseBoolean(text);
+        }
+
+        @Override
+        public String toString() {
+            return architecture() + ";trainingPeriod=" + trainingPeriod + ";lstmEpochs=" + lstmEpochs +
+                    ";mlpEpochs=" + mlpEpochs + ";batchSize=" + batchSize + ";prefetchBatches=" + prefetchBatches +
+                    ";validationFraction=" + validationFraction + ";earlyStoppingPatience=" + earlyStoppingPatience +
+                    ";earlyStoppingMinImprovement=" + earlyStoppingMinImprovement +
+                    ";maxTrainingSeconds=" + maxTrainingSeconds + ";threads=" + threads + ";onlineTraining=" + onlineTraining +
+                    ";onlineRecentSamples=" + onlineRecentSamples + ";onlineReservoirSize=" + onlineReservoirSize +
+                    ";onlineIterations=" + onlineIterations + ";onlineTrainingInterval=" + onlineTrainingInterval +
+                    ";fullRetrainInterval=" + fullRetrainInterval + ";driftWindow=" + driftWindow +
+                    ";driftThreshold=" + driftThreshold;
+        }
+
+        public String getModelType() {
+            return modelType;
+        }
+
+        public void setModelType(String modelType) {
+            this.modelType = modelType.toUpperCase();
+        }
+
+        public int getTrainingPeriod() {
+            return trainingPeriod;
+        }
+
+        public void setTrainingPeriod(int trainingPeriod) {
+            this.trainingPeriod = trainingPeriod;
+        }
+
+        public List<Integer> getHorizons() {
+            return horizons;
+        }
+
+        public void setHorizons(List<Integer> horizons) {
+            this.horizons = List.copyOf(horizons);
+        }
+
+        public int getLstmHiddenSize() {
+            return lstmHiddenSize;
+        }
+
+        public void setLstmHiddenSize(int lstmHiddenSize) {
+            this.lstmHiddenSize = lstmHiddenSize;
+        }
+
+        public double getLstmLearningRate() {
+            return lstmLearningRate;
+        }
+
+        public void setLstmLearningRate(double lstmLearningRate) {
+            this.lstmLearningRate = lstmLearningRate;
+        }
+
+        public int getLstmEpochs() {
+            return lstmEpochs;
+        }
+
+        public void setLstmEpochs(int lstmEpochs) {
+            this.lstmEpochs = lstmEpochs;
+        }
+
+        public int getMlpEpochs() {
+            return mlpEpochs;
+        }
+
+        public void setMlpEpochs(int mlpEpochs) {
+            this.mlpEpochs = mlpEpochs;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getPrefetchBatches() {
+            return prefetchBatches;
+        }
+
+        public void setPrefetchBatches(int prefetchBatches) {
+            this.prefetchBatches = prefetchBatches;
+        }
+
+        public double getValidationFraction() {
+            return validationFraction;
+        }
+
+        public void setValidationFraction(double validationFraction) {
+            this.validationFraction = validationFraction;
+        }
+
+        public int getEarlyStoppingPatience() {
+            return earlyStoppingPatience;
+        }
+
+        public void setEarlyStoppingPatience(int earlyStoppingPatience) {
+            this.earlyStoppingPatience = earlyStoppingPatience;
+        }
+
+        public double getEarlyStoppingMinImprovement() {
+            return earlyStoppingMinImprovement;
+        }
+
+        public void setEarlyStoppingMinImprovement(double earlyStoppingMinImprovement) {
+            this.earlyStoppingMinImprovement = earlyStoppingMinImprovement;
+        }
+
+        public int getMaxTrainingSeconds() {
+            return maxTrainingSeconds;
+        }
+
+        public void setMaxTrainingSeconds(int maxTrainingSeconds) {
+            this.maxTrainingSeconds = maxTrainingSeconds;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public String getWorkspaceMode() {
+            return workspaceMode;
+        }
+
+        public void setWorkspaceMode(String workspaceMode) {
+            this.workspaceMode = workspaceMode.toUpperCase();
+        }
+
+        public boolean isOnlineTraining() {
+            return onlineTraining;
+        }
+
+        public void setOnlineTraining(boolean onlineTraining) {
+            this.onlineTraining = onlineTraining;
+        }
+
+        public int getOnlineRecentSamples() {
+            return onlineRecentSamples;
+        }
+
+        public void setOnlineRecentSamples(int onlineRecentSamples) {
+            this.onlineRecentSamples = onlineRecentSamples;
+        }
+
+        public int getOnlineReservoirSize() {
+            return onlineReservoirSize;
+        }
+
+        public void setOnlineReservoirSize(int onlineReservoirSize) {
+            this.onlineReservoirSize = onlineReservoirSize;
+        }
+
+        public int getOnlineIterations() {
+            return onlineIterations;
+        }
+
+        public void setOnlineIterations(int onlineIterations) {
+            this.onlineIterations = onlineIterations;
+        }
+
+        public int getOnlineTrainingInterval() {
+            return onlineTrainingInterval;
+        }
+
+        public void setOnlineTrainingInterval(int onlineTrainingInterval) {
+            this.onlineTrainingInterval = onlineTrainingInterval;
+        }
+
+        public int getFullRetrainInterval() {
+            return fullRetrainInterval;
+        }
+
+        public void setFullRetrainInterval(int fullRetrainInterval) {
+            this.fullRetrainInterval = fullRetrainInterval;
+        }
+
+        public int getDriftWindow() {
+            return driftWindow;
+        }
+
+        public void setDriftWindow(int driftWindow) {
+            this.driftWindow = driftWindow;
+        }
+
+        public double getDriftThreshold() {
+            return driftThreshold;
+        }
+
+        public void setDriftThreshold(double driftThreshold) {
+            this.driftThreshold = driftThreshold;
+        }
+    }
+
+    /** Рассылка прогнозов по WebSocket. */
+    public static class WebSocket {
+        private int senderThreads = 4;
+        private int sendQueueCapacity = 1024;   // отправок сессий в очереди пула, не больше одной на сессию
+        private int sendTimeLimitMs = 5000;     // дольше — сессия закрывается
+        private int bufferSizeLimit = 16 * 1024; // байт; при переполнении старые прогнозы выбрасываются
+
+        public int getSenderThreads() {
+            return senderThreads;
+        }
+
+        public void setSenderThreads(int senderThreads) {
+            this.senderThreads = senderThreads;
+        }
+
+        public int getSendQueueCapacity() {
+            return sendQueueCapacity;
+        }
+
+        public void setSendQueueCapacity(int sendQueueCapacity) {
+            this.sendQueueCapacity = sendQueueCapacity;
+        }
+
+        public int getSendTimeLimitMs() {
+            return sendTimeLimitMs;
+        }
+
+        public void setSendTimeLimitMs(int sendTimeLimitMs) {
+            this.sendTimeLimitMs = sendTimeLimitMs;
+        }
+
+        public int getBufferSizeLimit() {
+            return bufferSizeLimit;
+        }
+
+        public void setBufferSizeLimit(int bufferSizeLimit) {
+            this.bufferSizeLimit = bufferSizeLimit;
+        }
+    }
+
+    /** История прогнозов. */
+    public static class Predictions {
+        private int cacheSize = 2000;  // записей на поток в памяти
+        private int queryLimit = 5000; // максимум записей в ответе /prediction/history
+
+        public int getCacheSize() {
+            return cacheSize;
+        }
+
+        public void setCacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+        }
+
+        public int getQueryLimit() {
+            return queryLimit;
+        }
+
+        public void setQueryLimit(int queryLimit) {
+            this.queryLimit = queryLimit;
+        }
+    }
+
+    /** Контрольные точки модели. */
+    public static class Checkpoints {
+        private String dir = "checkpoints";
+        private int keep = 3;
+
+        public String getDir() {
+            return dir;
+        }
+
+        public void setDir(String dir) {
+            this.dir = dir;
+        }
+
+        public int getKeep() {
+            return keep;
+        }
+
+        public void setKeep(int keep) {
+            this.keep = keep;
+        }
+    }
+
+    /** Значения по умолчанию для com.crypto.Backtest. */
+    public static class Backtest {
+        private int days = 30;
+        private int trainWindow = 2000; // свечей в окне обучения
+        private int testWindow = 288;   // свечей прогноза до следующего переобучения
+
+        public int getDays() {
+            return days;
+        }
+
+        public void setDays(int days) {
+            this.days = days;
+        }
+
+        public int getTrainWindow() {
+            return trainWindow;
+        }
+
+        public void setTrainWindow(int trainWindow) {
+            this.trainWindow = trainWindow;
+        }
+
+        public int getTestWindow() {
+            return testWindow;
+        }
+
+        public void setTestWindow(int testWindow) {
+            this.testWindow = testWindow;
+        }
+    }
+
+    public static class Admin {
+        // Изменение настроек требует заголовка X-Admin-Token с этим значением; пустой — изменение запрещено
+        private String token = "";
+
+        public String getToken() {
+            return token;
+        }
+
+        public void setToken(String token) {
+            this.token = token;
+        }
+    }
+
+    public static class Retention {
+        private boolean enabled = true;
+        // Свечи, индикаторы, зоны, прогнозы и корзины ликвидаций; должен покрывать буфер свечей и бэктест
+        private int horizonDays = 180;
+        // Сырые ликвидации: старше этого срока остаются только корзины по свечам
+        private int rawLiquidationDays = 14;
+        private int intervalMinutes = 60;
+        // Страниц, возвращаемых системе за один PRAGMA incremental_vacuum
+        private int vacuumPages = 2000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getHorizonDays() {
+            return horizonDays;
+        }
+
+        public void setHorizonDays(int horizonDays) {
+            this.horizonDays = horizonDays;
+        }
+
+        public int getRawLiquidationDays() {
+            return rawLiquidationDays;
+        }
+
+        public void setRawLiquidationDays(int rawLiquidationDays) {
+            this.rawLiquidationDays = rawLiquidationDays;
+        }
+
+        public int getIntervalMinutes() {
+            return intervalMinutes;
+        }
+
+        public void setIntervalMinutes(int intervalMinutes) {
+            this.intervalMinutes = intervalMinutes;
+        }
+
+        public int getVacuumPages() {
+            return vacuumPages;
+        }
+
+        public void setVacuumPages(int vacuumPages) {
+            this.vacuumPages = vacuumPages;
+        }
+    }
+
+    /** Зоны дисбаланса (ImbalanceZones); окно — training.training-period последних свечей. */
+    public static class Imbalance {
+        private double volumeMultiplier = 2.0;   // зона — свеча с объёмом выше среднего по окну во столько раз
+        private int halfLifeCandles = 288;       // вес зоны вдвое меньше через столько свечей
+        private double rangePercent = 2.0;       // зоны в пределах ±% от цены учитываются во влиянии
+        private int persistIntervalCandles = 12; // новые зоны пишутся в БД раз в столько свечей
+
+        public double getVolumeMultiplier() {
+            return volumeMultiplier;
+        }
+
+        public void setVolumeMultiplier(double volumeMultiplier) {
+            this.volumeMultiplier = volumeMultiplier;
+        }
+
+        public int getHalfLifeCandles() {
+            return halfLifeCandles;
+        }
+
+        public void setHalfLifeCandles(int halfLifeCandles) {
+            this.halfLifeCandles = halfLifeCandles;
+        }
+
+        public double getRangePercent() {
+            return rangePercent;
+        }
+
+        public void setRangePercent(double rangePercent) {
+            this.rangePercent = rangePercent;
+        }
+
+        public int getPersistIntervalCandles() {
+            return persistIntervalCandles;
+        }
+
+        public void setPersistIntervalCandles(int persistIntervalCandles) {
+            this.persistIntervalCandles = persistIntervalCandles;
+        }
+    }
+
+    public static class Ensemble {
+        private boolean enabled = false;
+        // Участники: изменения параметров обучения через ';' (имена как в /admin/settings), участники через ','
+        private List<String> members = new ArrayList<>(List.of(
+                "modelType=MLP",
+                "modelType=LSTM;lstmHiddenSize=32",
+                "modelType=LSTM;lstmHiddenSize=64",
+                "modelType=LSTM;lstmHiddenSize=64;trainingPeriod=1000"));
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private String aggregation = "median"; // "median" или "weighted" (веса — обратная ошибка)
+        private int retrainInterval = 12;      // полное переобучение участников раз в N свечей
+        private double pruneErrorRatio = 2.0;  // исключить участника, чья ошибка во столько раз хуже лучшей
+        private int pruneMinSamples = 50;      // реализованных прогнозов до первой оценки ошибки
+        private long maxMemberMillis = 0;      // исключить участника, чьё обучение дольше; 0 — без ограничения
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getMembers() {
+            return members;
+        }
+
+        public void setMembers(List<String> members) {
+            this.members = members;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public String getAggregation() {
+            return aggregation;
+        }
+
+        public void setAggregation(String aggregation) {
+            this.aggregation = aggregation;
+        }
+
+        public int getRetrainInterval() {
+            return retrainInterval;
+        }
+
+        public void setRetrainInterval(int retrainInterval) {
+            this.retrainInterval = retrainInterval;
+        }
+
+        public double getPruneErrorRatio() {
+            return pruneErrorRatio;
+        }
+
+        public void setPruneErrorRatio(double pruneErrorRatio) {
+            this.pruneErrorRatio = pruneErrorRatio;
+        }
+
+        public int getPruneMinSamples() {
+            return pruneMinSamples;
+        }
+
+        public void setPruneMinSamples(int pruneMinSamples) {
+            this.pruneMinSamples = pruneMinSamples;
+        }
+
+        public long getMaxMemberMillis() {
+            return maxMemberMillis;
+        }
+
+        public void setMaxMemberMillis(long maxMemberMillis) {
+            this.maxMemberMillis = maxMemberMillis;
+        }
+    }
+}
@@ -1,162 +1,833 @@
 package com.crypto;
 
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class DatabaseManager {
+    private static final Logger log = LoggerFactory.getLogger(DatabaseManager.class);
     private static final String DB_URL = "jdbc:sqlite:crypto_data.db";
-    private final Object lock = new Object(); // Объект для синхронизации
-
-    public DatabaseManager() {
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            conn.createStatement().execute(
-                    "CREATE TABLE IF NOT EXISTS candles (" +
-                            "timestamp INTEGER PRIMARY KEY, open REAL, high REAL, low REAL, close REAL, volume REAL)");
-            conn.createStatement().execute(
-                    "CREATE TABLE IF NOT EXISTS indicators (" +
-                            "timestamp INTEGER PRIMARY KEY, sma REAL, rsi REAL, " +
-                            "stochastic_k REAL, stochastic_d REAL, " +
-                            "stoch_rsi_k REAL, stoch_rsi_d REAL)");
-            conn.createStatement().execute(
-                    "CREATE TABLE IF NOT EXISTS imbalance_zones (" +
-                            "timestamp INTEGER PRIMARY KEY, price REAL, volume REAL)");
-            conn.createStatement().execute(
-                    "CREATE TABLE IF NOT EXISTS liquidations (" +
-                            "timestamp INTEGER, side TEXT, qty REAL)");
-            System.out.println("Database tables initialized.");
-        } catch (SQLException e) {
-            System.err.println("Failed to initialize database: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
-    public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(DB_URL);
-    }
-
-    public void saveCandle(long timestamp, double open, double high, double low, double close, double volume) {
-        synchronized (lock) {
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "INSERT OR REPLACE INTO candles (timestamp, open, high, low, close, volume) VALUES (?, ?, ?, ?, ?, ?)")) {
-                stmt.setLong(1, timestamp);
-                stmt.setDouble(2, open);
-                stmt.setDouble(3, high);
-                stmt.setDouble(4, low);
-                stmt.setDouble(5, close);
-                stmt.setDouble(6, volume);
-                int rowsAffected = stmt.executeUpdate();
-                if (rowsAffected > 0) {
-                    // System.out.println("Saved candle: timestamp=" + timestamp + ", close=" + close);
+    // Единственный поток старой схемы, в которой таблицы не хранили инструмент и таймфрейм
+    private static final String LEGACY_SYMBOL = "ETHUSDT";
+    private static final String LEGACY_TIMEFRAME = "5m";
+    private static final int READER_POOL_SIZE = 4;
+    // PRAGMA user_version после всех миграций migrateSchema
+    private static final int SCHEMA_VERSION = 1;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final String WITHOUT_ROWID = " WITHOUT ROWID";
+
+    /**
+     * Колонки таблиц. Таблицы с составным ключом хранятся WITHOUT ROWID: строка лежит прямо
+     * в B-дереве первичного ключа, поэтому чтение диапазона по времени не ходит во второй индекс.
+     * У liquidations ключа нет (одинаковые события допустимы), она остаётся rowid-таблицей.
+     */
+    private static final Map<String, String> TABLES = new LinkedHashMap<>();
+
+    static {
+        TABLES.put("candles",
+                "symbol TEXT NOT NULL, timeframe TEXT NOT NULL, timestamp INTEGER NOT NULL, " +
+                        "open REAL, high REAL, low REAL, close REAL, volume REAL, " +
+                        "PRIMARY KEY (symbol, timeframe, timestamp))" + WITHOUT_ROWID);
+        TABLES.put("indicators",
+                "symbol TEXT NOT NULL, timeframe TEXT NOT NULL, timestamp INTEGER NOT NULL, " +
+                        "sma REAL, rsi REAL, " +
+                        "stochastic_k REAL, stochastic_d REAL, " +
+                        "stoch_rsi_k REAL, stoch_rsi_d REAL, " +
+                        "PRIMARY KEY (symbol, timeframe, timestamp))" + WITHOUT_ROWID);
+        TABLES.put("imbalance_zones",
+                "symbol TEXT NOT NULL, timeframe TEXT NOT NULL, timestamp INTEGER NOT NULL, " +
+                        "price REAL, volume REAL, " +
+                        "PRIMARY KEY (symbol, timeframe, timestamp))" + WITHOUT_ROWID);
+        TABLES.put("liquidations",
+                "symbol TEXT NOT NULL, timestamp INTEGER, side TEXT, qty REAL)");
+        TABLES.put("liquidation_buckets",
+                "symbol TEXT NOT NULL, timeframe TEXT NOT NULL, timestamp INTEGER NOT NULL, " +
+                        "long_qty REAL, short_qty REAL, count INTEGER, max_qty REAL, " +
+                        "PRIMARY KEY (symbol, timeframe, timestamp))" + WITHOUT_ROWID);
+        TABLES.put("predictions",
+                "symbol TEXT NOT NULL, timeframe TEXT NOT NULL, candle_timestamp INTEGER NOT NULL, " +
+                        "created_at INTEGER NOT NULL, model_version INTEGER NOT NULL, " +
+                        "predicted_price REAL NOT NULL, realized_close REAL, " +
+                        "PRIMARY KEY (symbol, timeframe, candle_timestamp))" + WITHOUT_ROWID);
+    }
+
+    private static final String INSERT_CANDLE =
+            "INSERT OR REPLACE INTO candles (symbol, timeframe, timestamp, open, high, low, close, volume) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_LIQUIDATION =
+            "INSERT INTO liquidations (symbol, timestamp, side, qty) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_LIQUIDATION_BUCKET =
+            "INSERT OR REPLACE INTO liquidation_buckets (symbol, timeframe, timestamp, long_qty, short_qty, count, max_qty) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_INDICATORS =
+            "INSERT OR REPLACE INTO indicators (symbol, timeframe, timestamp, sma, rsi, stochastic_k, stochastic_d, stoch_rsi_k, stoch_rsi_d) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_IMBALANCE_ZONE =
+            "INSERT OR REPLACE INTO imbalance_zones (symbol, timeframe, timestamp, price, volume) VALUES (?, ?, ?, ?, ?)";
+    private static final String DELETE_IMBALANCE_ZONES_FROM =
+            "DELETE FROM imbalance_zones WHERE symbol = ? AND timeframe = ? AND timestamp >= ?";
+    private static final String SELECT_IMBALANCE_ZONES =
+            "SELECT timestamp, price, volume FROM imbalance_zones " +
+                    "WHERE symbol = ? AND timeframe = ? AND timestamp >= ? ORDER BY timestamp";
+    // Повторный прогноз той же свечи заменяет предыдущий, не трогая уже записанное закрытие
+    private static final String UPSERT_PREDICTION =
+            "INSERT INTO predictions (symbol, timeframe, candle_timestamp, created_at, model_version, predicted_price) " +
+                    "VALUES (?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (symbol, timeframe, candle_timestamp) DO UPDATE SET " +
+                    "created_at = excluded.created_at, model_version = excluded.model_version, " +
+                    "predicted_price = excluded.predicted_price";
+    private static final String UPDATE_REALIZED_CLOSE =
+            "UPDATE predictions SET realized_close = ? WHERE symbol = ? AND timeframe = ? AND candle_timestamp = ?";
+    // Последние limit прогнозов в диапазоне [from, to], по убыванию времени свечи
+    private static final String SELECT_PREDICTIONS =
+            "SELECT candle_timestamp, created_at, model_version, predicted_price, realized_close FROM predictions " +
+                    "WHERE symbol = ? AND timeframe = ? AND candle_timestamp >= ? AND candle_timestamp <= ? " +
+                    "ORDER BY candle_timestamp DESC LIMIT ?";
+    private static final String SELECT_CANDLES =
+            "SELECT timestamp, open, high, low, close, volume FROM candles " +
+                    "WHERE symbol = ? AND timeframe = ? ORDER BY timestamp DESC LIMIT ?";
+    private static final String SELECT_CANDLES_BETWEEN =
+            "SELECT timestamp, open, high, low, close, volume FROM candles " +
+                    "WHERE symbol = ? AND timeframe = ? AND timestamp BETWEEN ? AND ? ORDER BY timestamp";
+    private static final String SELECT_LAST_CANDLE_TIMESTAMP =
+            "SELECT MAX(timestamp) FROM candles WHERE symbol = ? AND timeframe = ?";
+    private static final String SELECT_LIQUIDATION_BUCKETS =
+            "SELECT timestamp, long_qty, short_qty, count, max_qty FROM liquidation_buckets " +
+                    "WHERE symbol = ? AND timeframe = ? AND timestamp BETWEEN ? AND ? ORDER BY timestamp";
+    // Сырые ликвидации, сгруппированные по свече (timestamp - tf, timestamp]
+    private static final String AGGREGATE_LIQUIDATIONS =
+            "SELECT ((timestamp + ?2 - 1) / ?2) * ?2 AS bucket, " +
+                    "SUM(CASE WHEN side = 'long' THEN qty ELSE 0 END) AS long_qty, " +
+                    "SUM(CASE WHEN side = 'short' THEN qty ELSE 0 END) AS short_qty, " +
+                    "COUNT(*) AS count, MAX(qty) AS max_qty " +
+                    "FROM liquidations WHERE symbol = ?1 AND timestamp > ?3 AND timestamp <= ?4 " +
+                    "GROUP BY bucket ORDER BY bucket";
+
+    private final SqliteConnectionPool pool;
+    private final Timer candleWrites;
+    private final Timer indicatorWrites;
+    private final Timer imbalanceZoneWrites;
+    private final Timer liquidationWrites;
+    private final Timer liquidationBucketWrites;
+    private final Timer predictionWrites;
+
+    @Autowired
+    public DatabaseManager(PipelineMetrics metrics) {
+        this(DB_URL, metrics);
+    }
+
+    public DatabaseManager(String url) {
+        this(url, PipelineMetrics.noop());
+    }
+
+    public DatabaseManager(String url, PipelineMetrics metrics) {
+        candleWrites = metrics.dbWrite("candles");
+        indicatorWrites = metrics.dbWrite("indicators");
+        imbalanceZoneWrites = metrics.dbWrite("imbalance_zones");
+        liquidationWrites = metrics.dbWrite("liquidations");
+        liquidationBucketWrites = metrics.dbWrite("liquidation_buckets");
+        predictionWrites = metrics.dbWrite("predictions");
+        try {
+            pool = new SqliteConnectionPool(url, READER_POOL_SIZE);
+            enableIncrementalVacuum();
+            pool.transaction(conn -> {
+                try (Statement stmt = conn.getConnection().createStatement()) {
+                    migrateToStreamKeys(stmt);
+                    for (Map.Entry<String, String> table : TABLES.entrySet()) {
+                        stmt.execute(createTableSql(table.getKey(), table.getValue()));
+                    }
+                    copyLegacyRows(stmt);
+                    migrateSchema(stmt);
                 }
-            } catch (SQLException e) {
-                System.err.println("Error saving candle: " + e.getMessage());
-                e.printStackTrace();
+                return null;
+            });
+            log.info("Database tables initialized.");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to initialize database", e);
+        }
+    }
+
+    /**
+     * Таблицы старой схемы (ключ — только timestamp) переименовываются в *_legacy,
+     * их строки переносятся в новые таблицы с инструментом и таймфреймом по умолчанию.
+     */
+    private void migrateToStreamKeys(Statement stmt) throws SQLException {
+        for (String table : new String[]{"candles", "indicators", "imbalance_zones", "liquidations"}) {
+            if (tableExists(stmt, table) && !hasColumn(stmt, table, "symbol")) {
+                log.info("Migrating table {} to symbol-keyed schema.", table);
+                stmt.execute("ALTER TABLE " + table + " RENAME TO " + table + "_legacy");
             }
         }
     }
 
-    public void saveLiquidation(long timestamp, String side, double qty) {
-        synchronized (lock) {
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "INSERT INTO liquidations (timestamp, side, qty) VALUES (?, ?, ?)")) {
-                stmt.setLong(1, timestamp);
-                stmt.setString(2, side);
-                stmt.setDouble(3, qty);
-                stmt.executeUpdate();
-                //System.out.println("Saved liquidation: " + side + " " + qty + " at " + timestamp);
-            } catch (SQLException e) {
-                System.err.println("Error saving liquidation: " + e.getMessage());
-                e.printStackTrace();
+    private static String createTableSql(String table, String definition) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" + definition;
+    }
+
+    /**
+     * Миграции по PRAGMA user_version.
+     * 1 — таблицы с составным ключом пересоздаются WITHOUT ROWID; индексы по времени для сырых
+     * ликвидаций (диапазонные запросы и удаление старых событий) и зон дисбаланса (удаление старых зон).
+     */
+    private void migrateSchema(Statement stmt) throws SQLException {
+        int version = pragmaInt(stmt, "user_version");
+        if (version < 1) {
+            for (Map.Entry<String, String> table : TABLES.entrySet()) {
+                if (table.getValue().endsWith(WITHOUT_ROWID) && !isWithoutRowid(stmt, table.getKey())) {
+                    log.info("Rebuilding table {} as WITHOUT ROWID.", table.getKey());
+                    String old = table.getKey() + "_rowid";
+                    stmt.execute("ALTER TABLE " + table.getKey() + " RENAME TO " + old);
+                    stmt.execute(createTableSql(table.getKey(), table.getValue()));
+                    stmt.execute("INSERT INTO " + table.getKey() + " SELECT * FROM " + old);
+                    stmt.execute("DROP TABLE " + old);
+                }
             }
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_liquidations_timestamp ON liquidations (timestamp)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_imbalance_zones_timestamp ON imbalance_zones (timestamp)");
+        }
+        if (version < SCHEMA_VERSION) {
+            stmt.execute("PRAGMA user_version = " + SCHEMA_VERSION);
         }
     }
 
-    public void saveIndicators(long timestamp, double sma, double rsi, double stochasticK, double stochasticD,
-                               double stochRsiK, double stochRsiD) {
-        synchronized (lock) {
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "INSERT OR REPLACE INTO indicators (timestamp, sma, rsi, stochastic_k, stochastic_d, stoch_rsi_k, stoch_rsi_d) " +
-                                 "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
-                stmt.setLong(1, timestamp);
-                stmt.setDouble(2, sma);
-                stmt.setDouble(3, rsi);
-                stmt.setDouble(4, stochasticK);
-                stmt.setDouble(5, stochasticD);
-                stmt.setDouble(6, stochRsiK);
-                stmt.setDouble(7, stochRsiD);
-                stmt.executeUpdate();
-            } catch (SQLException e) {
-                e.printStackTrace();
+    /**
+     * Освобождённые удалением страницы возвращаются файлу только при auto_vacuum.
+     * Новая (пустая) база сразу получает INCREMENTAL: VACUUM пустого файла мгновенный. Существующая
+     * база при открытии не перестраивается — это делает convertToIncrementalVacuum по запросу.
+     */
+    private void enableIncrementalVacuum() throws SQLException {
+        pool.write(conn -> {
+            try (Statement stmt = conn.getConnection().createStatement()) {
+                if (pragmaInt(stmt, "auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+                    return null;
+                }
+                if (isEmptySchema(stmt)) {
+                    stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                    stmt.execute("VACUUM");
+                } else {
+                    log.info("Incremental auto-vacuum is off; freed pages stay in the file until " +
+                            "POST /admin/database/incremental-vacuum converts it.");
+                }
             }
+            return null;
+        });
+    }
+
+    /**
+     * Переводит существующую базу в auto_vacuum = INCREMENTAL одним полным VACUUM: файл
+     * перестраивается целиком, на это время блокируются все записи, и нужно до двух размеров
+     * файла свободного места. Возвращает false, если база уже в этом режиме.
+     */
+    public boolean convertToIncrementalVacuum() throws SQLException {
+        return pool.write(conn -> {
+            try (Statement stmt = conn.getConnection().createStatement()) {
+                if (pragmaInt(stmt, "auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+                    return false;
+                }
+                log.info("Enabling incremental auto-vacuum, rebuilding database file.");
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("VACUUM");
+                return true;
+            }
+        });
+    }
+
+    private static boolean isEmptySchema(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+            return !rs.next() || rs.getInt(1) == 0;
+        }
+    }
+
+    private static boolean isWithoutRowid(Statement stmt, String table) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(
+                "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = '" + table + "'")) {
+            return rs.next() && rs.getString(1).toUpperCase().contains(WITHOUT_ROWID.trim());
+        }
+    }
+
+    private static int pragmaInt(Statement stmt, String pragma) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + pragma)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private void copyLegacyRows(Statement stmt) throws SQLException {
+        String symbol = "'" + LEGACY_SYMBOL + "'";
+        String timeframe = "'" + LEGACY_TIMEFRAME + "'";
+        if (tableExists(stmt, "candles_legacy")) {
+            stmt.execute("INSERT OR REPLACE INTO candles (symbol, timeframe, timestamp, open, high, low, close, volume) " +
+                    "SELECT " + symbol + ", " + timeframe + ", timestamp, open, high, low, close, volume FROM candles_legacy");
+            stmt.execute("DROP TABLE candles_legacy");
+        }
+        if (tableExists(stmt, "indicators_legacy")) {
+            stmt.execute("INSERT OR REPLACE INTO indicators (symbol, timeframe, timestamp, sma, rsi, stochastic_k, stochastic_d, stoch_rsi_k, stoch_rsi_d) " +
+                    "SELECT " + symbol + ", " + timeframe + ", timestamp, sma, rsi, stochastic_k, stochastic_d, stoch_rsi_k, stoch_rsi_d " +
+                    "FROM indicators_legacy");
+            stmt.execute("DROP TABLE indicators_legacy");
+        }
+        if (tableExists(stmt, "imbalance_zones_legacy")) {
+            stmt.execute("INSERT OR REPLACE INTO imbalance_zones (symbol, timeframe, timestamp, price, volume) " +
+                    "SELECT " + symbol + ", " + timeframe + ", timestamp, price, volume FROM imbalance_zones_legacy");
+            stmt.execute("DROP TABLE imbalance_zones_legacy");
+        }
+        if (tableExists(stmt, "liquidations_legacy")) {
+            stmt.execute("INSERT INTO liquidations (symbol, timestamp, side, qty) " +
+                    "SELECT " + symbol + ", timestamp, side, qty FROM liquidations_legacy");
+            stmt.execute("DROP TABLE liquidations_legacy");
         }
     }
 
-    public void saveImbalanceZone(long timestamp, double price, double volume) {
-        synchronized (lock) {
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "INSERT OR REPLACE INTO imbalance_zones (timestamp, price, volume) VALUES (?, ?, ?)")) {
-                stmt.setLong(1, timestamp);
-                stmt.setDouble(2, price);
-                stmt.setDouble(3, volume);
-                int rowsAffected = stmt.executeUpdate();
-                if (rowsAffected > 0) {
-                    // System.out.println("Saved imbalance zone: timestamp=" + timestamp + ", price=" + price);
+    private static boolean tableExists(Statement stmt, String table) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = '" + table + "'")) {
+            return rs.next();
+        }
+    }
+
+    private static boolean hasColumn(Statement stmt, String table, String column) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
                 }
-            } catch (SQLException e) {
-                System.err.println("Error saving imbalance zone: " + e.getMessage());
-                e.printStackTrace();
             }
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.close();
+    }
+
+    /**
+     * Выполняет чтение на одном из соединений пула читателей, не дожидаясь писателя.
+     */
+    public <T> T read(SqliteConnectionPool.SqlWork<T> work) throws SQLException {
+        return pool.read(work);
+    }
+
+    private <T> T timedWrite(Timer timer, SqliteConnectionPool.SqlWork<T> work) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            return pool.write(work);
+        } finally {
+            timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private <T> T timedTransaction(Timer timer, SqliteConnectionPool.SqlWork<T> work) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            return pool.transaction(work);
+        } finally {
+            timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void saveCandle(MarketStream stream, long timestamp, double open, double high, double low, double close,
+                           double volume) {
+        try {
+            timedWrite(candleWrites, conn -> {
+                PreparedStatement stmt = conn.prepare(INSERT_CANDLE);
+                stmt.setString(1, stream.getSymbol());
+                stmt.setString(2, stream.getTimeframe());
+                stmt.setLong(3, timestamp);
+                stmt.setDouble(4, open);
+                stmt.setDouble(5, high);
+                stmt.setDouble(6, low);
+                stmt.setDouble(7, close);
+                stmt.setDouble(8, volume);
+                return stmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            log.error("Error saving candle", e);
+        }
+    }
+
+    public void saveLiquidation(String symbol, long timestamp, String side, double qty) {
+        try {
+            timedWrite(liquidationWrites, conn -> {
+                PreparedStatement stmt = conn.prepare(INSERT_LIQUIDATION);
+                stmt.setString(1, symbol);
+                stmt.setLong(2, timestamp);
+                stmt.setString(3, side);
+                stmt.setDouble(4, qty);
+                return stmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            log.error("Error saving liquidation", e);
+        }
+    }
+
+    public void saveIndicators(MarketStream stream, long timestamp, double sma, double rsi, double stochasticK,
+                               double stochasticD, double stochRsiK, double stochRsiD) {
+        try {
+            timedWrite(indicatorWrites, conn -> {
+                PreparedStatement stmt = conn.prepare(INSERT_INDICATORS);
+                stmt.setString(1, stream.getSymbol());
+                stmt.setString(2, stream.getTimeframe());
+                stmt.setLong(3, timestamp);
+                stmt.setDouble(4, sma);
+                stmt.setDouble(5, rsi);
+                stmt.setDouble(6, stochasticK);
+                stmt.setDouble(7, stochasticD);
+                stmt.setDouble(8, stochRsiK);
+                stmt.setDouble(9, stochRsiD);
+                return stmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            log.error("Error saving indicators", e);
+        }
+    }
+
+    public void saveImbalanceZone(MarketStream stream, long timestamp, double price, double volume) {
+        try {
+            timedWrite(imbalanceZoneWrites, conn -> {
+                PreparedStatement stmt = conn.prepare(INSERT_IMBALANCE_ZONE);
+                stmt.setString(1, stream.getSymbol());
+                stmt.setString(2, stream.getTimeframe());
+                stmt.setLong(3, timestamp);
+                stmt.setDouble(4, price);
+                stmt.setDouble(5, volume);
+                return stmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            log.error("Error saving imbalance zone", e);
+        }
+    }
+
+    /** Корзины ликвидаций по свечам; корзина с тем же временем заменяется целиком. */
+    public void saveLiquidationBuckets(MarketStream stream, List<LiquidationBucket> buckets) {
+        if (buckets.isEmpty()) return;
+        try {
+            timedTransaction(liquidationBucketWrites, conn -> {
+                PreparedStatement stmt = conn.prepare(INSERT_LIQUIDATION_BUCKET);
+                for (LiquidationBucket bucket : buckets) {
+                    stmt.setString(1, stream.getSymbol());
+                    stmt.setString(2, stream.getTimeframe());
+                    stmt.setLong(3, bucket.getTimestamp());
+                    stmt.setDouble(4, bucket.getLongQty());
+                    stmt.setDouble(5, bucket.getShortQty());
+                    stmt.setInt(6, bucket.getCount());
+                    stmt.setDouble(7, bucket.getMaxQty());
+                    stmt.addBatch();
+                }
+                return stmt.executeBatch();
+            });
+        } catch (SQLException e) {
+            log.error("Error saving liquidation buckets", e);
+        }
+    }
+
+    public void saveCandles(MarketStream stream, List<Candle> candles) {
+        if (candles.isEmpty()) return;
+        try {
+            timedTransaction(candleWrites, conn -> {
+                PreparedStatement stmt = conn.prepare(INSERT_CANDLE);
+                for (Candle candle : candles) {
+                    stmt.setString(1, stream.getSymbol());
+                    stmt.setString(2, stream.getTimeframe());
+                    stmt.setLong(3, candle.getTimestamp());
+                    stmt.setDouble(4, candle.getOpen());
+                    stmt.setDouble(5, candle.getHigh());
+                    stmt.setDouble(6, candle.getLow());
+                    stmt.setDouble(7, candle.getClose());
+                    stmt.setDouble(8, candle.getVolume());
+                    stmt.addBatch();
+                }
+                return stmt.executeBatch();
+            });
+        } catch (SQLException e) {
+            log.error("Error saving candles batch", e);
+        }
+    }
+
+    public void saveIndicatorsBatch(MarketStream stream, List<IndicatorRow> rows) {
+        if (rows.isEmpty()) return;
+        try {
+            timedTransaction(indicatorWrites, conn -> {
+                PreparedStatement stmt = conn.prepare(INSERT_INDICATORS);
+                for (IndicatorRow row : rows) {
+                    stmt.setString(1, stream.getSymbol());
+                    stmt.setString(2, stream.getTimeframe());
+                    stmt.setLong(3, row.getTimestamp());
+                    stmt.setDouble(4, row.getSma());
+                    stmt.setDouble(5, row.getRsi());
+                    stmt.setDouble(6, row.getStochasticK());
+                    stmt.setDouble(7, row.getStochasticD());
+                    stmt.setDouble(8, row.getStochRsiK());
+                    stmt.setDouble(9, row.getStochRsiD());
+                    stmt.addBatch();
+                }
+                return stmt.executeBatch();
+            });
+        } catch (SQLException e) {
+            log.error("Error saving indicators batch", e);
         }
     }
 
-    public List<Candle> getCandles(int limit) {
-        synchronized (lock) {
-            List<Candle> candles = new ArrayList<>();
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "SELECT timestamp, open, high, low, close, volume FROM candles ORDER BY timestamp DESC LIMIT ?")) {
-                stmt.setInt(1, limit);
+    public void saveImbalanceZones(MarketStream stream, List<ImbalanceZone> zones) {
+        if (zones.isEmpty()) return;
+        try {
+            timedTransaction(imbalanceZoneWrites, conn -> {
+                PreparedStatement stmt = conn.prepare(INSERT_IMBALANCE_ZONE);
+                for (ImbalanceZone zone : zones) {
+                    stmt.setString(1, stream.getSymbol());
+                    stmt.setString(2, stream.getTimeframe());
+                    stmt.setLong(3, zone.getTimestamp());
+                    stmt.setDouble(4, zone.getPrice());
+                    stmt.setDouble(5, zone.getVolume());
+                    stmt.addBatch();
+                }
+                return stmt.executeBatch();
+            });
+        } catch (SQLException e) {
+            log.error("Error saving imbalance zones batch", e);
+        }
+    }
+
+    /** Заменяет зоны потока со временем не раньше from на zones одной транзакцией. */
+    public void replaceImbalanceZones(MarketStream stream, long from, List<ImbalanceZone> zones) {
+        try {
+            timedTransaction(imbalanceZoneWrites, conn -> {
+                PreparedStatement delete = conn.prepare(DELETE_IMBALANCE_ZONES_FROM);
+                delete.setString(1, stream.getSymbol());
+                delete.setString(2, stream.getTimeframe());
+                delete.setLong(3, from);
+                delete.executeUpdate();
+                PreparedStatement insert = conn.prepare(INSERT_IMBALANCE_ZONE);
+                for (ImbalanceZone zone : zones) {
+                    insert.setString(1, stream.getSymbol());
+                    insert.setString(2, stream.getTimeframe());
+                    insert.setLong(3, zone.getTimestamp());
+                    insert.setDouble(4, zone.getPrice());
+                    insert.setDouble(5, zone.getVolume());
+                    insert.addBatch();
+                }
+                return zones.isEmpty() ? null : insert.executeBatch();
+            });
+        } catch (SQLException e) {
+            log.error("Error replacing imbalance zones", e);
+        }
+    }
+
+    public List<Candle> getCandles(MarketStream stream, int limit) {
+        List<Candle> candles = new ArrayList<>();
+        try {
+            pool.read(conn -> {
+                PreparedStatement stmt = conn.prepare(SELECT_CANDLES);
+                stmt.setString(1, stream.getSymbol());
+                stmt.setString(2, stream.getTimeframe());
+                stmt.setInt(3, limit);
                 try (ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
                         candles.add(new Candle(rs.getLong("timestamp"), rs.getDouble("open"), rs.getDouble("high"),
                                 rs.getDouble("low"), rs.getDouble("close"), rs.getDouble("volume")));
                     }
                 }
-            } catch (SQLException e) {
-                System.err.println("Error retrieving candles: " + e.getMessage());
-                e.printStackTrace();
+                return null;
+            });
+        } catch (SQLException e) {
+            log.error("Error retrieving candles", e);
+        }
+        return candles;
+    }
+
+    /** Свечи со временем в [from, to], по возрастанию времени. */
+    public List<Candle> getCandlesBetween(MarketStream stream, long from, long to) {
+        List<Candle> candles = new ArrayList<>();
+        try {
+            pool.read(conn -> {
+                PreparedStatement stmt = conn.prepare(SELECT_CANDLES_BETWEEN);
+                stmt.setString(1, stream.getSymbol());
+                stmt.setString(2, stream.getTimeframe());
+                stmt.setLong(3, from);
+                stmt.setLong(4, to);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        candles.add(new Candle(rs.getLong("timestamp"), rs.getDouble("open"), rs.getDouble("high"),
+                                rs.getDouble("low"), rs.getDouble("close"), rs.getDouble("volume")));
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            log.error("Error retrieving candles", e);
+        }
+        return candles;
+    }
+
+    /** Зоны дисбаланса со временем не раньше from, по возрастанию времени. */
+    public List<ImbalanceZone> getImbalanceZones(MarketStream stream, long from) {
+        List<ImbalanceZone> zones = new ArrayList<>();
+        try {
+            pool.read(conn -> {
+                PreparedStatement stmt = conn.prepare(SELECT_IMBALANCE_ZONES);
+                stmt.setString(1, stream.getSymbol());
+                stmt.setString(2, stream.getTimeframe());
+                stmt.setLong(3, from);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        zones.add(new ImbalanceZone(rs.getLong(1), rs.getDouble(2), rs.getDouble(3)));
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            log.error("Error retrieving imbalance zones", e);
+        }
+        return zones;
+    }
+
+    /** Сохранённые корзины ликвидаций со временем свечи в [from, to], по возрастанию времени. */
+    public List<LiquidationBucket> getLiquidationBuckets(MarketStream stream, long from, long to) {
+        List<LiquidationBucket> buckets = new ArrayList<>();
+        try {
+            pool.read(conn -> {
+                PreparedStatement stmt = conn.prepare(SELECT_LIQUIDATION_BUCKETS);
+                stmt.setString(1, stream.getSymbol());
+                stmt.setString(2, stream.getTimeframe());
+                stmt.setLong(3, from);
+                stmt.setLong(4, to);
+                readLiquidationBuckets(stmt, buckets);
+                return null;
+            });
+        } catch (SQLException e) {
+            log.error("Error retrieving liquidation buckets", e);
+        }
+        return buckets;
+    }
+
+    /**
+     * Корзины, собранные из сырых ликвидаций со временем в (after, to], по возрастанию времени.
+     * Сканирует таблицу liquidations, поэтому нужна только при старте и для бэктеста.
+     */
+    public List<LiquidationBucket> aggregateLiquidations(MarketStream stream, long after, long to) {
+        List<LiquidationBucket> buckets = new ArrayList<>();
+        try {
+            pool.read(conn -> {
+                PreparedStatement stmt = conn.prepare(AGGREGATE_LIQUIDATIONS);
+                stmt.setString(1, stream.getSymbol());
+                stmt.setLong(2, stream.getTimeframeMillis());
+                stmt.setLong(3, after);
+                stmt.setLong(4, to);
+                readLiquidationBuckets(stmt, buckets);
+                return null;
+            });
+        } catch (SQLException e) {
+            log.error("Error aggregating liquidations", e);
+        }
+        return buckets;
+    }
+
+    private static void readLiquidationBuckets(PreparedStatement stmt, List<LiquidationBucket> buckets)
+            throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                buckets.add(new LiquidationBucket(rs.getLong(1), rs.getDouble(2), rs.getDouble(3), rs.getInt(4),
+                        rs.getDouble(5)));
             }
-            return candles;
         }
     }
 
-    public long getLastCandleTimestamp() {
-        synchronized (lock) {
-            try (Connection conn = getConnection();
-                 ResultSet rs = conn.createStatement().executeQuery("SELECT MAX(timestamp) FROM candles")) {
-                return rs.next() ? rs.getLong(1) : 0;
+    public long getLastCandleTimestamp(MarketStream stream) {
+        try {
+            return pool.read(conn -> {
+                PreparedStatement stmt = conn.prepare(SELECT_LAST_CANDLE_TIMESTAMP);
+                stmt.setString(1, stream.getSymbol());
+                stmt.setString(2, stream.getTimeframe());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            });
+        } catch (SQLException e) {
+            log.error("Error retrieving last candle timestamp", e);
+            return 0;
+        }
+    }
+
+    public void savePrediction(MarketStream stream, PredictionRecord record) {
+        try {
+            timedWrite(predictionWrites, conn -> {
+                PreparedStatement stmt = conn.prepare(UPSERT_PREDICTION);
+                stmt.setString(1, stream.getSymbol());
+                stmt.setString(2, stream.getTimeframe());
+                stmt.setLong(3, record.getCandleTimestamp());
+                stmt.setLong(4, record.getCreatedAt());
+                stmt.setLong(5, record.getModelVersion());
+                stmt.setDouble(6, record.getPredictedPrice());
+                return stmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            log.error("Error saving prediction", e);
+        }
+    }
+
+    public void saveRealizedClose(MarketStream stream, long candleTimestamp, double close) {
+        try {
+            timedWrite(predictionWrites, conn -> {
+                PreparedStatement stmt = conn.prepare(UPDATE_REALIZED_CLOSE);
+                stmt.setDouble(1, close);
+                stmt.setString(2, stream.getSymbol());
+                stmt.setString(3, stream.getTimeframe());
+                stmt.setLong(4, candleTimestamp);
+                return stmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            log.error("Error saving realized close", e);
+        }
+    }
+
+    /** Последние limit прогнозов со временем свечи в [from, to], по возрастанию времени. */
+    public List<PredictionRecord> getPredictions(MarketStream stream, long from, long to, int limit) {
+        try {
+            return pool.read(conn -> {
+                PreparedStatement stmt = conn.prepare(SELECT_PREDICTIONS);
+                stmt.setString(1, stream.getSymbol());
+                stmt.setString(2, stream.getTimeframe());
+                stmt.setLong(3, from);
+                stmt.setLong(4, to);
+                stmt.setInt(5, limit);
+                List<PredictionRecord> records = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        double realized = rs.getDouble(5);
+                        records.add(new PredictionRecord(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getDouble(4),
+                                rs.wasNull() ? null : realized));
+                    }
+                }
+                Collections.reverse(records);
+                return records;
+            });
+        } catch (SQLException e) {
+            log.error("Error loading predictions", e);
+            return new ArrayList<>();
+        }
+    }
+
+    public Candle getLastCandle(MarketStream stream) {
+        List<Candle> candles = getCandles(stream, 1);
+        return candles.isEmpty() ? null : candles.get(0);
+    }
+
+    /**
+     * Удаляет строки со временем свечи раньше cutoff, а сырые ликвидации — раньше rawLiquidationCutoff
+     * (агрегаты по свечам остаются в liquidation_buckets). Каждая таблица чистится отдельным
+     * запросом, чтобы не держать писателя на всё время очистки. Возвращает число удалённых строк по таблицам.
+     */
+    public Map<String, Integer> deleteOlderThan(long cutoff, long rawLiquidationCutoff) {
+        Map<String, Integer> deleted = new LinkedHashMap<>();
+        for (String table : TABLES.keySet()) {
+            String column = table.equals("predictions") ? "candle_timestamp" : "timestamp";
+            long tableCutoff = table.equals("liquidations") ? rawLiquidationCutoff : cutoff;
+            try {
+                deleted.put(table, pool.write(conn -> {
+                    PreparedStatement stmt = conn.prepare("DELETE FROM " + table + " WHERE " + column + " < ?");
+                    stmt.setLong(1, tableCutoff);
+                    return stmt.executeUpdate();
+                }));
             } catch (SQLException e) {
-                System.err.println("Error retrieving last candle timestamp: " + e.getMessage());
-                e.printStackTrace();
-                return 0;
+                log.error("Error deleting old rows from {}", table, e);
             }
         }
+        return deleted;
     }
 
-    public Candle getLastCandle() {
-        List<Candle> candles = getCandles(1);
-        return candles.isEmpty() ? null : candles.get(0);
+    /**
+     * Возвращает файлу до pages свободных страниц и обновляет статистику планировщика
+     * (PRAGMA optimize). Возвращает число освобождённых страниц.
+     */
+    public int incrementalVacuum(int pages) {
+        try {
+            return pool.write(conn -> {
+                try (Statement stmt = conn.getConnection().createStatement()) {
+                    int before = pragmaInt(stmt, "freelist_count");
+                    if (before > 0 && pages > 0) {
+                        // Каждый sqlite3_step прагмы освобождает одну страницу, а драйвер в execute
+                        // и executeQuery делает один шаг (результата без колонок не отдаёт).
+                        // sqlite3_exec проходит выражение до конца — одна прагма вместо цикла
+                        int rc = conn.getConnection().unwrap(SQLiteConnection.class).getDatabase()
+                                ._exec("PRAGMA incremental_vacuum(" + pages + ")");
+                        if (rc != SQLiteErrorCode.SQLITE_OK.code) {
+                            throw new SQLException("PRAGMA incremental_vacuum failed: " + SQLiteErrorCode.getErrorCode(rc));
+                        }
+                    }
+                    int after = pragmaInt(stmt, "freelist_count");
+                    stmt.execute("PRAGMA optimize");
+                    return before - after;
+                }
+            });
+        } catch (SQLException e) {
+            log.error("Error running incremental vacuum", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Размер базы и таблиц и планы основных запросов (EXPLAIN QUERY PLAN) — для отчёта
+     * очистки и /admin/database. Число строк считается полным проходом по таблицам.
+     */
+    public Map<String, Object> describeStorage() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        try {
+            pool.read(conn -> {
+                try (Statement stmt = conn.getConnection().createStatement()) {
+                    Map<String, Long> rows = new LinkedHashMap<>();
+                    for (String table : TABLES.keySet()) {
+                        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                            rows.put(table, rs.next() ? rs.getLong(1) : 0L);
+                        }
+                    }
+                    long pageSize = pragmaInt(stmt, "page_size");
+                    long pageCount = pragmaInt(stmt, "page_count");
+                    report.put("rows", rows);
+                    report.put("fileBytes", pageSize * pageCount);
+                    report.put("freeBytes", pageSize * pragmaInt(stmt, "freelist_count"));
+                    report.put("incrementalVacuum", pragmaInt(stmt, "auto_vacuum") == AUTO_VACUUM_INCREMENTAL);
+                }
+                Map<String, List<String>> plans = new LinkedHashMap<>();
+                plans.put("candles", queryPlan(conn, SELECT_CANDLES));
+                plans.put("candlesBetween", queryPlan(conn, SELECT_CANDLES_BETWEEN));
+                plans.put("liquidationBuckets", queryPlan(conn, SELECT_LIQUIDATION_BUCKETS));
+                plans.put("aggregateLiquidations", queryPlan(conn, AGGREGATE_LIQUIDATIONS));
+                plans.put("predictions", queryPlan(conn, SELECT_PREDICTIONS));
+                plans.put("deleteLiquidations", queryPlan(conn, "DELETE FROM liquidations WHERE timestamp < ?"));
+                plans.put("deleteImbalanceZones", queryPlan(conn, "DELETE FROM imbalance_zones WHERE timestamp < ?"));
+                report.put("queryPlans", plans);
+                return null;
+            });
+        } catch (SQLException e) {
+            log.error("Error describing database storage", e);
+        }
+        return report;
+    }
+
+    private static List<String> queryPlan(SqliteConnectionPool.PooledConnection conn, String sql) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement stmt = conn.getConnection().prepareStatement("EXPLAIN QUERY PLAN " + sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                plan.add(rs.getString("detail"));
+            }
+        }
+        return plan;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,72 @@
+package com.crypto;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая очистка SQLite (crypto.retention.*): раз в intervalMinutes удаляет строки старше горизонта,
+ * сырые ликвидации — раньше (их агрегаты остаются в liquidation_buckets), затем возвращает
+ * освободившиеся страницы через incremental vacuum и пишет в лог размеры таблиц.
+ */
+@Component
+public class DatabaseRetention {
+    private static final Logger log = LoggerFactory.getLogger(DatabaseRetention.class);
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final DatabaseManager dbManager;
+    private final CryptoProperties.Retention settings;
+    private ScheduledExecutorService scheduler;
+
+    public DatabaseRetention(DatabaseManager dbManager, CryptoProperties properties) {
+        this.dbManager = dbManager;
+        this.settings = properties.getRetention();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!settings.isEnabled()) {
+            log.info("Database retention is disabled.");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Первый проход — не сразу, чтобы не мешать загрузке истории и первому обучению
+        scheduler.scheduleWithFixedDelay(this::run, settings.getIntervalMinutes(), settings.getIntervalMinutes(),
+                TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public void run() {
+        try {
+            long now = System.currentTimeMillis();
+            long started = System.nanoTime();
+            Map<String, Integer> deleted = dbManager.deleteOlderThan(now - settings.getHorizonDays() * DAY_MILLIS,
+                    now - settings.getRawLiquidationDays() * DAY_MILLIS);
+            int freedPages = dbManager.incrementalVacuum(settings.getVacuumPages());
+            long millis = (System.nanoTime() - started) / 1_000_000;
+            Map<String, Object> storage = dbManager.describeStorage();
+            log.info("Retention deleted {}, vacuum freed {} pages in {} ms; rows {}, file {} bytes, free {} bytes.",
+                    deleted, freedPages, millis, storage.get("rows"), storage.get("fileBytes"), storage.get("freeBytes"));
+            log.debug("Query plans: {}", storage.get("queryPlans"));
+        } catch (RuntimeException e) {
+            log.error("Database retention failed", e);
+        }
+    }
+}
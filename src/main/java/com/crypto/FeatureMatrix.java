@@ -0,0 +1,88 @@
+package com.crypto;
+
+import java.util.Arrays;
+
+/**
+ * Признаки для окна свечей в хронологическом порядке (от старой к новой).
+ * Строка: open, high, low, close, volume, SMA, RSI, StochK, StochD, StochRSI_K, StochRSI_D.
+ */
+public class FeatureMatrix {
+    public static final int FEATURE_COUNT = 11;
+    public static final int CLOSE = 3;
+
+    private final long[] timestamps;
+    private final double[][] features;
+
+    public FeatureMatrix(long[] timestamps, double[][] features) {
+        this.timestamps = timestamps;
+        this.features = features;
+    }
+
+    /** Матрица по окну буфера свечей; индикаторы берутся из колонок буфера. */
+    public static FeatureMatrix fromView(CandleBuffer.View view) {
+        int size = view.size();
+        long[] timestamps = new long[size];
+        double[][] features = new double[size][];
+        for (int i = 0; i < size; i++) {
+            timestamps[i] = view.getTimestamp(i);
+            features[i] = featureRow(view, i);
+        }
+        return new FeatureMatrix(timestamps, features);
+    }
+
+    /** Строка признаков свечи index окна буфера; для свечей без индикаторов в колонках нули. */
+    public static double[] featureRow(CandleBuffer.View view, int index) {
+        return new double[]{
+                view.getOpen(index), view.getHigh(index), view.getLow(index), view.getClose(index),
+                view.getVolume(index), view.getSma(index), view.getRsi(index),
+                view.getStochasticK(index), view.getStochasticD(index),
+                view.getStochRsiK(index), view.getStochRsiD(index)
+        };
+    }
+
+    /** Строка признаков для одной свечи; отсутствующие индикаторы дают нули, как и в буфере свечей. */
+    public static double[] featureRow(Candle candle, IndicatorRow indicators) {
+        if (indicators == null) {
+            return new double[]{
+                    candle.getOpen(), candle.getHigh(), candle.getLow(), candle.getClose(), candle.getVolume(),
+                    0, 0, 0, 0, 0, 0
+            };
+        }
+        return new double[]{
+                candle.getOpen(), candle.getHigh(), candle.getLow(), candle.getClose(), candle.getVolume(),
+                indicators.getSma(), indicators.getRsi(),
+                indicators.getStochasticK(), indicators.getStochasticD(),
+                indicators.getStochRsiK(), indicators.getStochRsiD()
+        };
+    }
+
+    /** Строки [from, to) как отдельная матрица; массивы строк не копируются. */
+    public FeatureMatrix slice(int from, int to) {
+        return new FeatureMatrix(Arrays.copyOfRange(timestamps, from, to), Arrays.copyOfRange(features, from, to));
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public long getTimestamp(int row) {
+        return timestamps[row];
+    }
+
+    /** Возвращает строку без копирования — не изменять. */
+    public double[] getRow(int row) {
+        return features[row];
+    }
+
+    public double getClose(int row) {
+        return features[row][CLOSE];
+    }
+
+    public double getMaxClose() {
+        double max = 0.0;
+        for (double[] row : features) {
+            max = Math.max(max, row[CLOSE]);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,233 @@
+package com.crypto;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Параллельная докачка истории свечей через /v5/market/kline.
+ * Диапазон режется на страницы по PAGE_SIZE свечей, страницы запрашиваются через sendAsync
+ * общего HttpClient с ограничением числа запросов в полёте и частоты запросов, неудачные
+ * страницы повторяются с экспоненциальной задержкой. Старт каждого запроса откладывается
+ * через delayedExecutor до его слота, потоки при этом не блокируются. Разобранные страницы
+ * пишутся в БД пачками по flushSize свечей. Страницы, не загруженные и после повторов,
+ * возвращаются в Result — их дозагружает вызывающий. Базовый URL задаётся снаружи, поэтому
+ * загрузчик можно направить на локальный mock-сервер.
+ */
+public class HistoricalBackfill {
+    private static final Logger log = LoggerFactory.getLogger(HistoricalBackfill.class);
+    private static final int PAGE_SIZE = 200;
+    private static final long RETRY_BACKOFF_MS = 500;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final DatabaseManager dbManager;
+    private final int maxInFlight;
+    private final int requestsPerSecond;
+    private final int maxRetries;
+    private final int flushSize;
+
+    private final Object rateLock = new Object();
+    private long nextRequestAt = 0;
+
+    public HistoricalBackfill(HttpClient client, String baseUrl, DatabaseManager dbManager, int maxInFlight,
+                              int requestsPerSecond, int maxRetries, int flushSize) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.dbManager = dbManager;
+        this.maxInFlight = maxInFlight;
+        this.requestsPerSecond = requestsPerSecond;
+        this.maxRetries = maxRetries;
+        this.flushSize = flushSize;
+    }
+
+    /**
+     * Загружает свечи с открытием в [startTime, endTime): число загруженных свечей и диапазоны
+     * страниц, которые не удалось загрузить.
+     */
+    public Result load(MarketStream stream, long startTime, long endTime) {
+        long step = stream.getTimeframeMillis();
+        long pageSpan = step * PAGE_SIZE;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        PageSink sink = new PageSink(stream);
+        List<Range> failedRanges = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> pages = new ArrayList<>();
+
+        for (long pageStart = startTime; pageStart < endTime; pageStart += pageSpan) {
+            Range range = new Range(pageStart, Math.min(pageStart + pageSpan, endTime));
+            inFlight.acquireUninterruptibly();
+            // end у Bybit включительный
+            pages.add(fetchPage(stream, range.getStart(), range.getEnd() - 1, 0)
+                    .thenAccept(sink::add)
+                    .exceptionally(e -> {
+                        failedRanges.add(range);
+                        log.warn("[{}] Failed to load candles page starting at {}: {}", stream, range.getStart(),
+                                e.getMessage());
+                        return null;
+                    })
+                    .whenComplete((ignored, e) -> inFlight.release()));
+        }
+
+        CompletableFuture.allOf(pages.toArray(CompletableFuture<?>[]::new)).join();
+        sink.flush();
+        List<Range> failed = new ArrayList<>(failedRanges);
+        failed.sort((a, b) -> Long.compare(a.getStart(), b.getStart()));
+        log.info("[{}] Backfill loaded {} candles in {} pages, {} failed.", stream, sink.total, pages.size(),
+                failed.size());
+        return new Result(sink.total, failed);
+    }
+
+    private CompletableFuture<List<Candle>> fetchPage(MarketStream stream, long start, long end, int attempt) {
+        String url = baseUrl + "/v5/market/kline?category=linear&symbol=" + stream.getSymbol() +
+                "&interval=" + stream.getTimeframe() + "&start=" + start + "&end=" + end + "&limit=" + PAGE_SIZE;
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+
+        return send(request)
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new CompletionException(new IOException("HTTP " + response.statusCode()));
+                    }
+                    return parsePage(response.body(), start, end);
+                })
+                .handle((candles, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(candles);
+                    }
+                    if (attempt >= maxRetries) {
+                        return CompletableFuture.<List<Candle>>failedFuture(error);
+                    }
+                    long delay = RETRY_BACKOFF_MS << attempt;
+                    log.warn("[{}] Retrying candles page {} in {} ms: {}", stream, start, delay, error.getMessage());
+                    return CompletableFuture.supplyAsync(() -> null,
+                                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> fetchPage(stream, start, end, attempt + 1));
+                })
+                .thenCompose(future -> future);
+    }
+
+    private static List<Candle> parsePage(String body, long start, long end) {
+        JSONObject json = new JSONObject(body);
+        int retCode = json.optInt("retCode", 0);
+        if (retCode != 0) {
+            // Например, 10006 — превышен лимит запросов
+            throw new CompletionException(new IOException("Bybit retCode " + retCode + ": " + json.optString("retMsg")));
+        }
+        JSONArray result = json.getJSONObject("result").getJSONArray("list");
+        List<Candle> candles = new ArrayList<>(result.length());
+        for (int i = result.length() - 1; i >= 0; i--) {
+            JSONArray candle = result.getJSONArray(i);
+            long timestamp = candle.getLong(0);
+            if (timestamp < start || timestamp > end) continue;
+            candles.add(new Candle(timestamp, candle.getDouble(1), candle.getDouble(2), candle.getDouble(3),
+                    candle.getDouble(4), candle.getDouble(5)));
+        }
+        return candles;
+    }
+
+    /**
+     * Отправляет запрос в его слот: старты распределены равномерно, не больше requestsPerSecond
+     * в секунду. До слота запрос ждёт в delayedExecutor, а не в припаркованном потоке.
+     */
+    private CompletableFuture<HttpResponse<String>> send(HttpRequest request) {
+        long wait;
+        synchronized (rateLock) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextRequestAt);
+            nextRequestAt = slot + TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+            wait = slot - now;
+        }
+        if (wait <= 0) {
+            return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        }
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS))
+                .thenCompose(ignored -> client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+    }
+
+    /** Итог load: число загруженных свечей и незагруженные диапазоны по возрастанию. */
+    public static final class Result {
+        private final int loaded;
+        private final List<Range> failedRanges;
+
+        private Result(int loaded, List<Range> failedRanges) {
+            this.loaded = loaded;
+            this.failedRanges = Collections.unmodifiableList(failedRanges);
+        }
+
+        public int getLoaded() {
+            return loaded;
+        }
+
+        public List<Range> getFailedRanges() {
+            return failedRanges;
+        }
+    }
+
+    /** Диапазон времени открытия свечей [start, end). */
+    public static final class Range {
+        private final long start;
+        private final long end;
+
+        private Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+
+    /** Копит разобранные страницы и пишет их в БД одной транзакцией на каждые flushSize свечей. */
+    private final class PageSink {
+        private final MarketStream stream;
+        private final List<Candle> buffer = new ArrayList<>();
+        private int total;
+
+        private PageSink(MarketStream stream) {
+            this.stream = stream;
+        }
+
+        private synchronized void add(List<Candle> page) {
+            buffer.addAll(page);
+            total += page.size();
+            if (buffer.size() >= flushSize) {
+                flush();
+            }
+        }
+
+        private synchronized void flush() {
+            if (buffer.isEmpty()) return;
+            dbManager.saveCandles(stream, new ArrayList<>(buffer));
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.crypto;
+
+/**
+ * Зона дисбаланса: свеча с аномальным объёмом, цена зоны — close свечи. Строка таблицы imbalance_zones.
+ */
+public class ImbalanceZone {
+    private final long timestamp;
+    private final double price;
+    private final double volume;
+
+    public ImbalanceZone(long timestamp, double price, double volume) {
+        this.timestamp = timestamp;
+        this.price = price;
+        this.volume = volume;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public double getVolume() {
+        return volume;
+    }
+}
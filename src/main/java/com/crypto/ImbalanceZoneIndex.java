@@ -0,0 +1,100 @@
+package com.crypto;
+
+import java.util.Arrays;
+
+/**
+ * Зоны дисбаланса, упорядоченные по цене, в параллельных примитивных массивах: цена, объём, время.
+ * Границы диапазона цен ищутся двоичным поиском за O(log n); вставка сдвигает хвост массивов,
+ * а удаление устаревших зон — один проход с уплотнением. Зон в окне обучения десятки-сотни,
+ * поэтому сдвиг дешевле дерева с объектом на каждый узел.
+ *
+ * Не синхронизирован: ImbalanceZones обращается к индексу под своим монитором.
+ */
+public class ImbalanceZoneIndex {
+    private double[] prices = new double[16];
+    private double[] volumes = new double[16];
+    private long[] timestamps = new long[16];
+    private int size;
+
+    public void add(long timestamp, double price, double volume) {
+        if (size == prices.length) {
+            prices = Arrays.copyOf(prices, size * 2);
+            volumes = Arrays.copyOf(volumes, size * 2);
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+        }
+        int index = upperBound(price);
+        System.arraycopy(prices, index, prices, index + 1, size - index);
+        System.arraycopy(volumes, index, volumes, index + 1, size - index);
+        System.arraycopy(timestamps, index, timestamps, index + 1, size - index);
+        prices[index] = price;
+        volumes[index] = volume;
+        timestamps[index] = timestamp;
+        size++;
+    }
+
+    /** Удаляет зоны со временем раньше cutoff, сохраняя порядок остальных; возвращает число удалённых. */
+    public int removeOlderThan(long cutoff) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (timestamps[i] >= cutoff) {
+                prices[kept] = prices[i];
+                volumes[kept] = volumes[i];
+                timestamps[kept] = timestamps[i];
+                kept++;
+            }
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Первый индекс с ценой не ниже price; size, если таких нет. */
+    public int lowerBound(double price) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] < price) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Первый индекс с ценой выше price; size, если таких нет. */
+    public int upperBound(double price) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] <= price) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public double getPrice(int index) {
+        return prices[index];
+    }
+
+    public double getVolume(int index) {
+        return volumes[index];
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+}
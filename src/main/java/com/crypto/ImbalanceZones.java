@@ -1,68 +1,206 @@
 package com.crypto;
 
-import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
-@Component
+/**
+ * Зоны дисбаланса потока в памяти (crypto.imbalance.*): свечи окна обучения, объём которых
+ * в volumeMultiplier раз выше среднего по окну. Средний объём — скользящая сумма по кольцу объёмов
+ * окна, поэтому новая свеча обрабатывается за O(1) плюс вставка в индекс, упорядоченный по цене;
+ * зоны, вышедшие из окна, удаляются. Свеча классифицируется один раз, по порогу на момент прихода.
+ * Если trainingPeriod изменился на ходу, индекс и сохранённые зоны окна строятся заново по новому окну.
+ *
+ * Влияние зоны убывает с возрастом с периодом полураспада halfLifeCandles свечей. Запросы влияния
+ * и зон в диапазоне ±X% от цены обслуживаются из индекса двоичным поиском без обращения к БД.
+ * Таблица imbalance_zones нужна только для перезапуска: новые зоны пишутся в неё раз
+ * в persistIntervalCandles свечей и читаются в load.
+ *
+ * update вызывается из цикла обработки потока, запросы — из потоков HTTP, поэтому методы синхронизированы.
+ */
 public class ImbalanceZones {
+    private static final Logger log = LoggerFactory.getLogger(ImbalanceZones.class);
+
+    private final MarketStream stream;
     private final DatabaseManager dbManager;
+    private final CandleBuffer candles;
+    private final RuntimeSettings settings;
+    private final CryptoProperties.Imbalance imbalance;
+    private final ImbalanceZoneIndex index = new ImbalanceZoneIndex();
+    // Объёмы свечей окна: кольцо на trainingPeriod свечей и их сумма
+    private double[] windowVolumes = new double[0];
+    private int windowSize;
+    private int windowHead;
+    private double windowVolume;
+    private long lastTimestamp;
+    // Зоны, ещё не записанные в БД
+    private final List<ImbalanceZone> pending = new ArrayList<>();
+    private int candlesSincePersist;
 
-    public ImbalanceZones(DatabaseManager dbManager) {
+    public ImbalanceZones(MarketStream stream, DatabaseManager dbManager, CandleBuffer candles,
+                          RuntimeSettings settings, CryptoProperties.Imbalance imbalance) {
+        this.stream = stream;
         this.dbManager = dbManager;
+        this.candles = candles;
+        this.settings = settings;
+        this.imbalance = imbalance;
     }
 
-    public void calculateAndSaveZones() {
-        // Получаем все свечи (1000, как в таблице)
-        List<Candle> candles = dbManager.getCandles(Constants.TRAINING_PERIOD);
-        if (candles.isEmpty()) {
-            System.out.println("No candles available to calculate imbalance zones.");
+    /**
+     * Заполняет индекс сохранёнными зонами текущего окна при старте. Свечи после последней
+     * сохранённой зоны классифицируются заново в следующем update.
+     */
+    public synchronized void load() {
+        CandleBuffer.View window = candles.view(settings.get().getTrainingPeriod());
+        if (window.size() == 0) {
             return;
         }
+        index.clear();
+        for (ImbalanceZone zone : dbManager.getImbalanceZones(stream, window.getTimestamp(0))) {
+            index.add(zone.getTimestamp(), zone.getPrice(), zone.getVolume());
+            lastTimestamp = Math.max(lastTimestamp, zone.getTimestamp());
+        }
+        log.info("[{}] Loaded {} imbalance zones.", stream, index.size());
+    }
 
-        // Динамический порог объёма (например, средний объём * 2)
-        double totalVolume = candles.stream().mapToDouble(Candle::getVolume).sum();
-        double avgVolume = totalVolume / candles.size();
-        double volumeThreshold = avgVolume * 2; // Порог — в 2 раза выше среднего
-        //System.out.println("Calculated volume threshold: " + volumeThreshold);
-
-        for (Candle candle : candles) {
-            if (candle.getVolume() > volumeThreshold) {
-                dbManager.saveImbalanceZone(candle.getTimestamp(), candle.getClose(), candle.getVolume());
-//                System.out.println("Saved imbalance zone: timestamp=" + candle.getTimestamp() +
-//                        ", price=" + candle.getClose() + ", volume=" + candle.getVolume());
+    /** Учитывает свечи буфера, пришедшие после прошлого вызова. */
+    public synchronized void update() {
+        int period = settings.get().getTrainingPeriod();
+        CandleBuffer.View window = candles.view(period);
+        if (window.size() == 0) {
+            log.warn("[{}] No candles available to calculate imbalance zones.", stream);
+            return;
+        }
+        int newCandles = 0;
+        while (newCandles < window.size() && window.getTimestamp(window.size() - 1 - newCandles) > lastTimestamp) {
+            newCandles++;
+        }
+        int from = window.size() - newCandles;
+        boolean periodChanged = false;
+        if (windowVolumes.length != period) {
+            // Первый вызов или другая длина окна: кольцо заполняется всем окном
+            periodChanged = windowVolumes.length != 0;
+            windowVolumes = new double[period];
+            windowSize = 0;
+            windowHead = 0;
+            windowVolume = 0;
+            from = 0;
+        }
+        for (int i = from; i < window.size(); i++) {
+            pushVolume(window.getVolume(i));
+        }
+        if (periodChanged) {
+            rebuild(window);
+            return;
+        }
+        if (newCandles == 0) {
+            return;
+        }
+
+        double volumeThreshold = windowVolume / windowSize * imbalance.getVolumeMultiplier();
+        log.debug("[{}] Calculated volume threshold: {}", stream, volumeThreshold);
+        for (int i = window.size() - newCandles; i < window.size(); i++) {
+            if (window.getVolume(i) > volumeThreshold) {
+                index.add(window.getTimestamp(i), window.getClose(i), window.getVolume(i));
+                pending.add(new ImbalanceZone(window.getTimestamp(i), window.getClose(i), window.getVolume(i)));
             }
         }
-        //System.out.println("Finished calculating and saving imbalance zones.");
+        index.removeOlderThan(window.getTimestamp(0));
+        lastTimestamp = window.getTimestamp(window.size() - 1);
+
+        candlesSincePersist += newCandles;
+        if (candlesSincePersist >= imbalance.getPersistIntervalCandles()) {
+            persist();
+        }
     }
 
-    public double getImbalanceInfluence(double currentPrice) {
-        String sql = "SELECT price, volume FROM imbalance_zones ORDER BY timestamp DESC LIMIT 10";
-        try (var conn = dbManager.getConnection();
-             var stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            double influence = 0;
-            int count = 0;
-            while (rs.next()) {
-                double price = rs.getDouble("price");
-                double volume = rs.getDouble("volume");
-                double distance = Math.abs(currentPrice - price);
-                influence += volume / (distance + 1); // Добавляем 1, чтобы избежать деления на 0
-                count++;
+    /**
+     * Окно обучения изменилось: зоны в индексе отобраны по порогу прежнего окна и покрывают
+     * другой диапазон свечей. Все свечи нового окна классифицируются заново по его среднему
+     * объёму — так же, как при первом запуске с пустой таблицей, — и сохранённые зоны окна заменяются.
+     */
+    private void rebuild(CandleBuffer.View window) {
+        persist();
+        double volumeThreshold = windowVolume / windowSize * imbalance.getVolumeMultiplier();
+        List<ImbalanceZone> zones = new ArrayList<>();
+        index.clear();
+        for (int i = 0; i < window.size(); i++) {
+            if (window.getVolume(i) > volumeThreshold) {
+                index.add(window.getTimestamp(i), window.getClose(i), window.getVolume(i));
+                zones.add(new ImbalanceZone(window.getTimestamp(i), window.getClose(i), window.getVolume(i)));
             }
-            if (count == 0) {
-                System.out.println("No imbalance zones found for influence calculation.");
-                return 0;
-            }
-            double normalizedInfluence = influence / 1000;
-            //System.out.println("Calculated imbalance influence: " + normalizedInfluence + " for price=" + currentPrice);
-            return normalizedInfluence;
-        } catch (SQLException e) {
-            System.err.println("Error calculating imbalance influence: " + e.getMessage());
-            e.printStackTrace();
-            return 0;
         }
+        lastTimestamp = window.getTimestamp(window.size() - 1);
+        dbManager.replaceImbalanceZones(stream, window.getTimestamp(0), zones);
+        log.info("[{}] Training period changed, rebuilt {} imbalance zones over {} candles.", stream, zones.size(),
+                window.size());
+    }
+
+    /** Записывает накопленные зоны в imbalance_zones. */
+    public synchronized void persist() {
+        dbManager.saveImbalanceZones(stream, pending);
+        pending.clear();
+        candlesSincePersist = 0;
+    }
+
+    private void pushVolume(double volume) {
+        if (windowSize == windowVolumes.length) {
+            windowVolume -= windowVolumes[windowHead];
+        } else {
+            windowSize++;
+        }
+        windowVolumes[windowHead] = volume;
+        windowVolume += volume;
+        windowHead = (windowHead + 1) % windowVolumes.length;
+    }
+
+    /**
+     * Влияние зон в пределах ±rangePercent от текущей цены: сумма объёма с учётом затухания,
+     * делённого на расстояние до цены (+1, чтобы не делить на 0), нормированная на 1000.
+     */
+    public synchronized double getImbalanceInfluence(double currentPrice) {
+        double range = currentPrice * imbalance.getRangePercent() / 100;
+        int from = index.lowerBound(currentPrice - range);
+        int to = index.upperBound(currentPrice + range);
+        if (from == to) {
+            log.debug("[{}] No imbalance zones found for influence calculation.", stream);
+            return 0.0;
+        }
+        double influence = 0;
+        for (int i = from; i < to; i++) {
+            double distance = Math.abs(currentPrice - index.getPrice(i));
+            influence += index.getVolume(i) * decayWeight(index.getTimestamp(i)) / (distance + 1);
+        }
+        double normalizedInfluence = influence / 1000;
+        log.debug("[{}] Calculated imbalance influence: {} for price={}", stream, normalizedInfluence, currentPrice);
+        return normalizedInfluence;
+    }
+
+    /** Зоны с ценой в пределах ±percent% от price, по возрастанию цены. */
+    public synchronized List<ImbalanceZone> zonesWithin(double price, double percent) {
+        double range = price * percent / 100;
+        int from = index.lowerBound(price - range);
+        int to = index.upperBound(price + range);
+        List<ImbalanceZone> zones = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            zones.add(new ImbalanceZone(index.getTimestamp(i), index.getPrice(i), index.getVolume(i)));
+        }
+        return zones;
+    }
+
+    /** Вес зоны со временем timestamp: 1 для последней свечи, 0.5 через halfLifeCandles свечей. */
+    public synchronized double decayWeight(long timestamp) {
+        double ageCandles = (double) (lastTimestamp - timestamp) / stream.getTimeframeMillis();
+        return Math.pow(0.5, Math.max(0, ageCandles) / imbalance.getHalfLifeCandles());
+    }
+
+    public double getRangePercent() {
+        return imbalance.getRangePercent();
+    }
+
+    public synchronized int size() {
+        return index.size();
     }
-}
\ No newline at end of file
+}
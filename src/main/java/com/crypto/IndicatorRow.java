@@ -0,0 +1,50 @@
+package com.crypto;
+
+public class IndicatorRow {
+    private final long timestamp;
+    private final double sma;
+    private final double rsi;
+    private final double stochasticK;
+    private final double stochasticD;
+    private final double stochRsiK;
+    private final double stochRsiD;
+
+    public IndicatorRow(long timestamp, double sma, double rsi, double stochasticK, double stochasticD,
+                        double stochRsiK, double stochRsiD) {
+        this.timestamp = timestamp;
+        this.sma = sma;
+        this.rsi = rsi;
+        this.stochasticK = stochasticK;
+        this.stochasticD = stochasticD;
+        this.stochRsiK = stochRsiK;
+        this.stochRsiD = stochRsiD;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getSma() {
+        return sma;
+    }
+
+    public double getRsi() {
+        return rsi;
+    }
+
+    public double getStochasticK() {
+        return stochasticK;
+    }
+
+    public double getStochasticD() {
+        return stochasticD;
+    }
+
+    public double getStochRsiK() {
+        return stochRsiK;
+    }
+
+    public double getStochRsiD() {
+        return stochRsiD;
+    }
+}
@@ -1,154 +1,106 @@
 package com.crypto;
 
-import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-@Component
 public class Indicators {
-    private final DatabaseManager dbManager;
+    private static final Logger log = LoggerFactory.getLogger(Indicators.class);
 
-    public Indicators(DatabaseManager dbManager) {
+    private final MarketStream stream;
+    private final DatabaseManager dbManager;
+    private final CandleBuffer candles;
+    private final CryptoProperties.Indicators periods;
+    private final Timer incrementalTimer;
+    private final Timer warmupTimer;
+    private StreamingIndicators engine;
+    private long lastTimestamp = 0;
+    private IndicatorRow lastRow;
+
+    public Indicators(MarketStream stream, DatabaseManager dbManager, CandleBuffer candles,
+                      CryptoProperties.Indicators periods, PipelineMetrics metrics) {
+        this.stream = stream;
         this.dbManager = dbManager;
+        this.candles = candles;
+        this.periods = periods;
+        this.incrementalTimer = metrics.indicatorCompute(stream, "incremental");
+        this.warmupTimer = metrics.indicatorCompute(stream, "warmup");
     }
 
-    public void calculateAndSaveIndicators() {
-        List<Candle> candles = dbManager.getCandles(Constants.TRAINING_PERIOD);
-        if (candles.isEmpty()) {
-            System.out.println("No candles available to calculate indicators.");
+    /**
+     * Полный прогрев: пересчитывает индикаторы по всем свечам буфера, записывает их в буфер
+     * и сохраняет все строки. Вызывается один раз при старте (или после разрыва в потоке свечей).
+     */
+    public synchronized void calculateAndSaveIndicators() {
+        CandleBuffer.View window = candles.view(candles.capacity());
+        if (window.size() == 0) {
+            log.warn("[{}] No candles available to calculate indicators.", stream);
             return;
         }
 
-        int minPeriod = Math.max(Math.max(Constants.SMA_PERIOD, Constants.RSI_PERIOD),
-                Math.max(Constants.STOCHASTIC_K_PERIOD + Constants.STOCHASTIC_K_SMOOTHING + Constants.STOCHASTIC_D_SMOOTHING - 2,
-                        Constants.STOCH_RSI_PERIOD + Constants.STOCH_RSI_K_SMOOTHING + Constants.STOCH_RSI_D_SMOOTHING + Constants.STOCH_RSI_D_SMOOTHING - 3));
-        if (candles.size() < minPeriod) {
-            System.out.println("Not enough candles to calculate indicators: " + candles.size() + " < " + minPeriod);
-            return;
-        }
-
-        for (int i = minPeriod - 1; i < candles.size(); i++) {
-            List<Candle> subList = candles.subList(i - minPeriod + 1, i + 1);
-            double sma = calculateSMA(subList, Constants.SMA_PERIOD);
-            double rsi = calculateRSI(subList, Constants.RSI_PERIOD);
-            double[] stochastic = calculateStochastic(subList, Constants.STOCHASTIC_K_PERIOD,
-                    Constants.STOCHASTIC_K_SMOOTHING, Constants.STOCHASTIC_D_SMOOTHING);
-            double[] stochRSI = calculateStochRSI(subList, Constants.STOCH_RSI_PERIOD,
-                    Constants.STOCH_RSI_K_SMOOTHING, Constants.STOCH_RSI_D_SMOOTHING);
-
-            long timestamp = subList.get(subList.size() - 1).getTimestamp();
-            dbManager.saveIndicators(timestamp, sma, rsi, stochastic[0], stochastic[1], stochRSI[0], stochRSI[1]);
-//            System.out.println("Saved indicators for timestamp " + timestamp + ": SMA=" + sma + ", RSI=" + rsi +
-//                    ", StochK=" + stochastic[0] + ", StochD=" + stochastic[1] +
-//                    ", StochRSI_K=" + stochRSI[0] + ", StochRSI_D=" + stochRSI[1]);
+        long started = System.nanoTime();
+        engine = new StreamingIndicators(periods);
+        lastTimestamp = 0;
+        List<IndicatorRow> rows = new ArrayList<>(window.size());
+        for (int i = 0; i < window.size(); i++) {
+            IndicatorRow row = apply(window.getTimestamp(i), window.getHigh(i), window.getLow(i), window.getClose(i));
+            if (row != null) {
+                rows.add(row);
+            }
         }
-    }
-
-    private double calculateSMA(List<Candle> candles, int period) {
-        if (candles.size() < period) return 0.0;
-        double sum = 0;
-        for (int i = 0; i < period; i++) {
-            sum += candles.get(i).getClose();
+        warmupTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        if (rows.isEmpty()) {
+            log.warn("[{}] Not enough candles to calculate indicators: {}", stream, window.size());
+            return;
         }
-        return sum / period;
+        dbManager.saveIndicatorsBatch(stream, rows);
     }
 
-    private double calculateRSI(List<Candle> candles, int period) {
-        if (candles.size() < period) return 0.0;
-        double gain = 0, loss = 0;
-        for (int i = 0; i < period - 1; i++) {
-            double change = candles.get(i).getClose() - candles.get(i + 1).getClose();
-            if (change > 0) gain += change;
-            else loss -= change;
+    /**
+     * Инкрементальное обновление по новой подтверждённой свече, уже добавленной в буфер:
+     * O(1), пишется только одна строка.
+     * Возвращает индикаторы этой свечи или null, если они ещё не рассчитаны.
+     */
+    public synchronized IndicatorRow update(Candle candle) {
+        if (engine == null || lastTimestamp == 0) {
+            calculateAndSaveIndicators();
+            return rowFor(candle);
         }
-        double avgGain = gain / period;
-        double avgLoss = loss / period;
-        if (avgLoss == 0) return 100;
-        double rs = avgGain / avgLoss;
-        return 100 - (100 / (1 + rs));
-    }
-
-    private double[] calculateStochastic(List<Candle> candles, int kPeriod, int kSmoothing, int dSmoothing) {
-        if (candles.size() < kPeriod + kSmoothing + dSmoothing - 2) return new double[]{0.0, 0.0};
-
-        List<Double> kValues = new ArrayList<>();
-        for (int i = 0; i <= candles.size() - kPeriod; i++) {
-            List<Candle> window = candles.subList(i, i + kPeriod);
-            double highestHigh = window.stream().mapToDouble(Candle::getHigh).max().orElse(0);
-            double lowestLow = window.stream().mapToDouble(Candle::getLow).min().orElse(0);
-            double currentClose = window.get(0).getClose();
-            double k = highestHigh != lowestLow ?
-                    (currentClose - lowestLow) / (highestHigh - lowestLow) * 100 : 50;
-            kValues.add(k);
+        if (candle.getTimestamp() <= lastTimestamp) {
+            return rowFor(candle); // дубликат или устаревшая свеча
         }
-
-        double kSmooth = 0;
-        if (kValues.size() >= kSmoothing) {
-            kSmooth = kValues.subList(kValues.size() - kSmoothing, kValues.size()).stream()
-                    .mapToDouble(Double::doubleValue).average().orElse(0);
+        long step = stream.getTimeframeMillis();
+        if (candle.getTimestamp() - lastTimestamp > step) {
+            log.info("[{}] Gap in candle stream detected, re-warming indicators.", stream);
+            calculateAndSaveIndicators();
+            return rowFor(candle);
         }
-
-        double d = 0;
-        if (kValues.size() >= kSmoothing) {
-            List<Double> kSmoothValues = new ArrayList<>();
-            for (int i = 0; i <= kValues.size() - kSmoothing; i++) {
-                kSmoothValues.add(kValues.subList(i, i + kSmoothing).stream()
-                        .mapToDouble(Double::doubleValue).average().orElse(0));
-            }
-            if (kSmoothValues.size() >= dSmoothing) {
-                d = kSmoothValues.subList(kSmoothValues.size() - dSmoothing, kSmoothValues.size()).stream()
-                        .mapToDouble(Double::doubleValue).average().orElse(0);
-            }
+        long started = System.nanoTime();
+        IndicatorRow row = apply(candle.getTimestamp(), candle.getHigh(), candle.getLow(), candle.getClose());
+        incrementalTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        if (row != null) {
+            dbManager.saveIndicators(stream, row.getTimestamp(), row.getSma(), row.getRsi(), row.getStochasticK(),
+                    row.getStochasticD(), row.getStochRsiK(), row.getStochRsiD());
         }
-
-        return new double[]{kSmooth, d};
+        return row;
     }
 
-    private double[] calculateStochRSI(List<Candle> candles, int rsiPeriod, int kSmoothing, int dSmoothing) {
-        if (candles.size() < rsiPeriod) return new double[]{0.0, 0.0};
-
-        List<Double> rsiValues = new ArrayList<>();
-        for (int i = 0; i <= candles.size() - rsiPeriod; i++) {
-            List<Candle> rsiSubList = candles.subList(i, i + rsiPeriod);
-            double rsi = calculateRSI(rsiSubList, rsiPeriod);
-            rsiValues.add(rsi);
-        }
-
-        List<Double> kValues = new ArrayList<>();
-        for (int i = 0; i <= rsiValues.size() - kSmoothing; i++) {
-            List<Double> rsiWindow = rsiValues.subList(i, i + kSmoothing);
-            double lowestRSI = rsiWindow.stream().mapToDouble(Double::doubleValue).min().orElse(0);
-            double highestRSI = rsiWindow.stream().mapToDouble(Double::doubleValue).max().orElse(100);
-            double currentRSI = rsiValues.get(i);
-            double k = highestRSI != lowestRSI ?
-                    (currentRSI - lowestRSI) / (highestRSI - lowestRSI) * 100 : 50;
-            kValues.add(k);
-        }
+    private IndicatorRow rowFor(Candle candle) {
+        return lastRow != null && lastRow.getTimestamp() == candle.getTimestamp() ? lastRow : null;
+    }
 
-        double kSmooth = 0;
-        if (kValues.size() >= kSmoothing) {
-            kSmooth = kValues.subList(kValues.size() - kSmoothing, kValues.size()).stream()
-                    .mapToDouble(Double::doubleValue).average().orElse(0);
-        } else if (!kValues.isEmpty()) {
-            kSmooth = kValues.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+    private IndicatorRow apply(long timestamp, double high, double low, double close) {
+        lastTimestamp = timestamp;
+        double[] values = engine.update(high, low, close);
+        if (values == null) {
+            return null;
         }
-
-        double d = 0;
-        if (kValues.size() >= kSmoothing) {
-            List<Double> kSmoothValues = new ArrayList<>();
-            for (int i = 0; i <= kValues.size() - kSmoothing; i++) {
-                kSmoothValues.add(kValues.subList(i, i + kSmoothing).stream()
-                        .mapToDouble(Double::doubleValue).average().orElse(0));
-            }
-            if (kSmoothValues.size() >= dSmoothing) {
-                d = kSmoothValues.subList(kSmoothValues.size() - dSmoothing, kSmoothValues.size()).stream()
-                        .mapToDouble(Double::doubleValue).average().orElse(0);
-            } else if (!kSmoothValues.isEmpty()) {
-                d = kSmoothValues.stream().mapToDouble(Double::doubleValue).average().orElse(0);
-            }
-        }
-
-        return new double[]{kSmooth, d};
+        lastRow = new IndicatorRow(timestamp, values[0], values[1], values[2], values[3], values[4], values[5]);
+        candles.setIndicators(lastRow);
+        return lastRow;
     }
-}
\ No newline at end of file
+}
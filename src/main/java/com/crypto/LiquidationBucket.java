@@ -0,0 +1,40 @@
+package com.crypto;
+
+/**
+ * Ликвидации за одну свечу: строка таблицы liquidation_buckets.
+ */
+public class LiquidationBucket {
+    private final long timestamp;
+    private final double longQty;
+    private final double shortQty;
+    private final int count;
+    private final double maxQty;
+
+    public LiquidationBucket(long timestamp, double longQty, double shortQty, int count, double maxQty) {
+        this.timestamp = timestamp;
+        this.longQty = longQty;
+        this.shortQty = shortQty;
+        this.count = count;
+        this.maxQty = maxQty;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getLongQty() {
+        return longQty;
+    }
+
+    public double getShortQty() {
+        return shortQty;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getMaxQty() {
+        return maxQty;
+    }
+}
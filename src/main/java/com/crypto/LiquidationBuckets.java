@@ -0,0 +1,170 @@
+package com.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ликвидации потока, агрегированные в памяти по свечам: объём long и short, число событий
+ * и наибольшая ликвидация. Событие попадает в свечу (timestamp - tf, timestamp], как и раньше
+ * при группировке в SQL. Корзины лежат в кольце на capacity интервалов, слот — номер интервала,
+ * поэтому влияние свечи читается за O(1) без запроса к БД.
+ *
+ * Влияние свечи — (long - short) / max, где max — наибольшая ликвидация среди корзин кольца
+ * (не меньше 1); он поддерживается при каждом событии и пересчитывается, только когда
+ * из кольца вытесняется корзина с этим максимумом. В признаки модели влияние не входит
+ * (FeatureMatrix — цены и индикаторы), поэтому при построении матриц признаков оно не считается.
+ * Закрытые корзины пишутся в liquidation_buckets одной строкой на интервал; сырая таблица
+ * liquidations остаётся архивом и на горячем пути не читается.
+ *
+ * События приходят из потока WebSocket Bybit, чтение и запись в БД — из цикла обработки потока,
+ * поэтому доступ к кольцу синхронизирован.
+ */
+public class LiquidationBuckets {
+    private static final double MIN_NORMALIZER = 1.0;
+
+    private final MarketStream stream;
+    private final DatabaseManager dbManager;
+    private final long timeframeMillis;
+    private final int capacity;
+    // Время свечи корзины в слоте; 0 — слот пуст
+    private final long[] bucketTimes;
+    private final double[] longQty;
+    private final double[] shortQty;
+    private final int[] counts;
+    private final double[] maxQty;
+    // Корзина изменилась после последней записи в БД
+    private final boolean[] dirty;
+    private double runningMax = MIN_NORMALIZER;
+
+    public LiquidationBuckets(MarketStream stream, DatabaseManager dbManager, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Liquidation bucket capacity must be positive: " + capacity);
+        }
+        this.stream = stream;
+        this.dbManager = dbManager;
+        this.timeframeMillis = stream.getTimeframeMillis();
+        this.capacity = capacity;
+        this.bucketTimes = new long[capacity];
+        this.longQty = new double[capacity];
+        this.shortQty = new double[capacity];
+        this.counts = new int[capacity];
+        this.maxQty = new double[capacity];
+        this.dirty = new boolean[capacity];
+    }
+
+    /**
+     * Заполняет кольцо при старте: сохранённые корзины последних capacity интервалов плюс
+     * события из сырой таблицы начиная с последней сохранённой корзины (её могли не дописать до остановки).
+     */
+    public void load() {
+        long to = bucketOf(System.currentTimeMillis());
+        long from = to - (long) capacity * timeframeMillis;
+        List<LiquidationBucket> stored = dbManager.getLiquidationBuckets(stream, from, to);
+        long after = stored.isEmpty() ? from : stored.get(stored.size() - 1).getTimestamp() - timeframeMillis;
+        List<LiquidationBucket> tail = dbManager.aggregateLiquidations(stream, after, Long.MAX_VALUE);
+        synchronized (this) {
+            putAll(stored, false);
+            putAll(tail, true);
+        }
+    }
+
+    /** side — "long" или "short", как в BybitMessageParser.Handler. */
+    public synchronized void add(long timestamp, String side, double qty) {
+        int slot = slotFor(bucketOf(timestamp));
+        if (slot < 0) {
+            return; // старше кольца: остаётся только в сырой таблице
+        }
+        if ("long".equals(side)) {
+            longQty[slot] += qty;
+        } else {
+            shortQty[slot] += qty;
+        }
+        counts[slot]++;
+        maxQty[slot] = Math.max(maxQty[slot], qty);
+        runningMax = Math.max(runningMax, qty);
+        dirty[slot] = true;
+    }
+
+    /** Влияние ликвидаций для свечи с этим временем; 0, если ликвидаций не было. */
+    public synchronized double influence(long candleTimestamp) {
+        int slot = slotOf(candleTimestamp);
+        if (bucketTimes[slot] != candleTimestamp) {
+            return 0.0;
+        }
+        return (longQty[slot] - shortQty[slot]) / runningMax;
+    }
+
+    /**
+     * Записывает изменившиеся корзины свечей не позже upTo одной строкой на интервал.
+     * Поздние события в уже записанную корзину помечают её снова, и следующий flush её перезапишет.
+     */
+    public void flush(long upTo) {
+        List<LiquidationBucket> rows = new ArrayList<>();
+        synchronized (this) {
+            for (int slot = 0; slot < capacity; slot++) {
+                if (dirty[slot] && bucketTimes[slot] <= upTo) {
+                    rows.add(new LiquidationBucket(bucketTimes[slot], longQty[slot], shortQty[slot], counts[slot],
+                            maxQty[slot]));
+                    dirty[slot] = false;
+                }
+            }
+        }
+        dbManager.saveLiquidationBuckets(stream, rows);
+    }
+
+    private void putAll(List<LiquidationBucket> rows, boolean markDirty) {
+        for (LiquidationBucket row : rows) {
+            int slot = slotFor(row.getTimestamp());
+            if (slot < 0) {
+                continue;
+            }
+            longQty[slot] = row.getLongQty();
+            shortQty[slot] = row.getShortQty();
+            counts[slot] = row.getCount();
+            maxQty[slot] = row.getMaxQty();
+            dirty[slot] = markDirty;
+            runningMax = Math.max(runningMax, row.getMaxQty());
+        }
+    }
+
+    /** Слот для корзины; более старая корзина в нём вытесняется. -1, если корзина старше кольца. */
+    private int slotFor(long bucket) {
+        int slot = slotOf(bucket);
+        long current = bucketTimes[slot];
+        if (current == bucket) {
+            return slot;
+        }
+        if (current > bucket) {
+            return -1;
+        }
+        boolean evictsMax = current != 0 && maxQty[slot] >= runningMax;
+        bucketTimes[slot] = bucket;
+        longQty[slot] = 0;
+        shortQty[slot] = 0;
+        counts[slot] = 0;
+        maxQty[slot] = 0;
+        dirty[slot] = false;
+        if (evictsMax) {
+            recomputeRunningMax();
+        }
+        return slot;
+    }
+
+    private void recomputeRunningMax() {
+        double max = MIN_NORMALIZER;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (bucketTimes[slot] != 0) {
+                max = Math.max(max, maxQty[slot]);
+            }
+        }
+        runningMax = max;
+    }
+
+    private int slotOf(long bucket) {
+        return (int) Math.floorMod(bucket / timeframeMillis, (long) capacity);
+    }
+
+    private long bucketOf(long timestamp) {
+        return Math.floorDiv(timestamp + timeframeMillis - 1, timeframeMillis) * timeframeMillis;
+    }
+}
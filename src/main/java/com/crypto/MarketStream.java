@@ -0,0 +1,94 @@
+package com.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Инструмент и таймфрейм одного потока свечей, например ETHUSDT / 5m.
+ */
+public class MarketStream {
+    private final String symbol;
+    private final String timeframe;
+    private final long timeframeMillis;
+
+    public MarketStream(String symbol, String timeframe) {
+        this.symbol = symbol;
+        this.timeframe = timeframe;
+        this.timeframeMillis = parseTimeframeMillis(timeframe);
+    }
+
+    /**
+     * Разбирает список вида "ETHUSDT:5m,BTCUSDT:15m".
+     */
+    public static List<MarketStream> parseList(String value) {
+        List<MarketStream> streams = new ArrayList<>();
+        for (String item : value.split(",")) {
+            String trimmed = item.trim();
+            if (trimmed.isEmpty()) continue;
+            String[] parts = trimmed.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid stream definition: " + trimmed + " (expected SYMBOL:TIMEFRAME)");
+            }
+            streams.add(new MarketStream(parts[0].trim().toUpperCase(), parts[1].trim()));
+        }
+        return streams;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public String getTimeframe() {
+        return timeframe;
+    }
+
+    public long getTimeframeMillis() {
+        return timeframeMillis;
+    }
+
+    /** Длительность таймфрейма вида "5m", "1h", "1d"; без суффикса — минуты, как в интервалах Bybit ("1", "15"). */
+    private static long parseTimeframeMillis(String timeframe) {
+        long minutes;
+        try {
+            if (timeframe.endsWith("m")) {
+                minutes = Long.parseLong(timeframe.substring(0, timeframe.length() - 1));
+            } else if (timeframe.endsWith("h")) {
+                minutes = Long.parseLong(timeframe.substring(0, timeframe.length() - 1)) * 60;
+            } else if (timeframe.endsWith("d")) {
+                minutes = Long.parseLong(timeframe.substring(0, timeframe.length() - 1)) * 60 * 24;
+            } else {
+                minutes = Long.parseLong(timeframe);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid timeframe: " + timeframe, e);
+        }
+        if (minutes <= 0) {
+            throw new IllegalArgumentException("Invalid timeframe: " + timeframe);
+        }
+        return minutes * 60 * 1000L;
+    }
+
+    /** Ключ для имён файлов и логов: ETHUSDT_5m. */
+    public String getKey() {
+        return symbol + "_" + timeframe;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MarketStream)) return false;
+        MarketStream that = (MarketStream) o;
+        return symbol.equals(that.symbol) && timeframe.equals(that.timeframe);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(symbol, timeframe);
+    }
+
+    @Override
+    public String toString() {
+        return symbol + ":" + timeframe;
+    }
+}
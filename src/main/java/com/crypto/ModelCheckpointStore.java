@@ -0,0 +1,141 @@
+package com.crypto;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Версионированные контрольные точки модели: model-vN.zip с весами, состоянием апдейтера,
+ * maxPrice и схемой признаков. Файл пишется во временный и атомарно переименовывается.
+ */
+public class ModelCheckpointStore {
+    private static final Logger log = LoggerFactory.getLogger(ModelCheckpointStore.class);
+    private static final Pattern FILE_PATTERN = Pattern.compile("model-v(\\d+)\\.zip");
+    private static final String METADATA_KEY = "metadata";
+
+    private final Path directory;
+    private final int keep;
+
+    public ModelCheckpointStore(String directory, int keep) {
+        this.directory = Paths.get(directory);
+        this.keep = keep;
+    }
+
+    public static class Checkpoint {
+        private final MultiLayerNetwork model;
+        private final double maxPrice;
+        private final long version;
+
+        private Checkpoint(MultiLayerNetwork model, double maxPrice, long version) {
+            this.model = model;
+            this.maxPrice = maxPrice;
+            this.version = version;
+        }
+
+        public MultiLayerNetwork getModel() {
+            return model;
+        }
+
+        public double getMaxPrice() {
+            return maxPrice;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * Сохраняет модель новой версией и возвращает её номер.
+     */
+    public long save(MultiLayerNetwork model, double maxPrice, String schema) throws IOException {
+        Files.createDirectories(directory);
+        long version = latestVersion() + 1;
+        Path target = directory.resolve("model-v" + version + ".zip");
+        Path tmp = directory.resolve("model-v" + version + ".zip.tmp");
+
+        File tmpFile = tmp.toFile();
+        ModelSerializer.writeModel(model, tmpFile, true);
+        HashMap<String, String> metadata = new HashMap<>();
+        metadata.put("maxPrice", Double.toString(maxPrice));
+        metadata.put("schema", schema);
+        metadata.put("createdAt", Long.toString(System.currentTimeMillis()));
+        ModelSerializer.addObjectToFile(tmpFile, METADATA_KEY, metadata);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        pruneOldVersions();
+        return version;
+    }
+
+    /**
+     * Загружает последнюю контрольную точку с совпадающей схемой; null, если такой нет.
+     */
+    public Checkpoint loadLatest(String schema) {
+        List<Long> versions = listVersions();
+        for (int i = versions.size() - 1; i >= 0; i--) {
+            long version = versions.get(i);
+            File file = directory.resolve("model-v" + version + ".zip").toFile();
+            try {
+                HashMap<String, String> metadata = ModelSerializer.getObjectFromFile(file, METADATA_KEY);
+                if (!schema.equals(metadata.get("schema"))) {
+                    log.info("Skipping checkpoint v{}: schema mismatch.", version);
+                    continue;
+                }
+                MultiLayerNetwork model = ModelSerializer.restoreMultiLayerNetwork(file, true);
+                return new Checkpoint(model, Double.parseDouble(metadata.get("maxPrice")), version);
+            } catch (Exception e) {
+                log.warn("Failed to load checkpoint v{}: {}", version, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private long latestVersion() {
+        List<Long> versions = listVersions();
+        return versions.isEmpty() ? 0 : versions.get(versions.size() - 1);
+    }
+
+    private List<Long> listVersions() {
+        List<Long> versions = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return versions;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                Matcher matcher = FILE_PATTERN.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    versions.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to list checkpoints in {}", directory, e);
+        }
+        versions.sort(null);
+        return versions;
+    }
+
+    private void pruneOldVersions() {
+        List<Long> versions = listVersions();
+        for (int i = 0; i < versions.size() - keep; i++) {
+            try {
+                Files.deleteIfExists(directory.resolve("model-v" + versions.get(i) + ".zip"));
+            } catch (IOException e) {
+                log.warn("Failed to delete old checkpoint v{}: {}", versions.get(i), e.getMessage());
+            }
+        }
+    }
+}
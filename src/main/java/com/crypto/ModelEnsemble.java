@@ -0,0 +1,322 @@
+package com.crypto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Ансамбль моделей потока (crypto.ensemble.*): варианты NeuralNetwork — MLP и LSTM с разными
+ * размерами скрытого слоя и окнами обучения — обучаются и прогнозируют параллельно на общем
+ * ограниченном пуле. Все участники читают одну матрицу признаков из буфера свечей и не меняют её.
+ * Прогноз ансамбля — медиана или среднее с весами, обратными ошибке, по активным участникам.
+ *
+ * По каждому участнику копятся скользящие (EWMA) относительная ошибка реализованных прогнозов
+ * и время прогноза, а также длительность последнего обучения. Участник, чья ошибка в pruneErrorRatio
+ * раз хуже лучшей или чьё обучение дольше maxMemberMillis, исключается до перезапуска;
+ * участник с лучшей ошибкой не исключается никогда.
+ *
+ * update вызывается только из цикла обработки своего потока в TrainingPipeline.
+ */
+public class ModelEnsemble {
+    private static final Logger log = LoggerFactory.getLogger(ModelEnsemble.class);
+    private static final double EWMA_ALPHA = 0.1;
+
+    private final MarketStream stream;
+    private final CryptoProperties.Ensemble settings;
+    private final ExecutorService workers;
+    private final List<Member> members = new ArrayList<>();
+    private final int maxTrainingPeriod;
+    private long lastTimestamp;
+    private int candlesSinceRetrain;
+    private volatile double predictedPrice;
+
+    public static class Member {
+        private final String name;
+        private final int trainingPeriod;
+        private final NeuralNetwork network;
+        // Прогноз относится к свече predictedFor; 0 — прогноза нет
+        private volatile double predicted;
+        private long predictedFor;
+        private volatile double errorEwma;
+        private volatile int errorSamples;
+        private volatile double predictMicrosEwma;
+        private volatile long lastTrainMillis;
+        private volatile boolean active = true;
+        private volatile String prunedReason;
+
+        private Member(String name, int trainingPeriod, NeuralNetwork network) {
+            this.name = name;
+            this.trainingPeriod = trainingPeriod;
+            this.network = network;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getPredicted() {
+            return predicted;
+        }
+
+        /** Средняя относительная ошибка |прогноз - close| / close (EWMA). */
+        public double getError() {
+            return errorEwma;
+        }
+
+        public int getErrorSamples() {
+            return errorSamples;
+        }
+
+        public double getPredictMicros() {
+            return predictMicrosEwma;
+        }
+
+        public long getLastTrainMillis() {
+            return lastTrainMillis;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public String getPrunedReason() {
+            return prunedReason;
+        }
+
+        private void recordError(double error) {
+            errorEwma = errorSamples == 0 ? error : errorEwma + EWMA_ALPHA * (error - errorEwma);
+            errorSamples++;
+        }
+
+        private void recordPredictMicros(double micros) {
+            predictMicrosEwma = predictMicrosEwma == 0 ? micros : predictMicrosEwma + EWMA_ALPHA * (micros - predictMicrosEwma);
+        }
+    }
+
+    /**
+     * base — действующие параметры обучения, к которым применяется описание каждого участника;
+     * параметры участников фиксируются при создании ансамбля.
+     */
+    public ModelEnsemble(MarketStream stream, CryptoProperties.Ensemble settings, CryptoProperties.Training base,
+                         int candleBufferCapacity, ExecutorService workers) {
+        this.stream = stream;
+        this.settings = settings;
+        this.workers = workers;
+        if (!settings.getAggregation().equals("median") && !settings.getAggregation().equals("weighted")) {
+            throw new IllegalArgumentException("crypto.ensemble.aggregation must be median or weighted: " +
+                    settings.getAggregation());
+        }
+        int maxPeriod = 0;
+        for (String spec : settings.getMembers()) {
+            Map<String, Object> updates = parseSpec(spec);
+            // Ансамбль прогнозирует только следующую свечу: лишние выходы участникам не нужны
+            updates.putIfAbsent("horizons", "1");
+            RuntimeSettings memberSettings = new RuntimeSettings(base.withUpdates(updates), candleBufferCapacity);
+            int trainingPeriod = memberSettings.get().getTrainingPeriod();
+            members.add(new Member(spec.trim(), trainingPeriod, NeuralNetwork.offline(stream, memberSettings)));
+            maxPeriod = Math.max(maxPeriod, trainingPeriod);
+        }
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("crypto.ensemble.members is empty");
+        }
+        this.maxTrainingPeriod = maxPeriod;
+    }
+
+    /** "modelType=LSTM;lstmHiddenSize=64" → изменения для CryptoProperties.Training.withUpdates. */
+    static Map<String, Object> parseSpec(String spec) {
+        Map<String, Object> updates = new HashMap<>();
+        for (String part : spec.split(";")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            int eq = part.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Ensemble member setting must be name=value: " + part);
+            }
+            updates.put(part.substring(0, eq).trim(), part.substring(eq + 1).trim());
+        }
+        return updates;
+    }
+
+    /** Наибольшее окно обучения среди участников: столько строк нужно в матрице для update. */
+    public int getMaxTrainingPeriod() {
+        return maxTrainingPeriod;
+    }
+
+    /**
+     * Цикл ансамбля по матрице последних свечей: учитывает реализованные ошибки прошлых прогнозов,
+     * раз в retrainInterval свечей полностью переобучает активных участников, затем прогнозирует
+     * следующую свечу всеми участниками и исключает отстающих. Возвращает прогноз ансамбля
+     * или 0, если ни у одного участника нет прогноза.
+     */
+    public double update(FeatureMatrix features) {
+        int size = features.size();
+        if (size == 0) {
+            return predictedPrice;
+        }
+        long latest = features.getTimestamp(size - 1);
+        for (int row = size - 1; row >= 0 && features.getTimestamp(row) > lastTimestamp; row--) {
+            candlesSinceRetrain++;
+        }
+        recordRealizedErrors(features);
+        lastTimestamp = latest;
+
+        boolean retrain = candlesSinceRetrain >= settings.getRetrainInterval()
+                || members.stream().anyMatch(member -> member.active && member.lastTrainMillis == 0);
+        runMembers(features, retrain);
+        if (retrain) {
+            candlesSinceRetrain = 0;
+        }
+        prune();
+        predictedPrice = aggregate();
+        return predictedPrice;
+    }
+
+    private void recordRealizedErrors(FeatureMatrix features) {
+        for (Member member : members) {
+            if (member.predicted <= 0) {
+                continue;
+            }
+            for (int row = features.size() - 1; row >= 0 && features.getTimestamp(row) >= member.predictedFor; row--) {
+                if (features.getTimestamp(row) == member.predictedFor) {
+                    double close = features.getClose(row);
+                    member.recordError(Math.abs(member.predicted - close) / close);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void runMembers(FeatureMatrix features, boolean retrain) {
+        long nextCandle = features.getTimestamp(features.size() - 1) + stream.getTimeframeMillis();
+        List<Member> running = new ArrayList<>();
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (Member member : members) {
+            if (!member.active) {
+                continue;
+            }
+            running.add(member);
+            tasks.add(() -> runMember(member, features, retrain));
+        }
+        List<Future<Double>> futures;
+        try {
+            futures = workers.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (int i = 0; i < running.size(); i++) {
+            Member member = running.get(i);
+            try {
+                member.predicted = futures.get(i).get();
+            } catch (ExecutionException e) {
+                log.warn("[{}] Ensemble member {} failed", stream, member.name, e.getCause());
+                member.predicted = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            member.predictedFor = nextCandle;
+        }
+    }
+
+    private double runMember(Member member, FeatureMatrix features, boolean retrain) {
+        if (retrain) {
+            long started = System.currentTimeMillis();
+            int from = Math.max(0, features.size() - member.trainingPeriod);
+            if (!member.network.trainOn(features.slice(from, features.size()))) {
+                return 0.0;
+            }
+            member.lastTrainMillis = Math.max(1, System.currentTimeMillis() - started);
+        }
+        long started = System.nanoTime();
+        double predicted = member.network.predictAfter(features);
+        member.recordPredictMicros((System.nanoTime() - started) / 1_000.0);
+        return predicted;
+    }
+
+    private void prune() {
+        Member best = null;
+        for (Member member : members) {
+            if (member.active && member.errorSamples >= settings.getPruneMinSamples()
+                    && (best == null || member.errorEwma < best.errorEwma)) {
+                best = member;
+            }
+        }
+        for (Member member : members) {
+            if (!member.active || member == best) {
+                continue;
+            }
+            String reason = null;
+            if (best != null && member.errorSamples >= settings.getPruneMinSamples()
+                    && member.errorEwma > settings.getPruneErrorRatio() * best.errorEwma) {
+                reason = String.format("error %.5f vs best %.5f (%s)", member.errorEwma, best.errorEwma, best.name);
+            } else if (settings.getMaxMemberMillis() > 0 && member.lastTrainMillis > settings.getMaxMemberMillis()) {
+                reason = "training took " + member.lastTrainMillis + " ms";
+            }
+            if (reason != null && activeCount() > 1) {
+                member.active = false;
+                member.prunedReason = reason;
+                member.predicted = 0;
+                log.info("[{}] Pruned ensemble member {}: {}", stream, member.name, reason);
+            }
+        }
+    }
+
+    private int activeCount() {
+        int count = 0;
+        for (Member member : members) {
+            if (member.active) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private double aggregate() {
+        double[] predictions = new double[members.size()];
+        double[] weights = new double[members.size()];
+        int count = 0;
+        for (Member member : members) {
+            if (member.active && member.predicted > 0) {
+                predictions[count] = member.predicted;
+                // Пока ошибка не накоплена, участник получает вес как при ошибке 1%
+                weights[count] = 1.0 / Math.max(member.errorSamples > 0 ? member.errorEwma : 0.01, 1e-6);
+                count++;
+            }
+        }
+        if (count == 0) {
+            return 0.0;
+        }
+        if (settings.getAggregation().equals("weighted")) {
+            double sum = 0;
+            double weightSum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += predictions[i] * weights[i];
+                weightSum += weights[i];
+            }
+            return sum / weightSum;
+        }
+        double[] sorted = Arrays.copyOf(predictions, count);
+        Arrays.sort(sorted);
+        return count % 2 == 1 ? sorted[count / 2] : (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+    }
+
+    public double getPredictedPrice() {
+        return predictedPrice;
+    }
+
+    public List<Member> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+}
@@ -1,8 +1,19 @@
 package com.crypto;
 
-import jakarta.annotation.PostConstruct;
+import io.micrometer.core.instrument.Timer;
+import org.deeplearning4j.earlystopping.EarlyStoppingConfiguration;
+import org.deeplearning4j.earlystopping.EarlyStoppingResult;
+import org.deeplearning4j.earlystopping.listener.EarlyStoppingListener;
+import org.deeplearning4j.earlystopping.saver.InMemoryModelSaver;
+import org.deeplearning4j.earlystopping.scorecalc.DataSetLossCalculator;
+import org.deeplearning4j.earlystopping.termination.IterationTerminationCondition;
+import org.deeplearning4j.earlystopping.termination.MaxEpochsTerminationCondition;
+import org.deeplearning4j.earlystopping.termination.MaxTimeIterationTerminationCondition;
+import org.deeplearning4j.earlystopping.termination.ScoreImprovementEpochTerminationCondition;
+import org.deeplearning4j.earlystopping.trainer.EarlyStoppingTrainer;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
 import org.deeplearning4j.nn.conf.layers.DenseLayer;
 import org.deeplearning4j.nn.conf.layers.LSTM;
 import org.deeplearning4j.nn.conf.layers.OutputLayer;
@@ -10,81 +21,173 @@ import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.MirroringPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.AsyncDataSetIterator;
 import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
-import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-@Component
 public class NeuralNetwork {
-    private final DatabaseManager dbManager;
-    private final Indicators indicators;
-    private final ImbalanceZones imbalanceZones;
+    private static final Logger log = LoggerFactory.getLogger(NeuralNetwork.class);
+    // Выход прогноза по одной свече: память пространства выделяется при первом прогнозе и дальше переиспользуется
+    private static final WorkspaceConfiguration OUTPUT_WORKSPACE = WorkspaceConfiguration.builder()
+            .initialSize(0)
+            .overallocationLimit(0.2)
+            .policyAllocation(AllocationPolicy.OVERALLOCATE)
+            .policyLearning(LearningPolicy.FIRST_LOOP)
+            .policyMirroring(MirroringPolicy.FULL)
+            .policySpill(SpillPolicy.REALLOCATE)
+            .build();
+
+    private final MarketStream stream;
+    private final CandleBuffer candles;
+    private final RuntimeSettings settings;
+    private final PipelineMetrics metrics;
+    private final Timer inferenceTimer;
+    private final String outputWorkspaceId;
+    // Входы и метки модели переиспользуются между циклами и пересоздаются только при смене формы
+    private final AtomicLong tensorAllocations = new AtomicLong();
+    private final TensorBuffer trainInput = new TensorBuffer(tensorAllocations);
+    private final TensorBuffer trainLabels = new TensorBuffer(tensorAllocations);
+    private final TensorBuffer replayInput = new TensorBuffer(tensorAllocations);
+    private final TensorBuffer replayLabels = new TensorBuffer(tensorAllocations);
+    private final TensorBuffer batchInput = new TensorBuffer(tensorAllocations);
+    private final TensorBuffer sampleInput = new TensorBuffer(tensorAllocations);
+    private final TensorBuffer stepInput = new TensorBuffer(tensorAllocations);
+    // Снимок настроек, с которым создана текущая модель: тип и размеры сети
+    private CryptoProperties.Training modelSettings;
     private MultiLayerNetwork model;
     private double maxPrice;
-    private double predictedPrice;
+    private volatile double predictedPrice;
+    // Горизонт в свечах → прогноз цены; неизменяемый снимок последнего прогноза
+    private volatile Map<Integer, Double> horizonPredictions = Map.of();
+
+    // Размеры буферов берутся из настроек при каждом полном обучении
+    private ReplayBuffer replayBuffer;
+    // Образец перед копированием в replayBuffer и цены последнего прогноза; переиспользуются,
+    // пересоздаются при смене длины входа или числа горизонтов
+    private float[] sampleScratch = new float[0];
+    private double[] targetScratch = new double[0];
+    private double[] priceScratch = new double[0];
+    private double[] realizedErrors;
+    private int realizedErrorCount;
+    private double baselineError;
+    private int candlesSinceFullRetrain;
+    private long lastSampleTimestamp;
+    private boolean trained;
+    private volatile long lastTrainingMillis;
+    private volatile String lastTrainingMode = "none";
+    // Последнее полное обучение: пройдено эпох и причина останова
+    private volatile int lastTrainingEpochs;
+    private volatile String lastStopReason = "none";
+
+    private final ModelCheckpointStore checkpointStore;
+    private volatile long modelVersion = 0;
+    private int candlesSinceTraining;
+    // Скрытое состояние LSTM соответствует последней поданной в rnnTimeStep свече
+    private boolean lstmStatePrimed;
+
+    /**
+     * Параметры обучения читаются из settings при каждой операции; если изменилась архитектура
+     * (тип модели, размер скрытого слоя, learning rate), модель пересоздаётся и полностью
+     * переобучается в следующем цикле updateModel — в том же потоке, что и обычное обучение.
+     */
+    public NeuralNetwork(MarketStream stream, CandleBuffer candles, RuntimeSettings settings,
+                         ModelCheckpointStore checkpointStore, PipelineMetrics metrics) {
+        this.stream = stream;
+        this.candles = candles;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.inferenceTimer = metrics.inference(stream);
+        this.outputWorkspaceId = "crypto-output-" + stream.getKey();
+        metrics.tensorAllocations(stream, tensorAllocations);
+        this.checkpointStore = checkpointStore;
+        initializeModel(settings.get());
+    }
 
-    public NeuralNetwork(DatabaseManager dbManager, Indicators indicators, ImbalanceZones imbalanceZones) {
-        this.dbManager = dbManager;
-        this.indicators = indicators;
-        this.imbalanceZones = imbalanceZones;
-        initializeModel();
+    /**
+     * Модель без живого потока (бэктест): обучается через trainOn и прогнозирует через predictTargets,
+     * буфер свечей и контрольные точки не используются.
+     */
+    public static NeuralNetwork offline(MarketStream stream, RuntimeSettings settings) {
+        return new NeuralNetwork(stream, null, settings, null, PipelineMetrics.noop());
     }
 
-    private void initializeModel() {
-        if (Constants.MODEL_TYPE.equals("LSTM")) {
-            initializeLSTMModel();
-        } else if (Constants.MODEL_TYPE.equals("MLP")) {
-            initializeMLPModel();
+    private void initializeModel(CryptoProperties.Training training) {
+        modelSettings = training;
+        if (training.getModelType().equals("LSTM")) {
+            initializeLSTMModel(training);
         } else {
-            System.out.println("Unknown model type: " + Constants.MODEL_TYPE + ", defaulting to MLP");
-            initializeMLPModel();
+            initializeMLPModel(training);
         }
+        trained = false;
+        lstmStatePrimed = false;
     }
 
-    private void initializeMLPModel() {
+    private void initializeMLPModel(CryptoProperties.Training training) {
         MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
                 .seed(123)
                 .updater(new Adam(0.001))
+                .dataType(DataType.FLOAT)
+                .trainingWorkspaceMode(WorkspaceMode.valueOf(training.getWorkspaceMode()))
+                .inferenceWorkspaceMode(WorkspaceMode.valueOf(training.getWorkspaceMode()))
                 .list()
                 .layer(0, new DenseLayer.Builder().nIn(11).nOut(20).activation(Activation.RELU).build())
                 .layer(1, new DenseLayer.Builder().nIn(20).nOut(15).activation(Activation.RELU).build())
                 .layer(2, new DenseLayer.Builder().nIn(15).nOut(10).activation(Activation.RELU).build())
                 .layer(3, new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
-                        .nIn(10).nOut(1).activation(Activation.IDENTITY).build())
+                        .nIn(10).nOut(training.getHorizons().size()).activation(Activation.IDENTITY).build())
                 .build();
         model = new MultiLayerNetwork(conf);
         model.init();
-        System.out.println("Initialized MLP model");
+        log.info("[{}] Initialized MLP model", stream);
     }
 
-    private void initializeLSTMModel() {
+    private void initializeLSTMModel(CryptoProperties.Training training) {
         MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
                 .seed(123)
-                .updater(new Adam(Constants.LSTM_LEARNING_RATE))
+                .updater(new Adam(training.getLstmLearningRate()))
+                .dataType(DataType.FLOAT)
+                .trainingWorkspaceMode(WorkspaceMode.valueOf(training.getWorkspaceMode()))
+                .inferenceWorkspaceMode(WorkspaceMode.valueOf(training.getWorkspaceMode()))
                 .list()
                 .layer(0, new LSTM.Builder()
                         .nIn(Constants.LSTM_INPUT_SIZE)
-                        .nOut(Constants.LSTM_HIDDEN_SIZE)
+                        .nOut(training.getLstmHiddenSize())
                         .activation(Activation.TANH)
                         .weightInit(WeightInit.XAVIER)
                         .build())
                 .layer(1, new LSTM.Builder()
-                        .nIn(Constants.LSTM_HIDDEN_SIZE)
-                        .nOut(Constants.LSTM_HIDDEN_SIZE / 2)
+                        .nIn(training.getLstmHiddenSize())
+                        .nOut(training.getLstmHiddenSize() / 2)
                         .activation(Activation.TANH)
                         .weightInit(WeightInit.XAVIER)
                         .build())
                 .layer(2, new RnnOutputLayer.Builder()
-                        .nIn(Constants.LSTM_HIDDEN_SIZE / 2)
-                        .nOut(Constants.LSTM_OUTPUT_SIZE)
+                        .nIn(training.getLstmHiddenSize() / 2)
+                        .nOut(training.getHorizons().size())
                         .activation(Activation.IDENTITY)
                         .lossFunction(LossFunctions.LossFunction.MSE)
                         .weightInit(WeightInit.XAVIER)
@@ -92,221 +195,699 @@ public class NeuralNetwork {
                 .build();
         model = new MultiLayerNetwork(conf);
         model.init();
-        System.out.println("Initialized LSTM model");
+        log.info("[{}] Initialized LSTM model", stream);
     }
 
-    @PostConstruct
-    public void init() {
-        try {
-            //trainModel();
-        } catch (Exception e) {
-            System.err.println("Failed to train model during initialization: " + e.getMessage());
-            e.printStackTrace();
-            predictedPrice = 0.0;
+    /**
+     * Цикл на новых свечах: дообучение на буфере образцов либо полное переобучение
+     * (по расписанию, при дрейфе ошибки или если онлайн-режим выключен). Между дообучениями
+     * (ONLINE_TRAINING_INTERVAL > 1) прогноз продвигается по newFeatureRows без обучения.
+     */
+    public synchronized void updateModel(List<double[]> newFeatureRows) {
+        long started = System.currentTimeMillis();
+        CryptoProperties.Training training = settings.get();
+        if (!training.architecture().equals(modelSettings.architecture())) {
+            log.info("[{}] Model architecture changed to {}, reinitializing.", stream, training.architecture());
+            initializeModel(training);
+        }
+        candlesSinceTraining += newFeatureRows.size();
+        if (trained && predictedPrice > 0 && !newFeatureRows.isEmpty()) {
+            // Прошлый прогноз относился к первой из новых свечей
+            recordRealizedError(Math.abs(predictedPrice - newFeatureRows.get(0)[FeatureMatrix.CLOSE]) / maxPrice);
+        }
+        String mode;
+        if (needsFullRetrain(training)) {
+            trainModel();
+            mode = "full";
+        } else if (candlesSinceTraining < training.getOnlineTrainingInterval() && !newFeatureRows.isEmpty()) {
+            setPredictions(predictNext(newFeatureRows));
+            mode = "inference";
+        } else {
+            mode = fineTuneModel() ? "online" : "full";
         }
+        if (!mode.equals("inference")) {
+            candlesSinceTraining = 0;
+        }
+        lastTrainingMillis = System.currentTimeMillis() - started;
+        lastTrainingMode = mode;
+        metrics.trainingCycle(stream, mode).record(lastTrainingMillis, TimeUnit.MILLISECONDS);
+        log.debug("[{}] Training cycle ({}) took {} ms", stream, mode, lastTrainingMillis);
     }
 
-    public void trainModel() {
-        List<Candle> candles = dbManager.getCandles(Constants.TRAINING_PERIOD);
+    private boolean needsFullRetrain(CryptoProperties.Training training) {
+        if (!training.isOnlineTraining() || !trained) {
+            return true;
+        }
+        if (candlesSinceFullRetrain >= training.getFullRetrainInterval()) {
+            log.info("[{}] Scheduled full retrain after {} candles.", stream, candlesSinceFullRetrain);
+            return true;
+        }
+        if (realizedErrorCount >= realizedErrors.length) {
+            double meanError = 0;
+            for (double error : realizedErrors) {
+                meanError += error;
+            }
+            meanError /= realizedErrors.length;
+            if (meanError > training.getDriftThreshold() * Math.max(baselineError, 1e-6)) {
+                log.info("[{}] Drift detected: recent error {} vs baseline {}", stream, meanError, baselineError);
+                return true;
+            }
+        }
+        return false;
+    }
 
-        if (candles.size() < Constants.LSTM_TIME_STEPS + 1) {
-            System.out.println("Not enough data to train model: " + candles.size() + " candles available.");
-            predictedPrice = 0.0;
+    public synchronized void trainModel() {
+        FeatureMatrix features = loadFeatures(settings.get().getTrainingPeriod());
+        if (!trainOn(features)) {
+            setPredictions(new double[outputSize()]);
             return;
         }
 
-        maxPrice = candles.stream().mapToDouble(Candle::getClose).max().orElse(1.0);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Last input for prediction: {}", stream, Arrays.toString(features.getRow(features.size() - 1)));
+        }
+        setPredictions(predictLatest(features));
+        saveCheckpoint();
+    }
+
+    /**
+     * Полное обучение на всех строках матрицы: нормализация по её максимальной цене, эпохи обучения,
+     * буфер образцов и базовая ошибка. Не читает БД и не пишет контрольных точек — этим
+     * пользуются и trainModel, и бэктест. Возвращает false, если данных недостаточно.
+     */
+    public synchronized boolean trainOn(FeatureMatrix features) {
+        if (features.size() < Constants.LSTM_TIME_STEPS + maxHorizon()) {
+            log.warn("[{}] Not enough data to train model: {} candles available.", stream, features.size());
+            return false;
+        }
+
+        maxPrice = features.getMaxClose();
         if (maxPrice == 0.0) {
-            System.out.println("Max price is 0, cannot normalize data.");
-            predictedPrice = 0.0;
-            return;
+            log.warn("[{}] Max price is 0, cannot normalize data.", stream);
+            return false;
         }
 
-        if (Constants.MODEL_TYPE.equals("LSTM")) {
-            trainLSTMModel(candles);
-        } else {
-            trainMLPModel(candles);
+        CryptoProperties.Training training = settings.get();
+        DataSet dataSet = buildDataSet(features, maxPrice);
+        int numSamples = dataSet.numExamples();
+
+        int epochs = isLstm() ? training.getLstmEpochs() : training.getMlpEpochs();
+        log.debug("[{}] Training {} for up to {} epochs...", stream, modelSettings.getModelType(), epochs);
+        long trainingStarted = System.currentTimeMillis();
+        fitWithEarlyStopping(dataSet, epochs, training);
+        log.info("[{}] {} model trained with {} samples in {} epochs, {} ms ({}), maxPrice={}", stream,
+                modelSettings.getModelType(), numSamples, lastTrainingEpochs,
+                System.currentTimeMillis() - trainingStarted, lastStopReason, maxPrice);
+
+        if (replayBuffer == null || !replayBuffer.hasShape(training.getOnlineRecentSamples(),
+                training.getOnlineReservoirSize(), sampleInputLength(), outputSize())) {
+            replayBuffer = new ReplayBuffer(training.getOnlineRecentSamples(), training.getOnlineReservoirSize(),
+                    sampleInputLength(), outputSize(), 123);
+        }
+        seedReplayBuffer(features);
+        realizedErrors = new double[training.getDriftWindow()];
+        int recentFrom = Math.max(0, numSamples - realizedErrors.length);
+        baselineError = meanAbsoluteError(dataSet, recentFrom, numSamples);
+        realizedErrorCount = 0;
+        candlesSinceFullRetrain = 0;
+        lastSampleTimestamp = features.getTimestamp(lastSampleTarget(features));
+        trained = true;
+        return true;
+    }
+
+    /**
+     * Обучение мини-батчами по batchSize образцов: последние validationFraction образцов по времени
+     * отложены для валидации, остальные подаются батчами в случайном порядке (с фоновой подготовкой
+     * prefetchBatches батчей). Останов — по maxEpochs, по отсутствию улучшения ошибки на валидации
+     * за earlyStoppingPatience эпох или по maxTrainingSeconds; после останова остаётся модель
+     * с лучшей ошибкой на валидации.
+     */
+    private void fitWithEarlyStopping(DataSet dataSet, int maxEpochs, CryptoProperties.Training training) {
+        int numSamples = dataSet.numExamples();
+        int validationCount = Math.min(numSamples - 1, (int) Math.ceil(numSamples * training.getValidationFraction()));
+        int trainCount = numSamples - validationCount;
+        DataSetIterator trainBatches = new BatchViewIterator(dataSet, 0, trainCount, training.getBatchSize(),
+                new Random(123));
+        // При единственном образце отложить нечего — ошибка считается по обучающему
+        DataSetIterator validation = validationCount > 0
+                ? new BatchViewIterator(dataSet, trainCount, numSamples, training.getBatchSize(), null)
+                : new BatchViewIterator(dataSet, 0, trainCount, training.getBatchSize(), null);
+        AsyncDataSetIterator prefetch = training.getPrefetchBatches() > 0
+                ? new AsyncDataSetIterator(trainBatches, training.getPrefetchBatches())
+                : null;
+
+        List<IterationTerminationCondition> iterationConditions = new ArrayList<>();
+        if (training.getMaxTrainingSeconds() > 0) {
+            iterationConditions.add(new MaxTimeIterationTerminationCondition(training.getMaxTrainingSeconds(),
+                    TimeUnit.SECONDS));
+        }
+        EarlyStoppingConfiguration<MultiLayerNetwork> config = new EarlyStoppingConfiguration.Builder<MultiLayerNetwork>()
+                .epochTerminationConditions(new MaxEpochsTerminationCondition(maxEpochs),
+                        new ScoreImprovementEpochTerminationCondition(training.getEarlyStoppingPatience(),
+                                training.getEarlyStoppingMinImprovement()))
+                .iterationTerminationConditions(iterationConditions.toArray(new IterationTerminationCondition[0]))
+                .scoreCalculator(new DataSetLossCalculator(validation, true))
+                .evaluateEveryNEpochs(1)
+                .modelSaver(new InMemoryModelSaver<>())
+                .build();
+        EarlyStoppingTrainer trainer = new EarlyStoppingTrainer(config, model, prefetch != null ? prefetch : trainBatches);
+        trainer.setListener(new EpochTimer(metrics.trainingEpoch(stream, modelSettings.getModelType())));
+
+        EarlyStoppingResult<MultiLayerNetwork> result;
+        try {
+            result = trainer.fit();
+        } finally {
+            if (prefetch != null) {
+                prefetch.shutdown();
+            }
+        }
+        if (result.getBestModel() != null) {
+            model = result.getBestModel();
+        }
+        lastTrainingEpochs = result.getTotalEpochs();
+        lastStopReason = result.getTerminationDetails() + ", best epoch " + result.getBestModelEpoch();
+        metrics.trainingEpochs(stream).record(lastTrainingEpochs);
+        if (result.getTerminationReason() == EarlyStoppingResult.TerminationReason.Error) {
+            log.warn("[{}] Training stopped with error: {}", stream, result.getTerminationDetails());
+        }
+    }
+
+    /** Длительность каждой эпохи раннего останова, включая расчёт ошибки на валидации. */
+    private static final class EpochTimer implements EarlyStoppingListener<MultiLayerNetwork> {
+        private final Timer timer;
+        private long epochStarted;
+
+        private EpochTimer(Timer timer) {
+            this.timer = timer;
+        }
+
+        @Override
+        public void onStart(EarlyStoppingConfiguration<MultiLayerNetwork> config, MultiLayerNetwork net) {
+            epochStarted = System.nanoTime();
+        }
+
+        @Override
+        public void onEpoch(int epochNum, double score, EarlyStoppingConfiguration<MultiLayerNetwork> config,
+                            MultiLayerNetwork net) {
+            long now = System.nanoTime();
+            timer.record(now - epochStarted, TimeUnit.NANOSECONDS);
+            epochStarted = now;
         }
 
-        if (!candles.isEmpty()) {
-            Candle lastCandle = candles.get(candles.size() - 1);
-            double[] lastInput = getInputForCandle(lastCandle);
-            System.out.println("Last input for prediction: " + Arrays.toString(lastInput));
-            predictedPrice = predict(lastInput);
+        @Override
+        public void onCompletion(EarlyStoppingResult<MultiLayerNetwork> result) {
+        }
+    }
+
+    /**
+     * Прогнозы close[target] для target из [fromTarget, toTarget) по предшествующим строкам матрицы,
+     * одним вызовом output. Для LSTM это то же окно из LSTM_TIME_STEPS свечей, что и при обучении.
+     */
+    public synchronized double[] predictTargets(FeatureMatrix features, int fromTarget, int toTarget) {
+        if (fromTarget < firstTargetRow() || toTarget > features.size() || fromTarget > toTarget) {
+            throw new IllegalArgumentException("Invalid target range [" + fromTarget + ", " + toTarget +
+                    ") for " + features.size() + " rows");
+        }
+        int count = toTarget - fromTarget;
+        double[] predictions = new double[count];
+        if (count == 0) {
+            return predictions;
         }
+        int inputLength = sampleInputLength();
+        float[] inputData = batchInput.host(inputShape(count));
+        for (int i = 0; i < count; i++) {
+            fillSampleInput(features, fromTarget + i, inputData, i * inputLength, maxPrice);
+        }
+        INDArray output = model.output(batchInput.commit());
+        for (int i = 0; i < count; i++) {
+            double normalized = isLstm()
+                    ? output.getDouble(i, 0, Constants.LSTM_TIME_STEPS - 1)
+                    : output.getDouble(i, 0);
+            predictions[i] = normalized * maxPrice;
+        }
+        return predictions;
     }
 
-    private void trainMLPModel(List<Candle> candles) {
-        INDArray inputs = Nd4j.create(candles.size() - 1, 11);
-        INDArray outputs = Nd4j.create(candles.size() - 1, 1);
+    /**
+     * Дообучает текущую модель на новых образцах и буфере старых.
+     * Возвращает false, если вместо этого понадобилось полное переобучение.
+     */
+    private boolean fineTuneModel() {
+        CryptoProperties.Training training = settings.get();
+        FeatureMatrix features = loadFeatures(firstTargetRow() + training.getOnlineRecentSamples() + maxHorizon() - 1);
+        if (features.size() < firstTargetRow() + maxHorizon()) {
+            return true;
+        }
+        if (features.getMaxClose() > maxPrice) {
+            // Цена вышла за диапазон нормализации — пересчитываем maxPrice полным переобучением
+            trainModel();
+            return false;
+        }
+
+        int newSamples = 0;
+        // Образец добавляется, когда закрылись свечи всех его горизонтов
+        for (int target = firstTargetRow(); target <= lastSampleTarget(features); target++) {
+            if (features.getTimestamp(target) <= lastSampleTimestamp) {
+                continue;
+            }
+            newSamples++;
+            addReplaySample(features, target);
+            lastSampleTimestamp = features.getTimestamp(target);
+            candlesSinceFullRetrain++;
+        }
 
-        for (int i = 0; i < candles.size() - 1; i++) {
-            Candle candle = candles.get(i);
-            double[] input = getInputForCandle(candle);
-            if (input.length != 11) {
-                System.out.println("Error: Input array length is " + input.length + " instead of 11: " + Arrays.toString(input));
-                return;
+        if (newSamples > 0) {
+            int numSamples = replayBuffer.size();
+            float[] inputData = replayInput.host(inputShape(numSamples));
+            float[] labelData = replayLabels.host(labelShape(numSamples));
+            replayBuffer.copyTo(inputData, labelData, labelLength(), labelIndex(0, 0),
+                    isLstm() ? Constants.LSTM_TIME_STEPS : 1, maxPrice);
+            DataSet dataSet = new DataSet(replayInput.commit(), replayLabels.commit());
+            for (int i = 0; i < training.getOnlineIterations(); i++) {
+                model.fit(dataSet);
             }
-            inputs.putRow(i, Nd4j.create(input));
-            outputs.putScalar(i, 0, candles.get(i + 1).getClose());
+            saveCheckpoint();
         }
+        setPredictions(predictLatest(features));
+        return true;
+    }
 
-        inputs.divi(maxPrice);
-        outputs.divi(maxPrice);
-        System.out.println("Training MLP...");
-        int epochs = 200;
-        for (int epoch = 0; epoch < epochs; epoch++) {
-            model.fit(inputs, outputs);
+    /**
+     * Прогноз close свечи, следующей за последней строкой матрицы, одним вызовом output.
+     * Не трогает состояние LSTM и не обучает модель — так прогнозируют участники ансамбля.
+     */
+    public synchronized double predictAfter(FeatureMatrix features) {
+        if (!trained || features.size() < firstTargetRow()) {
+            return 0.0;
         }
-        System.out.println("MLP model trained with " + (candles.size() - 1) + " samples, maxPrice=" + maxPrice);
+        float[] inputData = sampleInput.host(inputShape(1));
+        fillSampleInput(features, features.size(), inputData, 0, maxPrice);
+        return outputPrices(sampleInput.commit(), false, Constants.LSTM_TIME_STEPS - 1)[0];
     }
 
-    private void trainLSTMModel(List<Candle> candles) {
-        int numSamples = candles.size() - Constants.LSTM_TIME_STEPS;
-        if (numSamples <= 0) {
-            System.out.println("Not enough data for LSTM: " + candles.size() + " < " + (Constants.LSTM_TIME_STEPS + 1));
-            predictedPrice = 0.0;
+    /**
+     * Восстанавливает последнюю контрольную точку с совпадающей схемой.
+     * Буфер образцов и базовая ошибка не сохраняются, поэтому следующий цикл обучения будет полным.
+     */
+    public synchronized boolean restoreCheckpoint() {
+        ModelCheckpointStore.Checkpoint checkpoint = checkpointStore.loadLatest(checkpointSchema());
+        if (checkpoint == null) {
+            return false;
+        }
+        model = checkpoint.getModel();
+        // Режим рабочих пространств сохраняется в контрольной точке — берём действующий
+        WorkspaceMode workspaceMode = WorkspaceMode.valueOf(modelSettings.getWorkspaceMode());
+        model.getLayerWiseConfigurations().setTrainingWorkspaceMode(workspaceMode);
+        model.getLayerWiseConfigurations().setInferenceWorkspaceMode(workspaceMode);
+        lstmStatePrimed = false;
+        maxPrice = checkpoint.getMaxPrice();
+        modelVersion = checkpoint.getVersion();
+        trained = false;
+        log.info("[{}] Restored model checkpoint v{}, maxPrice={}", stream, modelVersion, maxPrice);
+        return true;
+    }
+
+    /** Пересчитывает прогноз текущей моделью по последним свечам без обучения. */
+    public synchronized void refreshPrediction() {
+        // predictLatest берёт последнюю строку (MLP) или последние LSTM_TIME_STEPS строк (LSTM)
+        int rows = isLstm() ? Constants.LSTM_TIME_STEPS : 1;
+        FeatureMatrix features = loadFeatures(rows);
+        if (features.size() < rows || maxPrice == 0.0) {
             return;
         }
+        setPredictions(predictLatest(features));
+    }
 
-        // Формируем входные данные с формой [numSamples, nIn, timeSteps]
-        INDArray inputs = Nd4j.create(numSamples, Constants.LSTM_INPUT_SIZE, Constants.LSTM_TIME_STEPS);
-        // Формируем метки с формой [numSamples, nOut, timeSteps]
-        INDArray outputs = Nd4j.zeros(numSamples, Constants.LSTM_OUTPUT_SIZE, Constants.LSTM_TIME_STEPS);
+    private void saveCheckpoint() {
+        try {
+            modelVersion = checkpointStore.save(model, maxPrice, checkpointSchema());
+        } catch (Exception e) {
+            log.error("[{}] Failed to save model checkpoint", stream, e);
+        }
+    }
 
-        for (int i = 0; i < numSamples; i++) {
-            for (int t = 0; t < Constants.LSTM_TIME_STEPS; t++) {
-                Candle candle = candles.get(i + t);
-                double[] input = getInputForCandle(candle);
-                if (input.length != Constants.LSTM_INPUT_SIZE) {
-                    System.out.println("Error: Input array length is " + input.length + " instead of " + Constants.LSTM_INPUT_SIZE);
-                    return;
-                }
-                for (int f = 0; f < Constants.LSTM_INPUT_SIZE; f++) {
-                    inputs.putScalar(new int[]{i, f, t}, input[f] / maxPrice);
+    /** Всё, что определяет архитектуру модели и смысл входов; контрольная точка с другой схемой не загружается. */
+    private String checkpointSchema() {
+        return "model=" + modelSettings.getModelType() +
+                ";features=open,high,low,close,volume,sma,rsi,stoch_k,stoch_d,stoch_rsi_k,stoch_rsi_d" +
+                ";inputSize=" + Constants.LSTM_INPUT_SIZE +
+                ";hiddenSize=" + modelSettings.getLstmHiddenSize() +
+                ";learningRate=" + modelSettings.getLstmLearningRate() +
+                ";outputSize=" + outputSize() +
+                (outputSize() > 1 ? ";horizons=" + modelSettings.getHorizons() : "") +
+                ";timeSteps=" + Constants.LSTM_TIME_STEPS;
+    }
+
+    public long getModelVersion() {
+        return modelVersion;
+    }
+
+    /** Сколько раз пересоздавались входы и метки модели; в установившемся режиме не растёт. */
+    public long getTensorAllocations() {
+        return tensorAllocations.get();
+    }
+
+    private void seedReplayBuffer(FeatureMatrix features) {
+        replayBuffer.clear();
+        for (int target = firstTargetRow(); target <= lastSampleTarget(features); target++) {
+            addReplaySample(features, target);
+        }
+    }
+
+    /** Собирает образец со следующей свечой target в sampleScratch и targetScratch и копирует в replayBuffer. */
+    private void addReplaySample(FeatureMatrix features, int target) {
+        if (sampleScratch.length != sampleInputLength()) {
+            sampleScratch = new float[sampleInputLength()];
+        }
+        if (targetScratch.length != outputSize()) {
+            targetScratch = new double[outputSize()];
+        }
+        fillSampleInput(features, target, sampleScratch, 0, 1.0);
+        fillSampleTargets(features, target, targetScratch);
+        replayBuffer.add(sampleScratch, targetScratch);
+    }
+
+    private void recordRealizedError(double error) {
+        realizedErrors[realizedErrorCount % realizedErrors.length] = error;
+        realizedErrorCount++;
+    }
+
+    private double meanAbsoluteError(DataSet dataSet, int from, int to) {
+        int count = to - from;
+        if (count <= 0) return 0.0;
+        INDArray output = model.output(dataSet.getFeatures().get(NDArrayIndex.interval(from, to)));
+        INDArray labels = dataSet.getLabels();
+        double error = 0;
+        for (int i = 0; i < count; i++) {
+            double predicted = isLstm()
+                    ? output.getDouble(i, 0, Constants.LSTM_TIME_STEPS - 1)
+                    : output.getDouble(i, 0);
+            double target = isLstm()
+                    ? labels.getDouble(from + i, 0, Constants.LSTM_TIME_STEPS - 1)
+                    : labels.getDouble(from + i, 0);
+            error += Math.abs(predicted - target);
+        }
+        return error / count;
+    }
+
+    /**
+     * Прогноз по последней строке матрицы. Для LSTM состояние сбрасывается и заново
+     * прогревается последними LSTM_TIME_STEPS свечами — вызывается после каждого обучения.
+     */
+    private double[] predictLatest(FeatureMatrix features) {
+        if (!isLstm()) {
+            return predictMLP(features.getRow(features.size() - 1));
+        }
+        model.rnnClearPreviousState();
+        lstmStatePrimed = false;
+        return stepLSTM(features, features.size() - Constants.LSTM_TIME_STEPS, features.size());
+    }
+
+    /**
+     * Прогноз после новых свечей rows без обучения: для LSTM — по шагу rnnTimeStep на свечу.
+     * rows уже добавлены в буфер, поэтому непрогретое состояние прогревается один раз окном
+     * из буфера, которое заканчивается последней из rows, и сами rows повторно не подаются.
+     */
+    private double[] predictNext(List<double[]> rows) {
+        if (isLstm() && !lstmStatePrimed) {
+            FeatureMatrix recent = loadFeatures(Constants.LSTM_TIME_STEPS);
+            if (recent.size() < Constants.LSTM_TIME_STEPS) {
+                log.warn("[{}] Not enough recent candles for LSTM prediction: {}", stream, recent.size());
+                return new double[outputSize()];
+            }
+            return predictLatest(recent);
+        }
+        double[] prices = null;
+        for (double[] row : rows) {
+            prices = isLstm() ? stepLSTM(row) : predictMLP(row);
+        }
+        return prices;
+    }
+
+    private boolean isLstm() {
+        return modelSettings.getModelType().equals("LSTM");
+    }
+
+    /** Первая строка матрицы, для которой есть полный набор входов. */
+    private int firstTargetRow() {
+        return isLstm() ? Constants.LSTM_TIME_STEPS : 1;
+    }
+
+    private int sampleInputLength() {
+        return isLstm() ? Constants.LSTM_INPUT_SIZE * Constants.LSTM_TIME_STEPS : FeatureMatrix.FEATURE_COUNT;
+    }
+
+    private long[] inputShape(int numSamples) {
+        return isLstm()
+                ? new long[]{numSamples, Constants.LSTM_INPUT_SIZE, Constants.LSTM_TIME_STEPS}
+                : new long[]{numSamples, FeatureMatrix.FEATURE_COUNT};
+    }
+
+    /** Выходов сети — по одному на горизонт прогноза. */
+    private int outputSize() {
+        return modelSettings.getHorizons().size();
+    }
+
+    private int maxHorizon() {
+        List<Integer> horizons = modelSettings.getHorizons();
+        return horizons.get(horizons.size() - 1);
+    }
+
+    /** Последняя строка матрицы, для которой известны цели всех горизонтов. */
+    private int lastSampleTarget(FeatureMatrix features) {
+        return features.size() - maxHorizon();
+    }
+
+    /** Цели образца со следующей свечой target в targets: close[target + h - 1] для каждого горизонта h. */
+    private void fillSampleTargets(FeatureMatrix features, int target, double[] targets) {
+        List<Integer> horizons = modelSettings.getHorizons();
+        for (int k = 0; k < targets.length; k++) {
+            targets[k] = features.getClose(target + horizons.get(k) - 1);
+        }
+    }
+
+    /** Метки: для LSTM [numSamples, horizons, timeSteps] с целями только на последнем шаге, для MLP [numSamples, horizons]. */
+    private long[] labelShape(int numSamples) {
+        return isLstm()
+                ? new long[]{numSamples, outputSize(), Constants.LSTM_TIME_STEPS}
+                : new long[]{numSamples, outputSize()};
+    }
+
+    private int labelLength() {
+        return isLstm() ? outputSize() * Constants.LSTM_TIME_STEPS : outputSize();
+    }
+
+    /** Индекс цели горизонта k образца sample в массиве меток; остальные элементы меток LSTM всегда нули. */
+    private int labelIndex(int sample, int k) {
+        return sample * labelLength() + (isLstm() ? k * Constants.LSTM_TIME_STEPS + Constants.LSTM_TIME_STEPS - 1 : k);
+    }
+
+    /**
+     * Входы образца с целью close[target]: для LSTM — окно строк [target - timeSteps, target)
+     * в раскладке [nIn, timeSteps], для MLP — строка target - 1.
+     */
+    private void fillSampleInput(FeatureMatrix features, int target, float[] dest, int offset, double scale) {
+        if (isLstm()) {
+            int inputSize = Constants.LSTM_INPUT_SIZE;
+            int timeSteps = Constants.LSTM_TIME_STEPS;
+            for (int t = 0; t < timeSteps; t++) {
+                double[] row = features.getRow(target - timeSteps + t);
+                for (int f = 0; f < inputSize; f++) {
+                    dest[offset + f * timeSteps + t] = (float) (row[f] / scale);
                 }
             }
-            // Устанавливаем целевое значение только для последнего временного шага
-            double targetPrice = candles.get(i + Constants.LSTM_TIME_STEPS).getClose() / maxPrice;
-            outputs.putScalar(new int[]{i, 0, Constants.LSTM_TIME_STEPS - 1}, targetPrice);
+        } else {
+            double[] row = features.getRow(target - 1);
+            for (int f = 0; f < FeatureMatrix.FEATURE_COUNT; f++) {
+                dest[offset + f] = (float) (row[f] / scale);
+            }
         }
+    }
 
-        System.out.println("Training LSTM...");
-        DataSet dataSet = new DataSet(inputs, outputs);
-        for (int epoch = 0; epoch < Constants.LSTM_EPOCHS; epoch++) {
-            model.fit(dataSet);
+    /**
+     * Обучающий набор по всем строкам матрицы, у которых есть полный набор входов и известны цели
+     * всех горизонтов; цены делятся на scale.
+     * Набор лежит в переиспользуемых массивах и действителен до следующего вызова.
+     */
+    public DataSet buildDataSet(FeatureMatrix features, double scale) {
+        int firstTarget = firstTargetRow();
+        int numSamples = lastSampleTarget(features) - firstTarget + 1;
+        int inputLength = sampleInputLength();
+        List<Integer> horizons = modelSettings.getHorizons();
+        float[] inputData = trainInput.host(inputShape(numSamples));
+        float[] labelData = trainLabels.host(labelShape(numSamples));
+        for (int i = 0; i < numSamples; i++) {
+            fillSampleInput(features, firstTarget + i, inputData, i * inputLength, scale);
+            for (int k = 0; k < horizons.size(); k++) {
+                labelData[labelIndex(i, k)] = (float) (features.getClose(firstTarget + i + horizons.get(k) - 1) / scale);
+            }
         }
-        System.out.println("LSTM model trained with " + numSamples + " samples, maxPrice=" + maxPrice);
+        return new DataSet(trainInput.commit(), trainLabels.commit());
     }
 
+    public long getLastTrainingMillis() {
+        return lastTrainingMillis;
+    }
+
+    public String getLastTrainingMode() {
+        return lastTrainingMode;
+    }
+
+    public int getLastTrainingEpochs() {
+        return lastTrainingEpochs;
+    }
+
+    public String getLastStopReason() {
+        return lastStopReason;
+    }
+
+    /** Прогноз на следующую свечу по строке признаков input. */
     public double predict(double[] input) {
         if (input == null || input.length != 11) {
-            System.out.println("Invalid input for prediction: " + Arrays.toString(input));
+            log.warn("[{}] Invalid input for prediction: {}", stream, Arrays.toString(input));
             return 0.0;
         }
 
-        if (Constants.MODEL_TYPE.equals("LSTM")) {
-            return predictLSTM(input);
+        if (isLstm()) {
+            return predictLSTM(input)[0];
         } else {
-            return predictMLP(input);
+            return predictMLP(input)[0];
         }
     }
 
-    private double predictMLP(double[] input) {
-        INDArray inputArray = Nd4j.create(input, new int[]{1, 11});
-        inputArray.divi(maxPrice);
-        INDArray output = model.output(inputArray);
-        double predictedValue = output.getDouble(0) * maxPrice;
-        System.out.println("MLP - Raw output: " + output.getDouble(0) + ", Predicted price: " + predictedValue);
-        return predictedValue;
+    private double[] predictMLP(double[] input) {
+        float[] inputData = sampleInput.host(inputShape(1));
+        for (int f = 0; f < FeatureMatrix.FEATURE_COUNT; f++) {
+            inputData[f] = (float) (input[f] / maxPrice);
+        }
+        double[] prices = outputPrices(sampleInput.commit(), false, 0);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] MLP - Predicted prices: {}", stream, Arrays.toString(prices));
+        }
+        return prices;
     }
 
-    private double predictLSTM(double[] input) {
-        List<Candle> recentCandles = dbManager.getCandles(Constants.LSTM_TIME_STEPS);
-        if (recentCandles.size() < Constants.LSTM_TIME_STEPS) {
-            System.out.println("Not enough recent candles for LSTM prediction: " + recentCandles.size());
-            return 0.0;
+    private double[] predictLSTM(double[] input) {
+        if (lstmStatePrimed) {
+            return stepLSTM(input);
+        }
+        // Состояние ещё не прогрето: input — последняя свеча буфера, подаём LSTM_TIME_STEPS - 1
+        // свечей перед ней, затем input
+        FeatureMatrix recent = loadFeatures(Constants.LSTM_TIME_STEPS);
+        if (recent.size() < Constants.LSTM_TIME_STEPS) {
+            log.warn("[{}] Not enough recent candles for LSTM prediction: {}", stream, recent.size());
+            return new double[outputSize()];
+        }
+        model.rnnClearPreviousState();
+        stepLSTM(recent, 0, Constants.LSTM_TIME_STEPS - 1);
+        return stepLSTM(input);
+    }
+
+    /** Подаёт строки [from, to) матрицы в rnnTimeStep одним вызовом и возвращает прогноз после последней. */
+    private double[] stepLSTM(FeatureMatrix features, int from, int to) {
+        int inputSize = Constants.LSTM_INPUT_SIZE;
+        int steps = to - from;
+        // Форма [1, nIn, steps]; полное окно совпадает по форме с входом predictAfter
+        float[] inputData = sampleInput.host(1, inputSize, steps);
+        for (int t = 0; t < steps; t++) {
+            double[] row = features.getRow(from + t);
+            for (int f = 0; f < inputSize; f++) {
+                inputData[f * steps + t] = (float) (row[f] / maxPrice);
+            }
+        }
+        double[] prices = outputPrices(sampleInput.commit(), true, steps - 1);
+        lstmStatePrimed = true;
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] LSTM - Predicted prices: {}", stream, Arrays.toString(prices));
+        }
+        return prices;
+    }
+
+    /** Один шаг rnnTimeStep по новой строке признаков; стоимость не зависит от длины окна. */
+    private double[] stepLSTM(double[] input) {
+        int inputSize = Constants.LSTM_INPUT_SIZE;
+        float[] inputData = stepInput.host(1, inputSize, 1);
+        for (int f = 0; f < inputSize; f++) {
+            inputData[f] = (float) (input[f] / maxPrice);
+        }
+        double[] prices = outputPrices(stepInput.commit(), true, 0);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] LSTM - Predicted prices: {}", stream, Arrays.toString(prices));
         }
+        return prices;
+    }
 
-        // Формируем входные данные с формой [1, nIn, timeSteps]
-        INDArray inputArray = Nd4j.create(1, Constants.LSTM_INPUT_SIZE, Constants.LSTM_TIME_STEPS);
-        for (int t = 0; t < Constants.LSTM_TIME_STEPS - 1; t++) {
-            double[] pastInput = getInputForCandle(recentCandles.get(t));
-            for (int f = 0; f < Constants.LSTM_INPUT_SIZE; f++) {
-                inputArray.putScalar(new int[]{0, f, t}, pastInput[f] / maxPrice);
+    /**
+     * Прогноз по одному входу: цены всех горизонтов за один проход сети, для LSTM — с временного
+     * шага step. При workspaceMode=ENABLED выход пишется в рабочее пространство вывода потока
+     * и читается до его закрытия, цены — в priceScratch. Собственных массивов прогноз на новой свече
+     * не выделяет; временные объекты самого DL4J остаются (десятки КБ на вызов для MLP).
+     * rnn — через rnnTimeStep (состояние LSTM продвигается), иначе output.
+     */
+    private double[] outputPrices(INDArray input, boolean rnn, int step) {
+        long started = System.nanoTime();
+        try {
+            if (!modelSettings.getWorkspaceMode().equals("ENABLED")) {
+                INDArray output = rnn ? model.rnnTimeStep(input) : model.output(input);
+                return toPrices(output, step);
+            }
+            try (MemoryWorkspace workspace = Nd4j.getWorkspaceManager()
+                    .getAndActivateWorkspace(OUTPUT_WORKSPACE, outputWorkspaceId)) {
+                INDArray output = rnn
+                        ? model.rnnTimeStep(input, workspace)
+                        : model.output(input, false, null, null, workspace);
+                return toPrices(output, step);
             }
+        } finally {
+            inferenceTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
         }
-        for (int f = 0; f < Constants.LSTM_INPUT_SIZE; f++) {
-            inputArray.putScalar(new int[]{0, f, Constants.LSTM_TIME_STEPS - 1}, input[f] / maxPrice);
+    }
+
+    /** Цены горизонтов в priceScratch: массив действителен до следующего прогноза. */
+    private double[] toPrices(INDArray output, int step) {
+        if (priceScratch.length != outputSize()) {
+            priceScratch = new double[outputSize()];
+        }
+        double[] prices = priceScratch;
+        for (int k = 0; k < prices.length; k++) {
+            double normalized = isLstm() ? output.getDouble(0, k, step) : output.getDouble(0, k);
+            prices[k] = normalized * maxPrice;
         }
+        return prices;
+    }
 
-        INDArray output = model.output(inputArray);
-        // Берем предсказание для последнего временного шага
-        double predictedValue = output.getDouble(0, 0, Constants.LSTM_TIME_STEPS - 1) * maxPrice;
-        System.out.println("LSTM - Raw output: " + output.getDouble(0, 0, Constants.LSTM_TIME_STEPS - 1) + ", Predicted price: " + predictedValue);
-        return predictedValue;
+    /** Публикует прогнозы по горизонтам; основной прогноз — первый горизонт, следующая свеча. */
+    private void setPredictions(double[] prices) {
+        List<Integer> horizons = modelSettings.getHorizons();
+        Map<Integer, Double> byHorizon = new LinkedHashMap<>();
+        for (int k = 0; k < prices.length; k++) {
+            byHorizon.put(horizons.get(k), prices[k]);
+        }
+        horizonPredictions = Collections.unmodifiableMap(byHorizon);
+        predictedPrice = prices[0];
     }
 
     public double getPredictedPrice() {
         return predictedPrice;
     }
 
+    /** Последние прогнозы: горизонт в свечах → цена, по возрастанию горизонта. */
+    public Map<Integer, Double> getHorizonPredictions() {
+        return horizonPredictions;
+    }
+
+    /** Признаки свечи из буфера; если свечи там нет — OHLCV с нулевыми индикаторами. */
     public double[] getInputForCandle(Candle candle) {
-        try (var conn = dbManager.getConnection();
-             var stmt = conn.prepareStatement(
-                     "SELECT sma, rsi, stochastic_k, stochastic_d, stoch_rsi_k, stoch_rsi_d FROM indicators WHERE timestamp = ?")) {
-            stmt.setLong(1, candle.getTimestamp());
-            ResultSet rs = stmt.executeQuery();
-            double sma = rs.next() ? rs.getDouble("sma") : 0.0;
-            double rsi = rs.getDouble("rsi");
-            double stochasticK = rs.getDouble("stochastic_k");
-            double stochasticD = rs.getDouble("stochastic_d");
-            double stochRsiK = rs.getDouble("stoch_rsi_k");
-            double stochRsiD = rs.getDouble("stoch_rsi_d");
-            double imbalanceInfluence = imbalanceZones.getImbalanceInfluence(candle.getClose());
-            double liquidationInfluence = getLiquidationInfluence(candle.getTimestamp());
-
-            return new double[]{
-                    candle.getOpen(), candle.getHigh(), candle.getLow(), candle.getClose(),
-                    candle.getVolume(), sma, rsi, stochasticK, stochasticD,
-                    stochRsiK, stochRsiD
-            };
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return new double[11];
-        }
-    }
-
-    private double getLiquidationInfluence(long timestamp) {
-        try (var conn = dbManager.getConnection();
-             var stmt = conn.prepareStatement(
-                     "SELECT SUM(CASE WHEN side = 'long' THEN qty ELSE 0 END) as long_qty, " +
-                             "SUM(CASE WHEN side = 'short' THEN qty ELSE 0 END) as short_qty " +
-                             "FROM liquidations WHERE timestamp > ? AND timestamp <= ?")) {
-            stmt.setLong(1, timestamp - BybitClient.getTimeframeMillis(Constants.TIMEFRAME));
-            stmt.setLong(2, timestamp);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                double longQty = rs.getDouble("long_qty");
-                double shortQty = rs.getDouble("short_qty");
-                double maxQty = Math.max(getMaxLiquidationQty(), 1.0);
-                return (longQty - shortQty) / maxQty;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        CandleBuffer.View window = candles.view(candles.capacity());
+        int index = window.indexOf(candle.getTimestamp());
+        if (index < 0) {
+            return FeatureMatrix.featureRow(candle, null);
         }
-        return 0.0;
+        return FeatureMatrix.featureRow(window, index);
     }
 
-    private double getMaxLiquidationQty() {
-        try (var conn = dbManager.getConnection();
-             var stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(
-                     "SELECT MAX(qty) FROM liquidations WHERE timestamp > " + (System.currentTimeMillis() - Constants.TRAINING_PERIOD * BybitClient.getTimeframeMillis(Constants.TIMEFRAME)))) {
-            return rs.next() ? rs.getDouble(1) : 1.0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return 1.0;
-        }
+    /** Матрица признаков последних limit свечей из буфера в памяти. */
+    public FeatureMatrix loadFeatures(int limit) {
+        return FeatureMatrix.fromView(candles.view(limit));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+package com.crypto;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Имена и теги метрик конвейера свеча → индикаторы → модель → рассылка. Компоненты берут
+ * таймеры здесь один раз и держат их в полях, чтобы на горячем пути не искать метр в реестре.
+ * Метрики публикуются через Actuator (/actuator/prometheus).
+ */
+@Component
+public class PipelineMetrics {
+    private final MeterRegistry registry;
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Метрики никуда не публикуются — для бэктеста и бенчмарков без Spring. */
+    public static PipelineMetrics noop() {
+        return new PipelineMetrics(new CompositeMeterRegistry());
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /** Разбор и обработка одного сообщения WebSocket Bybit; result — handled, ignored или error. */
+    public Timer bybitMessage(String result) {
+        return Timer.builder("crypto.bybit.message")
+                .description("Handling time of one Bybit WebSocket message")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /** Запись в таблицу SQLite, включая ожидание единственного соединения-писателя. */
+    public Timer dbWrite(String table) {
+        return Timer.builder("crypto.db.write")
+                .description("SQLite write latency per table")
+                .tag("table", table)
+                .register(registry);
+    }
+
+    /** Расчёт индикаторов; mode — incremental (одна свеча) или warmup (весь буфер). */
+    public Timer indicatorCompute(MarketStream stream, String mode) {
+        return Timer.builder("crypto.indicators.compute")
+                .description("Indicator computation time")
+                .tags("stream", stream.getKey(), "mode", mode)
+                .register(registry);
+    }
+
+    /** Одна эпоха полного обучения; model — тип модели (MLP или LSTM). */
+    public Timer trainingEpoch(MarketStream stream, String modelType) {
+        return Timer.builder("crypto.training.epoch")
+                .description("Time of one full-training epoch")
+                .tags("stream", stream.getKey(), "model", modelType)
+                .register(registry);
+    }
+
+    /** Сколько эпох прошло полное обучение до раннего останова. */
+    public DistributionSummary trainingEpochs(MarketStream stream) {
+        return DistributionSummary.builder("crypto.training.epochs")
+                .description("Epochs run by one full training before early stopping")
+                .tag("stream", stream.getKey())
+                .register(registry);
+    }
+
+    /** Цикл обучения на новых свечах; mode — full, online или inference. */
+    public Timer trainingCycle(MarketStream stream, String mode) {
+        return Timer.builder("crypto.training.cycle")
+                .description("Time of one training cycle")
+                .tags("stream", stream.getKey(), "mode", mode)
+                .register(registry);
+    }
+
+    /** Один вызов модели для прогноза (output или rnnTimeStep). */
+    public Timer inference(MarketStream stream) {
+        return Timer.builder("crypto.inference")
+                .description("Model inference latency")
+                .tag("stream", stream.getKey())
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /** Пересоздания переиспользуемых входов и меток модели (TensorBuffer): растёт только при смене окна или архитектуры. */
+    public void tensorAllocations(MarketStream stream, AtomicLong allocations) {
+        FunctionCounter.builder("crypto.nd4j.allocations", allocations, AtomicLong::doubleValue)
+                .description("Reallocations of reusable model input and label arrays")
+                .tag("stream", stream.getKey())
+                .register(registry);
+    }
+
+    /** От закрытия свечи (начало + таймфрейм) до рассылки прогноза по ней. */
+    public Timer candleToBroadcast(MarketStream stream) {
+        return Timer.builder("crypto.pipeline.latency")
+                .description("Latency from candle close to prediction broadcast")
+                .tag("stream", stream.getKey())
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -1,34 +1,191 @@
 package com.crypto;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
 public class PredictionController {
-    private final NeuralNetwork neuralNetwork;
+    private final StreamRegistry streamRegistry;
     private final DatabaseManager databaseManager;
-    private double latestPrediction = 0.0;
+    private final TrainingPipeline trainingPipeline;
+    private final PredictionWebSocketHandler webSocketHandler;
+    private final PredictionHistory predictionHistory;
+    private final int predictionQueryLimit;
 
     @Autowired
-    public PredictionController(NeuralNetwork neuralNetwork, DatabaseManager databaseManager) {
-        this.neuralNetwork = neuralNetwork;
+    public PredictionController(StreamRegistry streamRegistry, DatabaseManager databaseManager,
+                                TrainingPipeline trainingPipeline, PredictionWebSocketHandler webSocketHandler,
+                                PredictionHistory predictionHistory, CryptoProperties properties) {
+        this.streamRegistry = streamRegistry;
         this.databaseManager = databaseManager;
+        this.trainingPipeline = trainingPipeline;
+        this.webSocketHandler = webSocketHandler;
+        this.predictionHistory = predictionHistory;
+        this.predictionQueryLimit = properties.getPredictions().getQueryLimit();
     }
 
     @GetMapping("/prediction")
-    public Map<String, Object> getPrediction() {
+    public Map<String, Object> getPrediction(@RequestParam(required = false) String symbol,
+                                             @RequestParam(required = false) String timeframe,
+                                             WebRequest request) {
+        StreamContext context = resolve(symbol, timeframe);
+        MarketStream stream = context.getStream();
+        if (request.checkNotModified(predictionHistory.getETag(stream))) {
+            return null;
+        }
+        PredictionRecord latest = predictionHistory.getLatest(stream);
         Map<String, Object> response = new HashMap<>();
         response.put("timestamp", System.currentTimeMillis());
-        response.put("currencyPair", Constants.CURRENCY_PAIR);
-        response.put("predictedPrice", latestPrediction);
+        response.put("currencyPair", stream.getSymbol());
+        response.put("timeframe", stream.getTimeframe());
+        response.put("predictedPrice", context.getPredictedPrice());
+        response.put("predictions", context.getHorizonPredictions());
+        if (latest != null) {
+            response.put("candleTimestamp", latest.getCandleTimestamp());
+            response.put("modelVersion", latest.getModelVersion());
+        }
         return response;
     }
 
-    public void updatePrediction(double prediction) {
-        this.latestPrediction = prediction;
+    /**
+     * Прогнозы со временем свечи в [from, to] (мс), не больше limit последних, по возрастанию времени.
+     * Поддерживает If-None-Match: пока история потока не менялась, отвечает 304.
+     */
+    @GetMapping("/prediction/history")
+    public List<PredictionRecord> getPredictions(@RequestParam(required = false) String symbol,
+                                                 @RequestParam(required = false) String timeframe,
+                                                 @RequestParam(required = false) Long from,
+                                                 @RequestParam(required = false) Long to,
+                                                 @RequestParam(defaultValue = "500") int limit,
+                                                 WebRequest request) {
+        MarketStream stream = resolve(symbol, timeframe).getStream();
+        if (request.checkNotModified(predictionHistory.getETag(stream))) {
+            return null;
+        }
+        int boundedLimit = Math.max(1, Math.min(limit, predictionQueryLimit));
+        return predictionHistory.query(stream, from == null ? Long.MIN_VALUE : from,
+                to == null ? Long.MAX_VALUE : to, boundedLimit);
     }
-}
\ No newline at end of file
+
+    @GetMapping("/pipeline")
+    public List<Map<String, Object>> getPipelineStatus() {
+        List<Map<String, Object>> response = new ArrayList<>();
+        for (StreamContext context : streamRegistry.getAll()) {
+            MarketStream stream = context.getStream();
+            Map<String, Object> status = new HashMap<>();
+            status.put("currencyPair", stream.getSymbol());
+            status.put("timeframe", stream.getTimeframe());
+            status.put("queueDepth", trainingPipeline.getQueueDepth(stream));
+            status.put("currentLagMillis", trainingPipeline.getCurrentLagMillis(stream));
+            status.put("lastCycleLagMillis", trainingPipeline.getLastCycleLagMillis(stream));
+            status.put("lastCycleDurationMillis", trainingPipeline.getLastCycleDurationMillis(stream));
+            status.put("completedCycles", trainingPipeline.getCompletedCycles(stream));
+            status.put("coalescedCandles", trainingPipeline.getCoalescedCandles(stream));
+            status.put("lastTrainingMode", context.getNeuralNetwork().getLastTrainingMode());
+            status.put("lastTrainingMillis", context.getNeuralNetwork().getLastTrainingMillis());
+            status.put("lastTrainingEpochs", context.getNeuralNetwork().getLastTrainingEpochs());
+            status.put("lastStopReason", context.getNeuralNetwork().getLastStopReason());
+            response.add(status);
+        }
+        return response;
+    }
+
+    /**
+     * Зоны дисбаланса в пределах ±rangePercent% от последней цены закрытия (по умолчанию
+     * crypto.imbalance.range-percent) с весом затухания и суммарным влиянием; читаются из памяти.
+     */
+    @GetMapping("/zones")
+    public Map<String, Object> getImbalanceZones(@RequestParam(required = false) String symbol,
+                                                 @RequestParam(required = false) String timeframe,
+                                                 @RequestParam(required = false) Double rangePercent) {
+        StreamContext context = resolve(symbol, timeframe);
+        ImbalanceZones imbalanceZones = context.getImbalanceZones();
+        CandleBuffer.View latest = context.getCandles().view(1);
+        if (latest.size() == 0) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "No candles loaded yet");
+        }
+        double price = latest.getClose(0);
+        double range = rangePercent == null ? imbalanceZones.getRangePercent() : rangePercent;
+        List<Map<String, Object>> zones = new ArrayList<>();
+        for (ImbalanceZone zone : imbalanceZones.zonesWithin(price, range)) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("timestamp", zone.getTimestamp());
+            entry.put("price", zone.getPrice());
+            entry.put("volume", zone.getVolume());
+            entry.put("weight", imbalanceZones.decayWeight(zone.getTimestamp()));
+            zones.add(entry);
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("currencyPair", context.getStream().getSymbol());
+        response.put("timeframe", context.getStream().getTimeframe());
+        response.put("price", price);
+        response.put("rangePercent", range);
+        response.put("influence", imbalanceZones.getImbalanceInfluence(price));
+        response.put("zones", zones);
+        return response;
+    }
+
+    /** Участники ансамбля каждого потока: прогноз, ошибка, время обучения и прогноза, исключён ли. */
+    @GetMapping("/ensemble")
+    public List<Map<String, Object>> getEnsembleStatus() {
+        List<Map<String, Object>> response = new ArrayList<>();
+        for (StreamContext context : streamRegistry.getAll()) {
+            ModelEnsemble ensemble = context.getEnsemble();
+            if (ensemble == null) {
+                continue;
+            }
+            List<Map<String, Object>> members = new ArrayList<>();
+            for (ModelEnsemble.Member member : ensemble.getMembers()) {
+                Map<String, Object> status = new HashMap<>();
+                status.put("name", member.getName());
+                status.put("active", member.isActive());
+                status.put("prunedReason", member.getPrunedReason());
+                status.put("predictedPrice", member.getPredicted());
+                status.put("error", member.getError());
+                status.put("errorSamples", member.getErrorSamples());
+                status.put("lastTrainMillis", member.getLastTrainMillis());
+                status.put("predictMicros", member.getPredictMicros());
+                members.add(status);
+            }
+            Map<String, Object> status = new HashMap<>();
+            status.put("currencyPair", context.getStream().getSymbol());
+            status.put("timeframe", context.getStream().getTimeframe());
+            status.put("predictedPrice", ensemble.getPredictedPrice());
+            status.put("members", members);
+            response.add(status);
+        }
+        return response;
+    }
+
+    @GetMapping("/websocket")
+    public Map<String, Object> getWebSocketStatus() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("sessions", webSocketHandler.getSessionCount());
+        response.put("bufferedBytes", webSocketHandler.getBufferedBytes());
+        response.put("maxSessionBufferedBytes", webSocketHandler.getMaxSessionBufferedBytes());
+        response.put("pendingSends", webSocketHandler.getPendingSends());
+        response.put("broadcasts", webSocketHandler.getBroadcasts());
+        response.put("evictedSessions", webSocketHandler.getEvictedSessions());
+        response.put("sendFailures", webSocketHandler.getSendFailures());
+        response.put("rejectedFlushes", webSocketHandler.getRejectedFlushes());
+        return response;
+    }
+
+    private StreamContext resolve(String symbol, String timeframe) {
+        StreamContext context = streamRegistry.resolve(symbol, timeframe);
+        if (context == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown stream " + symbol + ":" + timeframe);
+        }
+        return context;
+    }
+}
@@ -0,0 +1,153 @@
+package com.crypto;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * История прогнозов: каждая запись сохраняется в таблицу predictions, а последние
+ * crypto.predictions.cache-size записей потока держатся в памяти. Запросы, которые укладываются
+ * в кеш, в SQLite не ходят. Версия потока меняется при каждой записи и служит ETag,
+ * так что повторный опрос без изменений получает 304 без обращения к данным.
+ */
+@Component
+public class PredictionHistory {
+    private final DatabaseManager dbManager;
+    private final Map<MarketStream, StreamHistory> histories = new ConcurrentHashMap<>();
+    // Версии начинаются заново после перезапуска — время старта делает ETag уникальным
+    private final long epoch = System.currentTimeMillis();
+
+    public PredictionHistory(StreamRegistry streamRegistry, DatabaseManager dbManager, CryptoProperties properties) {
+        this.dbManager = dbManager;
+        int cacheSize = properties.getPredictions().getCacheSize();
+        for (StreamContext context : streamRegistry.getAll()) {
+            MarketStream stream = context.getStream();
+            StreamHistory history = new StreamHistory(cacheSize);
+            history.load(dbManager.getPredictions(stream, Long.MIN_VALUE, Long.MAX_VALUE, cacheSize));
+            histories.put(stream, history);
+        }
+    }
+
+    /** Сохраняет прогноз закрытия свечи candleTimestamp. */
+    public void record(MarketStream stream, long candleTimestamp, long modelVersion, double predictedPrice) {
+        StreamHistory history = histories.get(stream);
+        if (history == null) {
+            return;
+        }
+        PredictionRecord record = new PredictionRecord(candleTimestamp, System.currentTimeMillis(), modelVersion,
+                predictedPrice, null);
+        dbManager.savePrediction(stream, record);
+        history.put(record);
+    }
+
+    /** Записывает фактическое закрытие свечи к её прогнозу, если он был. */
+    public void realize(MarketStream stream, long candleTimestamp, double close) {
+        StreamHistory history = histories.get(stream);
+        if (history == null) {
+            return;
+        }
+        dbManager.saveRealizedClose(stream, candleTimestamp, close);
+        history.realize(candleTimestamp, close);
+    }
+
+    public PredictionRecord getLatest(MarketStream stream) {
+        StreamHistory history = histories.get(stream);
+        return history == null ? null : history.latest();
+    }
+
+    /** Сильный ETag истории потока; меняется при любой новой записи или закрытии свечи. */
+    public String getETag(MarketStream stream) {
+        StreamHistory history = histories.get(stream);
+        long version = history == null ? 0 : history.version;
+        return "\"" + stream.getKey() + "-" + epoch + "-" + version + "\"";
+    }
+
+    /** Последние limit прогнозов со временем свечи в [from, to], по возрастанию времени. */
+    public List<PredictionRecord> query(MarketStream stream, long from, long to, int limit) {
+        StreamHistory history = histories.get(stream);
+        if (history == null) {
+            return Collections.emptyList();
+        }
+        List<PredictionRecord> cached = history.query(from, to, limit);
+        if (cached != null) {
+            return cached;
+        }
+        return dbManager.getPredictions(stream, from, to, limit);
+    }
+
+    private static final class StreamHistory {
+        private final int capacity;
+        private final NavigableMap<Long, PredictionRecord> records = new TreeMap<>();
+        // true, если в кеше все прогнозы потока (в БД старше ничего нет)
+        private boolean complete = true;
+        private volatile long version;
+
+        private StreamHistory(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void load(List<PredictionRecord> recent) {
+            for (PredictionRecord record : recent) {
+                records.put(record.getCandleTimestamp(), record);
+            }
+            complete = recent.size() < capacity;
+        }
+
+        synchronized void put(PredictionRecord record) {
+            PredictionRecord previous = records.get(record.getCandleTimestamp());
+            if (previous != null && previous.getRealizedClose() != null) {
+                record = record.withRealizedClose(previous.getRealizedClose());
+            }
+            records.put(record.getCandleTimestamp(), record);
+            while (records.size() > capacity) {
+                records.pollFirstEntry();
+                complete = false;
+            }
+            version++;
+        }
+
+        synchronized void realize(long candleTimestamp, double close) {
+            PredictionRecord record = records.get(candleTimestamp);
+            if (record != null) {
+                records.put(candleTimestamp, record.withRealizedClose(close));
+                version++;
+            }
+        }
+
+        synchronized PredictionRecord latest() {
+            Map.Entry<Long, PredictionRecord> last = records.lastEntry();
+            return last == null ? null : last.getValue();
+        }
+
+        /**
+         * Ответ из кеша или null, если часть ответа может лежать только в БД: диапазон начинается
+         * раньше кеша, а в закешированной части меньше limit записей.
+         */
+        synchronized List<PredictionRecord> query(long from, long to, int limit) {
+            List<PredictionRecord> result = new ArrayList<>();
+            if (records.isEmpty() || from > to) {
+                return result; // пустой кеш бывает только при пустой истории
+            }
+            long cachedFrom = Math.max(from, records.firstKey());
+            if (cachedFrom <= to) {
+                for (PredictionRecord record : records.subMap(cachedFrom, true, to, true).descendingMap().values()) {
+                    if (result.size() == limit) {
+                        break;
+                    }
+                    result.add(record);
+                }
+            }
+            if (result.size() < limit && !complete && from < records.firstKey()) {
+                return null;
+            }
+            Collections.reverse(result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.crypto;
+
+/**
+ * Прогноз цены закрытия свечи candleTimestamp и, когда свеча закрылась, её фактическое закрытие.
+ */
+public class PredictionRecord {
+    private final long candleTimestamp;
+    private final long createdAt;
+    private final long modelVersion;
+    private final double predictedPrice;
+    private final Double realizedClose;
+
+    public PredictionRecord(long candleTimestamp, long createdAt, long modelVersion, double predictedPrice,
+                            Double realizedClose) {
+        this.candleTimestamp = candleTimestamp;
+        this.createdAt = createdAt;
+        this.modelVersion = modelVersion;
+        this.predictedPrice = predictedPrice;
+        this.realizedClose = realizedClose;
+    }
+
+    public long getCandleTimestamp() {
+        return candleTimestamp;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getModelVersion() {
+        return modelVersion;
+    }
+
+    public double getPredictedPrice() {
+        return predictedPrice;
+    }
+
+    /** null, пока свеча не закрылась. */
+    public Double getRealizedClose() {
+        return realizedClose;
+    }
+
+    public PredictionRecord withRealizedClose(double close) {
+        return new PredictionRecord(candleTimestamp, createdAt, modelVersion, predictedPrice, close);
+    }
+}
@@ -1,53 +1,264 @@
 package com.crypto;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.json.JSONObject;
 
+/**
+ * Рассылка прогнозов клиентам без блокировки вызывающего потока.
+ * Сообщения сливаются по сессиям: у каждой сессии есть слот с последним неотправленным прогнозом
+ * каждого потока и флаг запланированной отправки, поэтому в очереди пула рассылки не больше одной
+ * задачи на сессию, а медленный клиент получает сразу самый свежий прогноз. Очередь пула ограничена
+ * crypto.web-socket.send-queue-capacity; если она полна, прогноз остаётся в слоте до следующей рассылки.
+ * Сессия, чья отправка длится дольше crypto.web-socket.send-time-limit-ms, закрывается сторожевым
+ * потоком — это освобождает поток рассылки, застрявший в её sendMessage.
+ */
 @Component
-public class PredictionWebSocketHandler extends TextWebSocketHandler {
-    private final Set<WebSocketSession> sessions = Collections.synchronizedSet(new HashSet<>());
-    private double latestPrediction = 0.0;
+public class PredictionWebSocketHandler extends TextWebSocketHandler implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(PredictionWebSocketHandler.class);
+    private final Map<String, SessionSlot> sessions = new ConcurrentHashMap<>();
+    private final Map<MarketStream, TextMessage> latestMessages = new ConcurrentHashMap<>();
+    private final CryptoProperties.WebSocket settings;
+    private final ThreadPoolExecutor senders;
+    private final ScheduledExecutorService watchdog;
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong evictedSessions = new AtomicLong();
+    private final AtomicLong sendFailures = new AtomicLong();
+    private final AtomicLong rejectedFlushes = new AtomicLong();
+
+    /** Сессия и её неотправленные прогнозы: по одному, самому свежему, на поток. */
+    private static final class SessionSlot {
+        private final ConcurrentWebSocketSessionDecorator session;
+        private final Map<MarketStream, TextMessage> pending = new ConcurrentHashMap<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private SessionSlot(ConcurrentWebSocketSessionDecorator session) {
+            this.session = session;
+        }
+    }
+
+    public PredictionWebSocketHandler(CryptoProperties properties) {
+        this.settings = properties.getWebSocket();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(settings.getSenderThreads(), settings.getSenderThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(settings.getSendQueueCapacity()), r -> {
+            Thread thread = new Thread(r, "ws-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ws-send-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkPeriodMs = Math.max(100, settings.getSendTimeLimitMs() / 2);
+        watchdog.scheduleWithFixedDelay(this::evictStalledSessions, checkPeriodMs, checkPeriodMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        watchdog.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("crypto.websocket.sessions", this, PredictionWebSocketHandler::getSessionCount)
+                .description("Connected prediction WebSocket clients")
+                .register(registry);
+        Gauge.builder("crypto.websocket.buffered", this, PredictionWebSocketHandler::getBufferedBytes)
+                .description("Unsent bytes buffered across sessions")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("crypto.websocket.pending.sends", this, PredictionWebSocketHandler::getPendingSends)
+                .description("Session flushes waiting for a sender thread")
+                .register(registry);
+        FunctionCounter.builder("crypto.websocket.flush.rejections", rejectedFlushes, AtomicLong::get)
+                .description("Session flushes rejected by a full sender queue and left for the next broadcast")
+                .register(registry);
+        FunctionCounter.builder("crypto.websocket.broadcasts", broadcasts, AtomicLong::get)
+                .description("Predictions broadcast to clients")
+                .register(registry);
+        FunctionCounter.builder("crypto.websocket.evictions", evictedSessions, AtomicLong::get)
+                .description("Sessions closed for being too slow or failing")
+                .register(registry);
+        FunctionCounter.builder("crypto.websocket.send.failures", sendFailures, AtomicLong::get)
+                .description("Failed sends")
+                .register(registry);
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.add(session);
-        sendPrediction(session, latestPrediction);
+        ConcurrentWebSocketSessionDecorator decorated = new ConcurrentWebSocketSessionDecorator(session,
+                settings.getSendTimeLimitMs(), settings.getBufferSizeLimit(),
+                ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP);
+        SessionSlot slot = new SessionSlot(decorated);
+        sessions.put(session.getId(), slot);
+        slot.pending.putAll(latestMessages);
+        schedule(slot);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        sessions.remove(session);
+        sessions.remove(session.getId());
     }
 
-    public void broadcastPrediction(double prediction) {
-        this.latestPrediction = prediction;
-        synchronized (sessions) {
-            for (WebSocketSession session : sessions) {
-                if (session.isOpen()) {
-                    sendPrediction(session, prediction);
+    /**
+     * Сериализует прогноз один раз и кладёт его в слот каждой сессии, заменяя неотправленный прогноз
+     * того же потока; не ждёт отправки. horizonPredictions — прогнозы по горизонтам (свечей вперёд → цена),
+     * prediction — на следующую свечу.
+     */
+    public void broadcastPrediction(MarketStream stream, double prediction, Map<Integer, Double> horizonPredictions) {
+        broadcasts.incrementAndGet();
+        TextMessage message = toMessage(stream, prediction, horizonPredictions);
+        latestMessages.put(stream, message);
+        for (SessionSlot slot : sessions.values()) {
+            if (slot.session.isOpen()) {
+                slot.pending.put(stream, message);
+                schedule(slot);
+            }
+        }
+    }
+
+    /** Ставит отправку слота в пул, если она ещё не запланирована. */
+    private void schedule(SessionSlot slot) {
+        if (!slot.scheduled.compareAndSet(false, true)) {
+            return; // запланированная отправка заберёт и этот прогноз
+        }
+        try {
+            senders.execute(() -> flush(slot));
+        } catch (RejectedExecutionException e) {
+            // Очередь полна: прогноз остаётся в слоте и уйдёт со следующей рассылкой
+            slot.scheduled.set(false);
+            rejectedFlushes.incrementAndGet();
+        }
+    }
+
+    private void flush(SessionSlot slot) {
+        do {
+            for (Map.Entry<MarketStream, TextMessage> entry : slot.pending.entrySet()) {
+                // Условное удаление: более новый прогноз того же потока останется в слоте
+                if (slot.pending.remove(entry.getKey(), entry.getValue())) {
+                    send(slot.session, entry.getValue());
                 }
             }
+            slot.scheduled.set(false);
+            // Прогноз мог прийти между опустошением слота и сбросом флага
+        } while (!slot.pending.isEmpty() && slot.scheduled.compareAndSet(false, true));
+    }
+
+    /** Закрывает сессии, чья текущая отправка длится дольше send-time-limit-ms. */
+    private void evictStalledSessions() {
+        for (SessionSlot slot : sessions.values()) {
+            if (slot.session.getTimeSinceSendStarted() > settings.getSendTimeLimitMs()) {
+                evict(slot.session, CloseStatus.SESSION_NOT_RELIABLE,
+                        "send blocked for more than " + settings.getSendTimeLimitMs() + " ms");
+            }
         }
     }
 
-    private void sendPrediction(WebSocketSession session, double prediction) {
+    private static TextMessage toMessage(MarketStream stream, double prediction, Map<Integer, Double> horizonPredictions) {
+        JSONObject message = new JSONObject();
+        message.put("timestamp", System.currentTimeMillis());
+        message.put("currencyPair", stream.getSymbol());
+        message.put("timeframe", stream.getTimeframe());
+        message.put("predictedPrice", prediction);
+        message.put("predictions", new JSONObject(horizonPredictions));
+        return new TextMessage(message.toString());
+    }
+
+    private void send(ConcurrentWebSocketSessionDecorator session, TextMessage message) {
+        if (!session.isOpen()) {
+            return; // закрыта клиентом, пока задача ждала в очереди
+        }
+        try {
+            session.sendMessage(message);
+        } catch (SessionLimitExceededException e) {
+            evict(session, e.getStatus(), e.getMessage());
+        } catch (IOException | IllegalStateException e) {
+            sendFailures.incrementAndGet();
+            evict(session, CloseStatus.SERVER_ERROR, e.getMessage());
+        }
+    }
+
+    private void evict(ConcurrentWebSocketSessionDecorator session, CloseStatus status, String reason) {
+        if (sessions.remove(session.getId()) == null) {
+            return; // уже удалена другим потоком
+        }
+        evictedSessions.incrementAndGet();
+        log.warn("Evicting WebSocket session {}: {}", session.getId(), reason);
         try {
-            JSONObject message = new JSONObject();
-            message.put("timestamp", System.currentTimeMillis());
-            message.put("currencyPair", Constants.CURRENCY_PAIR);
-            message.put("predictedPrice", prediction);
-            session.sendMessage(new TextMessage(message.toString()));
+            session.close(status);
         } catch (IOException e) {
-            e.printStackTrace();
+            // Сессия и так недоступна
+        }
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /** Сумма неотправленных байт во всех сессиях. */
+    public long getBufferedBytes() {
+        long total = 0;
+        for (SessionSlot slot : sessions.values()) {
+            total += slot.session.getBufferSize();
+        }
+        return total;
+    }
+
+    /** Наибольший буфер неотправленных байт среди сессий. */
+    public int getMaxSessionBufferedBytes() {
+        int max = 0;
+        for (SessionSlot slot : sessions.values()) {
+            max = Math.max(max, slot.session.getBufferSize());
         }
+        return max;
+    }
+
+    /** Запланированные отправки сессий, ещё не взятые потоками рассылки. */
+    public int getPendingSends() {
+        return senders.getQueue().size();
+    }
+
+    public long getBroadcasts() {
+        return broadcasts.get();
+    }
+
+    public long getEvictedSessions() {
+        return evictedSessions.get();
+    }
+
+    public long getSendFailures() {
+        return sendFailures.get();
+    }
+
+    public long getRejectedFlushes() {
+        return rejectedFlushes.get();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,126 @@
+package com.crypto;
+
+import java.util.Random;
+
+/**
+ * Буфер образцов для онлайн-дообучения: последние recentCapacity образцов
+ * плюс равномерная случайная выборка (reservoir sampling) из всех более старых.
+ * Образцы хранятся ненормализованными в float, как и входы сети; нормализация выполняется при копировании.
+ *
+ * Память под все слоты выделяется в конструкторе: последние образцы лежат кольцом, add копирует
+ * образец в слот самого старого, а вытесненный образец копируется в слот резервуара. В установившемся
+ * режиме add не выделяет памяти.
+ */
+public class ReplayBuffer {
+    private final int recentCapacity;
+    private final int reservoirCapacity;
+    private final int inputLength;
+    private final int targetCount;
+    private final long seed;
+    // Кольцо последних образцов: recentStart — самый старый, recentCount — число занятых слотов
+    private final float[] recentInputs;
+    private final double[] recentTargets;
+    private int recentStart;
+    private int recentCount;
+    private final float[] reservoirInputs;
+    private final double[] reservoirTargets;
+    private final Random random;
+    private int reservoirCount;
+    private long olderSeen;
+
+    /** inputLength — длина входа образца, targetCount — число целей (горизонтов прогноза). */
+    public ReplayBuffer(int recentCapacity, int reservoirCapacity, int inputLength, int targetCount, long seed) {
+        this.recentCapacity = recentCapacity;
+        this.reservoirCapacity = reservoirCapacity;
+        this.inputLength = inputLength;
+        this.targetCount = targetCount;
+        this.seed = seed;
+        this.recentInputs = new float[recentCapacity * inputLength];
+        this.recentTargets = new double[recentCapacity * targetCount];
+        this.reservoirInputs = new float[reservoirCapacity * inputLength];
+        this.reservoirTargets = new double[reservoirCapacity * targetCount];
+        this.random = new Random(seed);
+    }
+
+    /** Совпадают ли размеры буфера с заданными — тогда его можно очистить и использовать заново. */
+    public boolean hasShape(int recentCapacity, int reservoirCapacity, int inputLength, int targetCount) {
+        return this.recentCapacity == recentCapacity && this.reservoirCapacity == reservoirCapacity
+                && this.inputLength == inputLength && this.targetCount == targetCount;
+    }
+
+    /** Копирует образец в буфер: input — первые inputLength значений, targets — цели по горизонтам. */
+    public void add(float[] input, double[] targets) {
+        int slot;
+        if (recentCount < recentCapacity) {
+            slot = (recentStart + recentCount) % recentCapacity;
+            recentCount++;
+        } else {
+            // Самый старый из последних уходит в резервуар, его слот занимает новый образец
+            slot = recentStart;
+            offerToReservoir(slot);
+            recentStart = (recentStart + 1) % recentCapacity;
+        }
+        System.arraycopy(input, 0, recentInputs, slot * inputLength, inputLength);
+        System.arraycopy(targets, 0, recentTargets, slot * targetCount, targetCount);
+    }
+
+    private void offerToReservoir(int recentSlot) {
+        olderSeen++;
+        int slot;
+        if (reservoirCount < reservoirCapacity) {
+            slot = reservoirCount++;
+        } else {
+            long candidate = (long) (random.nextDouble() * olderSeen);
+            if (candidate >= reservoirCapacity) {
+                return;
+            }
+            slot = (int) candidate;
+        }
+        System.arraycopy(recentInputs, recentSlot * inputLength, reservoirInputs, slot * inputLength, inputLength);
+        System.arraycopy(recentTargets, recentSlot * targetCount, reservoirTargets, slot * targetCount, targetCount);
+    }
+
+    /** Забывает все образцы и возвращает выборку резервуара к исходному seed. */
+    public void clear() {
+        recentStart = 0;
+        recentCount = 0;
+        reservoirCount = 0;
+        olderSeen = 0;
+        random.setSeed(seed);
+    }
+
+    public int size() {
+        return recentCount + reservoirCount;
+    }
+
+    /**
+     * Копирует все образцы подряд: входы длины inputLength в inputData, k-я цель i-го образца —
+     * в labels[i * labelStride + labelOffset + k * targetStep]; всё делится на scale.
+     */
+    public void copyTo(float[] inputData, float[] labels, int labelStride, int labelOffset, int targetStep,
+                       double scale) {
+        int i = 0;
+        for (int r = 0; r < reservoirCount; r++) {
+            copySample(reservoirInputs, reservoirTargets, r, inputData, labels, i++, labelStride, labelOffset,
+                    targetStep, scale);
+        }
+        for (int r = 0; r < recentCount; r++) {
+            copySample(recentInputs, recentTargets, (recentStart + r) % recentCapacity, inputData, labels, i++,
+                    labelStride, labelOffset, targetStep, scale);
+        }
+    }
+
+    private void copySample(float[] inputs, double[] targets, int slot, float[] inputData, float[] labels, int index,
+                            int labelStride, int labelOffset, int targetStep, double scale) {
+        int from = slot * inputLength;
+        int offset = index * inputLength;
+        for (int k = 0; k < inputLength; k++) {
+            inputData[offset + k] = (float) (inputs[from + k] / scale);
+        }
+        int targetFrom = slot * targetCount;
+        int labelStart = index * labelStride + labelOffset;
+        for (int k = 0; k < targetCount; k++) {
+            labels[labelStart + k * targetStep] = (float) (targets[targetFrom + k] / scale);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.crypto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Действующие параметры обучения. Снимок (CryptoProperties.Training) неизменяем после публикации:
+ * обновление проверяет новую копию и подменяет ссылку целиком, поэтому читатель, взявший
+ * снимок один раз в начале операции, видит согласованный набор значений.
+ */
+@Component
+public class RuntimeSettings {
+    private static final Logger log = LoggerFactory.getLogger(RuntimeSettings.class);
+
+    private final int candleBufferCapacity;
+    private volatile CryptoProperties.Training training;
+
+    @Autowired
+    public RuntimeSettings(CryptoProperties properties) {
+        this(properties.getTraining(), properties.getCandleBufferCapacity());
+    }
+
+    public RuntimeSettings(CryptoProperties.Training training, int candleBufferCapacity) {
+        CryptoProperties.Training initial = training.copy();
+        initial.validate(candleBufferCapacity);
+        this.candleBufferCapacity = candleBufferCapacity;
+        this.training = initial;
+    }
+
+    public CryptoProperties.Training get() {
+        return training;
+    }
+
+    /**
+     * Применяет изменения и возвращает предыдущий снимок. При ошибке проверки
+     * (IllegalArgumentException) действующие настройки не меняются.
+     */
+    public synchronized CryptoProperties.Training update(Map<String, Object> updates) {
+        CryptoProperties.Training next = training.withUpdates(updates);
+        next.validate(candleBufferCapacity);
+        CryptoProperties.Training previous = training;
+        training = next;
+        log.info("Training settings updated: {}", next);
+        return previous;
+    }
+}
@@ -0,0 +1,147 @@
+package com.crypto;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Постоянные соединения с SQLite: одно пишущее и небольшой пул читающих.
+ * В режиме WAL читатели не блокируются писателем, поэтому чтения идут без общей блокировки.
+ */
+public class SqliteConnectionPool implements AutoCloseable {
+    private static final long MMAP_SIZE = 256L * 1024 * 1024;
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T run(PooledConnection conn) throws SQLException;
+    }
+
+    /**
+     * Соединение с кешем подготовленных выражений. Выражения из {@link #prepare(String)}
+     * принадлежат пулу — закрывать их нельзя, закрывать нужно только ResultSet.
+     */
+    public static class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null || stmt.isClosed()) {
+                stmt = connection.prepareStatement(sql);
+                statements.put(sql, stmt);
+            } else {
+                stmt.clearParameters();
+                stmt.clearBatch();
+            }
+            return stmt;
+        }
+
+        private void close() {
+            for (PreparedStatement stmt : statements.values()) {
+                try {
+                    stmt.close();
+                } catch (SQLException ignored) {
+                }
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    private final PooledConnection writer;
+    private final BlockingQueue<PooledConnection> readers;
+    private final List<PooledConnection> allReaders = new ArrayList<>();
+    private final Object writeLock = new Object();
+
+    public SqliteConnectionPool(String url, int readerCount) throws SQLException {
+        this.writer = open(url, false);
+        this.readers = new ArrayBlockingQueue<>(readerCount);
+        for (int i = 0; i < readerCount; i++) {
+            PooledConnection reader = open(url, true);
+            allReaders.add(reader);
+            readers.add(reader);
+        }
+    }
+
+    private static PooledConnection open(String url, boolean readOnly) throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("PRAGMA synchronous=NORMAL");
+            stmt.execute("PRAGMA mmap_size=" + MMAP_SIZE);
+            stmt.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MS);
+            if (readOnly) {
+                stmt.execute("PRAGMA query_only=1");
+            }
+        }
+        return new PooledConnection(conn);
+    }
+
+    public <T> T read(SqlWork<T> work) throws SQLException {
+        PooledConnection conn;
+        try {
+            conn = readers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a reader connection", e);
+        }
+        try {
+            return work.run(conn);
+        } finally {
+            readers.offer(conn);
+        }
+    }
+
+    public <T> T write(SqlWork<T> work) throws SQLException {
+        synchronized (writeLock) {
+            return work.run(writer);
+        }
+    }
+
+    public <T> T transaction(SqlWork<T> work) throws SQLException {
+        synchronized (writeLock) {
+            Connection conn = writer.getConnection();
+            conn.setAutoCommit(false);
+            try {
+                T result = work.run(writer);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            writer.close();
+        }
+        for (PooledConnection reader : allReaders) {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.crypto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Состояние одного потока свечей: буфер последних свечей, индикаторы, зоны дисбаланса,
+ * корзины ликвидаций, модель и (если включён) ансамбль моделей.
+ */
+public class StreamContext {
+    private final MarketStream stream;
+    private final CandleBuffer candles;
+    private final Indicators indicators;
+    private final ImbalanceZones imbalanceZones;
+    private final LiquidationBuckets liquidations;
+    private final NeuralNetwork neuralNetwork;
+    private final ModelEnsemble ensemble;
+
+    public StreamContext(MarketStream stream, DatabaseManager dbManager, CryptoProperties properties,
+                         RuntimeSettings settings, PipelineMetrics metrics, ExecutorService ensembleWorkers) {
+        this.stream = stream;
+        this.candles = new CandleBuffer(properties.getCandleBufferCapacity());
+        this.indicators = new Indicators(stream, dbManager, candles, properties.getIndicators(), metrics);
+        this.imbalanceZones = new ImbalanceZones(stream, dbManager, candles, settings, properties.getImbalance());
+        this.liquidations = new LiquidationBuckets(stream, dbManager, properties.getCandleBufferCapacity());
+        ModelCheckpointStore checkpointStore = new ModelCheckpointStore(
+                properties.getCheckpoints().getDir() + "/" + stream.getKey(), properties.getCheckpoints().getKeep());
+        this.neuralNetwork = new NeuralNetwork(stream, candles, settings, checkpointStore, metrics);
+        this.ensemble = ensembleWorkers == null ? null : new ModelEnsemble(stream, properties.getEnsemble(),
+                settings.get(), properties.getCandleBufferCapacity(), ensembleWorkers);
+    }
+
+    public MarketStream getStream() {
+        return stream;
+    }
+
+    public CandleBuffer getCandles() {
+        return candles;
+    }
+
+    public Indicators getIndicators() {
+        return indicators;
+    }
+
+    public ImbalanceZones getImbalanceZones() {
+        return imbalanceZones;
+    }
+
+    public LiquidationBuckets getLiquidations() {
+        return liquidations;
+    }
+
+    public NeuralNetwork getNeuralNetwork() {
+        return neuralNetwork;
+    }
+
+    /** Прогноз, который рассылается клиентам: ансамбля, если он включён и уже прогнозирует, иначе модели. */
+    public double getPredictedPrice() {
+        if (ensemble != null && ensemble.getPredictedPrice() > 0) {
+            return ensemble.getPredictedPrice();
+        }
+        return neuralNetwork.getPredictedPrice();
+    }
+
+    /**
+     * Прогнозы по горизонтам (свечей вперёд → цена) из одного прохода модели; прогноз на следующую
+     * свечу — тот же, что getPredictedPrice (ансамбль прогнозирует только её).
+     */
+    public Map<Integer, Double> getHorizonPredictions() {
+        Map<Integer, Double> predictions = new LinkedHashMap<>(neuralNetwork.getHorizonPredictions());
+        predictions.put(1, getPredictedPrice());
+        return predictions;
+    }
+
+    /** null, если ансамбль выключен (crypto.ensemble.enabled). */
+    public ModelEnsemble getEnsemble() {
+        return ensemble;
+    }
+}
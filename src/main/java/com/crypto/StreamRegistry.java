@@ -0,0 +1,96 @@
+package com.crypto;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Все потоки (инструмент, таймфрейм), обслуживаемые процессом, из crypto.streams.
+ */
+@Component
+public class StreamRegistry {
+    private static final Logger log = LoggerFactory.getLogger(StreamRegistry.class);
+
+    private final Map<MarketStream, StreamContext> contexts = new LinkedHashMap<>();
+    // Общий пул обучения участников ансамблей всех потоков; null, если ансамбль выключен
+    private final ExecutorService ensembleWorkers;
+
+    public StreamRegistry(DatabaseManager dbManager, CryptoProperties properties, RuntimeSettings settings,
+                          PipelineMetrics metrics) {
+        this.ensembleWorkers = properties.getEnsemble().isEnabled() ? newEnsembleWorkers(properties) : null;
+        for (MarketStream stream : MarketStream.parseList(properties.getStreams())) {
+            contexts.putIfAbsent(stream, new StreamContext(stream, dbManager, properties, settings, metrics,
+                    ensembleWorkers));
+        }
+        if (contexts.isEmpty()) {
+            throw new IllegalStateException("No streams configured in crypto.streams");
+        }
+        log.info("Configured streams: {}", contexts.keySet());
+    }
+
+    private static ExecutorService newEnsembleWorkers(CryptoProperties properties) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(properties.getEnsemble().getThreads(), r -> {
+            Thread thread = new Thread(r, "ensemble-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ensembleWorkers != null) {
+            ensembleWorkers.shutdownNow();
+        }
+    }
+
+    public List<StreamContext> getAll() {
+        return Collections.unmodifiableList(new ArrayList<>(contexts.values()));
+    }
+
+    public StreamContext get(MarketStream stream) {
+        return contexts.get(stream);
+    }
+
+    /** Первый настроенный поток — используется, когда запрос не указывает инструмент. */
+    public StreamContext getDefault() {
+        return contexts.values().iterator().next();
+    }
+
+    /**
+     * Поток по параметрам запроса; пустые параметры берутся из потока по умолчанию.
+     */
+    public StreamContext resolve(String symbol, String timeframe) {
+        MarketStream fallback = getDefault().getStream();
+        String resolvedSymbol = symbol == null || symbol.isEmpty() ? fallback.getSymbol() : symbol.toUpperCase();
+        String resolvedTimeframe = timeframe == null || timeframe.isEmpty() ? fallback.getTimeframe() : timeframe;
+        // Перебор вместо new MarketStream: на неизвестном таймфрейме из запроса конструктор бросает исключение
+        for (StreamContext context : contexts.values()) {
+            MarketStream stream = context.getStream();
+            if (stream.getSymbol().equals(resolvedSymbol) && stream.getTimeframe().equals(resolvedTimeframe)) {
+                return context;
+            }
+        }
+        return null;
+    }
+
+    public Set<String> getSymbols() {
+        Set<String> symbols = new LinkedHashSet<>();
+        for (MarketStream stream : contexts.keySet()) {
+            symbols.add(stream.getSymbol());
+        }
+        return symbols;
+    }
+}
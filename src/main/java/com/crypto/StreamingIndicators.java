@@ -0,0 +1,222 @@
+package com.crypto;
+
+/**
+ * Состояние индикаторов, обновляемое по одной свече за O(1).
+ * Свечи должны подаваться в хронологическом порядке (от старой к новой).
+ */
+public class StreamingIndicators {
+    private final RollingMean sma;
+    private final WilderRsi rsi;
+    private final RollingMinMax stochasticRange;
+    private final RollingMean stochasticK;
+    private final RollingMean stochasticD;
+    private final RollingMinMax stochRsiRange;
+    private final RollingMean stochRsiK;
+    private final RollingMean stochRsiD;
+
+    public StreamingIndicators(CryptoProperties.Indicators periods) {
+        this(periods.getSmaPeriod(), periods.getRsiPeriod(),
+                periods.getStochasticKPeriod(), periods.getStochasticKSmoothing(), periods.getStochasticDSmoothing(),
+                periods.getStochRsiPeriod(), periods.getStochRsiKSmoothing(), periods.getStochRsiDSmoothing());
+    }
+
+    public StreamingIndicators(int smaPeriod, int rsiPeriod,
+                               int stochasticKPeriod, int stochasticKSmoothing, int stochasticDSmoothing,
+                               int stochRsiPeriod, int stochRsiKSmoothing, int stochRsiDSmoothing) {
+        this.sma = new RollingMean(smaPeriod);
+        this.rsi = new WilderRsi(rsiPeriod);
+        this.stochasticRange = new RollingMinMax(stochasticKPeriod);
+        this.stochasticK = new RollingMean(stochasticKSmoothing);
+        this.stochasticD = new RollingMean(stochasticDSmoothing);
+        this.stochRsiRange = new RollingMinMax(stochRsiPeriod);
+        this.stochRsiK = new RollingMean(stochRsiKSmoothing);
+        this.stochRsiD = new RollingMean(stochRsiDSmoothing);
+    }
+
+    /**
+     * Добавляет свечу и возвращает {sma, rsi, stochK, stochD, stochRsiK, stochRsiD},
+     * либо null, пока окна ещё не заполнены.
+     */
+    public double[] update(double high, double low, double close) {
+        sma.add(close);
+
+        stochasticRange.add(high, low);
+        if (stochasticRange.isFull()) {
+            stochasticK.add(percentInRange(close, stochasticRange.min(), stochasticRange.max()));
+            if (stochasticK.isFull()) {
+                stochasticD.add(stochasticK.mean());
+            }
+        }
+
+        rsi.add(close);
+        if (rsi.isReady()) {
+            double currentRsi = rsi.value();
+            stochRsiRange.add(currentRsi, currentRsi);
+            if (stochRsiRange.isFull()) {
+                stochRsiK.add(percentInRange(currentRsi, stochRsiRange.min(), stochRsiRange.max()));
+                if (stochRsiK.isFull()) {
+                    stochRsiD.add(stochRsiK.mean());
+                }
+            }
+        }
+
+        if (!isReady()) {
+            return null;
+        }
+        return new double[]{
+                sma.mean(), rsi.value(),
+                stochasticK.mean(), stochasticD.mean(),
+                stochRsiK.mean(), stochRsiD.mean()
+        };
+    }
+
+    public boolean isReady() {
+        return sma.isFull() && rsi.isReady() && stochasticD.isFull() && stochRsiD.isFull();
+    }
+
+    private static double percentInRange(double value, double lowest, double highest) {
+        return highest != lowest ? (value - lowest) / (highest - lowest) * 100 : 50;
+    }
+
+    /** Скользящее среднее на кольцевом буфере с накопленной суммой. */
+    static final class RollingMean {
+        private final double[] window;
+        private int next;
+        private int count;
+        private double sum;
+
+        RollingMean(int period) {
+            this.window = new double[period];
+        }
+
+        void add(double value) {
+            if (count == window.length) {
+                sum -= window[next];
+            } else {
+                count++;
+            }
+            window[next] = value;
+            sum += value;
+            next = (next + 1) % window.length;
+        }
+
+        boolean isFull() {
+            return count == window.length;
+        }
+
+        double mean() {
+            return count == 0 ? 0.0 : sum / count;
+        }
+    }
+
+    /** RSI со сглаживанием Уайлдера: первые period изменений усредняются, далее экспоненциально. */
+    static final class WilderRsi {
+        private final int period;
+        private double previousClose = Double.NaN;
+        private int changes;
+        private double avgGain;
+        private double avgLoss;
+
+        WilderRsi(int period) {
+            this.period = period;
+        }
+
+        void add(double close) {
+            if (Double.isNaN(previousClose)) {
+                previousClose = close;
+                return;
+            }
+            double change = close - previousClose;
+            previousClose = close;
+            double gain = change > 0 ? change : 0;
+            double loss = change < 0 ? -change : 0;
+
+            if (changes < period) {
+                avgGain += gain / period;
+                avgLoss += loss / period;
+                changes++;
+            } else {
+                avgGain = (avgGain * (period - 1) + gain) / period;
+                avgLoss = (avgLoss * (period - 1) + loss) / period;
+            }
+        }
+
+        boolean isReady() {
+            return changes >= period;
+        }
+
+        double value() {
+            if (avgLoss == 0) return 100;
+            double rs = avgGain / avgLoss;
+            return 100 - (100 / (1 + rs));
+        }
+    }
+
+    /** Минимум и максимум скользящего окна на монотонных деках (амортизированно O(1)). */
+    static final class RollingMinMax {
+        private final int period;
+        private final MonotonicDeque maxDeque;
+        private final MonotonicDeque minDeque;
+        private long index;
+
+        RollingMinMax(int period) {
+            this.period = period;
+            this.maxDeque = new MonotonicDeque(period, true);
+            this.minDeque = new MonotonicDeque(period, false);
+        }
+
+        void add(double high, double low) {
+            long expired = index - period;
+            maxDeque.push(index, high, expired);
+            minDeque.push(index, low, expired);
+            index++;
+        }
+
+        boolean isFull() {
+            return index >= period;
+        }
+
+        double max() {
+            return maxDeque.head();
+        }
+
+        double min() {
+            return minDeque.head();
+        }
+    }
+
+    private static final class MonotonicDeque {
+        private final long[] indices;
+        private final double[] values;
+        private final boolean keepMax;
+        private int head;
+        private int size;
+
+        MonotonicDeque(int capacity, boolean keepMax) {
+            this.indices = new long[capacity];
+            this.values = new double[capacity];
+            this.keepMax = keepMax;
+        }
+
+        void push(long index, double value, long expiredIndex) {
+            while (size > 0 && indices[head] <= expiredIndex) {
+                head = (head + 1) % indices.length;
+                size--;
+            }
+            while (size > 0) {
+                int tail = (head + size - 1) % indices.length;
+                boolean dominated = keepMax ? values[tail] <= value : values[tail] >= value;
+                if (!dominated) break;
+                size--;
+            }
+            int slot = (head + size) % indices.length;
+            indices[slot] = index;
+            values[slot] = value;
+            size++;
+        }
+
+        double head() {
+            return size == 0 ? 0.0 : values[head];
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.crypto;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Переиспользуемый вход или метки модели: массив float[] в куче и INDArray типа FLOAT той же формы
+ * (тип совпадает с типом сети, поэтому DL4J не приводит его на каждом вызове). Оба пересоздаются
+ * только при смене формы — другое окно обучения или другая архитектура; в остальных вызовах
+ * хост-массив заполняется на месте и переносится в INDArray одним копированием.
+ *
+ * Каждое пересоздание увеличивает allocations — счётчик метрики crypto.nd4j.allocations.
+ * Экземпляр принадлежит одной NeuralNetwork и используется под её монитором.
+ */
+public class TensorBuffer {
+    private final AtomicLong allocations;
+    private long[] shape;
+    private float[] host;
+    private INDArray array;
+
+    public TensorBuffer(AtomicLong allocations) {
+        this.allocations = allocations;
+    }
+
+    /**
+     * Хост-массив под форму shape в порядке 'c'. Если форма не менялась, возвращается прежний массив
+     * с прежним содержимым — вызывающий перезаписывает те элементы, которые ему нужны.
+     */
+    public float[] host(long... shape) {
+        if (!Arrays.equals(this.shape, shape)) {
+            long length = 1;
+            for (long dimension : shape) {
+                length *= dimension;
+            }
+            host = new float[Math.toIntExact(length)];
+            array = Nd4j.create(DataType.FLOAT, shape, 'c');
+            this.shape = shape.clone();
+            allocations.incrementAndGet();
+        }
+        return host;
+    }
+
+    /** Копирует хост-массив в INDArray и возвращает его; массив действителен до следующего host. */
+    public INDArray commit() {
+        array.data().setData(host);
+        return array;
+    }
+}
@@ -0,0 +1,240 @@
+package com.crypto;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Обработка подтверждённых свечей вне потока WebSocket Bybit.
+ * Приём только сохраняет свечу и ставит её в очередь своего потока; ограниченный пул
+ * (crypto.training.threads, меняется на ходу) обучает потоки параллельно, но каждый поток — не более
+ * чем в одной задаче одновременно. Задача забирает все накопившиеся свечи разом,
+ * так что пачка свечей даёт одно переобучение.
+ */
+@Component
+public class TrainingPipeline implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(TrainingPipeline.class);
+
+    private final PredictionWebSocketHandler webSocketHandler;
+    private final PredictionHistory predictionHistory;
+    private final Map<MarketStream, StreamQueue> queues = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor workers;
+
+    public TrainingPipeline(StreamRegistry streamRegistry, PredictionWebSocketHandler webSocketHandler,
+                            PredictionHistory predictionHistory, RuntimeSettings settings,
+                            PipelineMetrics metrics) {
+        this.webSocketHandler = webSocketHandler;
+        this.predictionHistory = predictionHistory;
+        for (StreamContext context : streamRegistry.getAll()) {
+            queues.put(context.getStream(), new StreamQueue(context, metrics.candleToBroadcast(context.getStream())));
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = (ThreadPoolExecutor) Executors.newFixedThreadPool(settings.get().getThreads(), r -> {
+            Thread thread = new Thread(r, "training-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (StreamQueue streamQueue : queues.values()) {
+            Gauge.builder("crypto.pipeline.queue.depth", streamQueue.queue, BlockingQueue::size)
+                    .description("Candles waiting for a training cycle")
+                    .tag("stream", streamQueue.context.getStream().getKey())
+                    .register(registry);
+        }
+        Gauge.builder("crypto.pipeline.workers.active", workers, ThreadPoolExecutor::getActiveCount)
+                .description("Training workers busy with a cycle")
+                .register(registry);
+    }
+
+    public void submit(MarketStream stream, Candle candle) {
+        StreamQueue streamQueue = queues.get(stream);
+        if (streamQueue == null) {
+            log.warn("Ignoring candle for unknown stream {}", stream);
+            return;
+        }
+        streamQueue.queue.offer(new PendingCandle(candle, System.currentTimeMillis()));
+        schedule(streamQueue);
+    }
+
+    /** Ставит в очередь цикл обучения без новой свечи (например, догоняющее обучение после старта). */
+    public void requestRetrain(MarketStream stream) {
+        submit(stream, null);
+    }
+
+    /** Меняет размер пула обучения; задачи, которые уже выполняются, не прерываются. */
+    public synchronized void setThreads(int threads) {
+        if (threads > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(threads);
+            workers.setCorePoolSize(threads);
+        } else {
+            workers.setCorePoolSize(threads);
+            workers.setMaximumPoolSize(threads);
+        }
+    }
+
+    public int getThreads() {
+        return workers.getCorePoolSize();
+    }
+
+    private void schedule(StreamQueue streamQueue) {
+        if (streamQueue.scheduled.compareAndSet(false, true)) {
+            workers.execute(() -> drain(streamQueue));
+        }
+    }
+
+    private void drain(StreamQueue streamQueue) {
+        try {
+            List<PendingCandle> batch = new ArrayList<>();
+            streamQueue.queue.drainTo(batch);
+            if (!batch.isEmpty()) {
+                process(streamQueue, batch);
+            }
+        } catch (Exception e) {
+            log.error("Error in training pipeline for {}", streamQueue.context.getStream(), e);
+        } finally {
+            streamQueue.scheduled.set(false);
+            if (!streamQueue.queue.isEmpty()) {
+                schedule(streamQueue);
+            }
+        }
+    }
+
+    private void process(StreamQueue streamQueue, List<PendingCandle> batch) {
+        StreamContext context = streamQueue.context;
+        NeuralNetwork neuralNetwork = context.getNeuralNetwork();
+        long started = System.currentTimeMillis();
+
+        Candle latest = null;
+        List<double[]> newFeatureRows = new ArrayList<>(batch.size());
+        for (PendingCandle pending : batch) {
+            if (pending.candle != null) {
+                context.getCandles().append(pending.candle);
+                predictionHistory.realize(context.getStream(), pending.candle.getTimestamp(), pending.candle.getClose());
+                IndicatorRow row = context.getIndicators().update(pending.candle);
+                newFeatureRows.add(FeatureMatrix.featureRow(pending.candle, row));
+                latest = pending.candle;
+            }
+        }
+        if (latest != null) {
+            // Корзины ликвидаций по закрытым свечам пишутся одной строкой на интервал
+            context.getLiquidations().flush(latest.getTimestamp());
+            BybitClient.printSortedValues(latest.getHigh(), latest.getLow(), context.getPredictedPrice());
+        }
+
+        context.getImbalanceZones().update();
+        neuralNetwork.updateModel(newFeatureRows);
+        ModelEnsemble ensemble = context.getEnsemble();
+        if (ensemble != null) {
+            ensemble.update(neuralNetwork.loadFeatures(ensemble.getMaxTrainingPeriod()));
+        }
+        double predictedPrice = context.getPredictedPrice();
+        // 0 — у модели ещё нет прогноза: в историю не пишем и не рассылаем
+        if (predictedPrice != 0.0) {
+            long lastTimestamp = context.getCandles().getLastTimestamp();
+            if (lastTimestamp > 0) {
+                // Прогноз относится к следующей, ещё не закрытой свече
+                predictionHistory.record(context.getStream(), lastTimestamp + context.getStream().getTimeframeMillis(),
+                        neuralNetwork.getModelVersion(), predictedPrice);
+            }
+            webSocketHandler.broadcastPrediction(context.getStream(), predictedPrice, context.getHorizonPredictions());
+            if (latest != null) {
+                long closedAt = latest.getTimestamp() + context.getStream().getTimeframeMillis();
+                streamQueue.candleToBroadcast.record(Math.max(0, System.currentTimeMillis() - closedAt), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        long finished = System.currentTimeMillis();
+        streamQueue.lastCycleDurationMillis = finished - started;
+        streamQueue.lastCycleLagMillis = finished - batch.get(0).enqueuedAt;
+        streamQueue.completedCycles.incrementAndGet();
+        if (batch.size() > 1) {
+            streamQueue.coalescedCandles.addAndGet(batch.size() - 1);
+            log.info("[{}] Coalesced {} pending candles into one training cycle.", context.getStream(), batch.size());
+        }
+    }
+
+    public int getQueueDepth(MarketStream stream) {
+        StreamQueue streamQueue = queues.get(stream);
+        return streamQueue == null ? 0 : streamQueue.queue.size();
+    }
+
+    /** Возраст самой старой необработанной свечи в очереди, мс. */
+    public long getCurrentLagMillis(MarketStream stream) {
+        StreamQueue streamQueue = queues.get(stream);
+        PendingCandle oldest = streamQueue == null ? null : streamQueue.queue.peek();
+        return oldest == null ? 0 : System.currentTimeMillis() - oldest.enqueuedAt;
+    }
+
+    /** Время от постановки первой свечи пачки в очередь до рассылки прогноза, мс. */
+    public long getLastCycleLagMillis(MarketStream stream) {
+        StreamQueue streamQueue = queues.get(stream);
+        return streamQueue == null ? 0 : streamQueue.lastCycleLagMillis;
+    }
+
+    public long getLastCycleDurationMillis(MarketStream stream) {
+        StreamQueue streamQueue = queues.get(stream);
+        return streamQueue == null ? 0 : streamQueue.lastCycleDurationMillis;
+    }
+
+    public long getCompletedCycles(MarketStream stream) {
+        StreamQueue streamQueue = queues.get(stream);
+        return streamQueue == null ? 0 : streamQueue.completedCycles.get();
+    }
+
+    public long getCoalescedCandles(MarketStream stream) {
+        StreamQueue streamQueue = queues.get(stream);
+        return streamQueue == null ? 0 : streamQueue.coalescedCandles.get();
+    }
+
+    private static final class StreamQueue {
+        private final StreamContext context;
+        private final Timer candleToBroadcast;
+        private final BlockingQueue<PendingCandle> queue = new LinkedBlockingQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong completedCycles = new AtomicLong();
+        private final AtomicLong coalescedCandles = new AtomicLong();
+        private volatile long lastCycleLagMillis = 0;
+        private volatile long lastCycleDurationMillis = 0;
+
+        private StreamQueue(StreamContext context, Timer candleToBroadcast) {
+            this.context = context;
+            this.candleToBroadcast = candleToBroadcast;
+        }
+    }
+
+    private static final class PendingCandle {
+        private final Candle candle;
+        private final long enqueuedAt;
+
+        private PendingCandle(Candle candle, long enqueuedAt) {
+            this.candle = candle;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.crypto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Walk-forward бэктест по сохранённой истории свечей. Свечи читаются из SQLite по времени,
+ * индикаторы пересчитываются тем же StreamingIndicators, что и в живом потоке, признаки
+ * строятся тем же FeatureMatrix, а модель обучается и прогнозирует через NeuralNetwork.
+ *
+ * История режется на окна: модель обучается на trainWindow свечах и прогнозирует следующие
+ * testWindow свечей, затем окно сдвигается на testWindow. Окна не зависят друг от друга
+ * (у каждого своя модель), поэтому все окна всех конфигураций выполняются параллельно в ForkJoinPool.
+ */
+public class WalkForwardBacktest {
+    private static final Logger log = LoggerFactory.getLogger(WalkForwardBacktest.class);
+
+    private final MarketStream stream;
+    private final FeatureMatrix history;
+    private final int parallelism;
+
+    public WalkForwardBacktest(MarketStream stream, FeatureMatrix history, int parallelism) {
+        this.stream = stream;
+        this.history = history;
+        this.parallelism = parallelism;
+    }
+
+    /** Параметры одного прогона: настройки обучения (тип модели, эпохи и т. д.) и размеры окон в свечах. */
+    public static class Config {
+        private final RuntimeSettings settings;
+        private final int trainWindow;
+        private final int testWindow;
+
+        public Config(CryptoProperties.Training training, int trainWindow, int testWindow) {
+            if (testWindow <= 0) {
+                throw new IllegalArgumentException("Invalid test window: " + testWindow);
+            }
+            // Окно обучения бэктеста и есть trainingPeriod модели
+            this.settings = new RuntimeSettings(training.withUpdates(Map.of("trainingPeriod", trainWindow)), trainWindow);
+            this.trainWindow = trainWindow;
+            this.testWindow = testWindow;
+        }
+
+        public String getModelType() {
+            return settings.get().getModelType();
+        }
+
+        public int getTrainWindow() {
+            return trainWindow;
+        }
+
+        public int getTestWindow() {
+            return testWindow;
+        }
+
+        @Override
+        public String toString() {
+            return getModelType() + " train=" + trainWindow + " test=" + testWindow;
+        }
+    }
+
+    /** Итог одного окна: суммы ошибок по прогнозам и время обучения/прогноза. */
+    public static class WindowResult {
+        private final long testFrom;
+        private final int predictions;
+        private final double absErrorSum;
+        private final double squaredErrorSum;
+        private final int correctDirections;
+        private final long trainNanos;
+        private final long predictNanos;
+
+        WindowResult(long testFrom, int predictions, double absErrorSum, double squaredErrorSum,
+                     int correctDirections, long trainNanos, long predictNanos) {
+            this.testFrom = testFrom;
+            this.predictions = predictions;
+            this.absErrorSum = absErrorSum;
+            this.squaredErrorSum = squaredErrorSum;
+            this.correctDirections = correctDirections;
+            this.trainNanos = trainNanos;
+            this.predictNanos = predictNanos;
+        }
+
+        public long getTestFrom() {
+            return testFrom;
+        }
+
+        public int getPredictions() {
+            return predictions;
+        }
+
+        public double getMae() {
+            return predictions == 0 ? 0.0 : absErrorSum / predictions;
+        }
+
+        public long getTrainMillis() {
+            return trainNanos / 1_000_000;
+        }
+    }
+
+    /** Итог конфигурации по всем окнам. */
+    public static class Result {
+        private final Config config;
+        private final List<WindowResult> windows;
+
+        Result(Config config, List<WindowResult> windows) {
+            this.config = config;
+            this.windows = windows;
+        }
+
+        public Config getConfig() {
+            return config;
+        }
+
+        public List<WindowResult> getWindows() {
+            return windows;
+        }
+
+        public int getPredictions() {
+            int total = 0;
+            for (WindowResult window : windows) {
+                total += window.predictions;
+            }
+            return total;
+        }
+
+        public double getMae() {
+            int count = getPredictions();
+            double sum = 0;
+            for (WindowResult window : windows) {
+                sum += window.absErrorSum;
+            }
+            return count == 0 ? 0.0 : sum / count;
+        }
+
+        public double getRmse() {
+            int count = getPredictions();
+            double sum = 0;
+            for (WindowResult window : windows) {
+                sum += window.squaredErrorSum;
+            }
+            return count == 0 ? 0.0 : Math.sqrt(sum / count);
+        }
+
+        /** Доля прогнозов, угадавших направление движения относительно предыдущего закрытия. */
+        public double getDirectionalAccuracy() {
+            int count = getPredictions();
+            int correct = 0;
+            for (WindowResult window : windows) {
+                correct += window.correctDirections;
+            }
+            return count == 0 ? 0.0 : (double) correct / count;
+        }
+
+        /** Среднее время полного обучения на шаг walk-forward. */
+        public double getTrainMillisPerStep() {
+            long sum = 0;
+            for (WindowResult window : windows) {
+                sum += window.trainNanos;
+            }
+            return windows.isEmpty() ? 0.0 : sum / 1e6 / windows.size();
+        }
+
+        /** Среднее время прогноза на свечу. */
+        public double getPredictMicrosPerCandle() {
+            int count = getPredictions();
+            long sum = 0;
+            for (WindowResult window : windows) {
+                sum += window.predictNanos;
+            }
+            return count == 0 ? 0.0 : sum / 1e3 / count;
+        }
+    }
+
+    /**
+     * Признаки свечей потока со временем в [from, to]: индикаторы пересчитываются по порядку,
+     * свечи прогрева (пока окна индикаторов не заполнены) отбрасываются.
+     */
+    public static FeatureMatrix loadHistory(DatabaseManager dbManager, MarketStream stream,
+                                            CryptoProperties.Indicators periods, long from, long to) {
+        List<Candle> candles = dbManager.getCandlesBetween(stream, from, to);
+        StreamingIndicators engine = new StreamingIndicators(periods);
+        long[] timestamps = new long[candles.size()];
+        List<double[]> rows = new ArrayList<>(candles.size());
+        long previous = 0;
+        for (Candle candle : candles) {
+            if (previous != 0 && candle.getTimestamp() - previous > stream.getTimeframeMillis()) {
+                log.info("Gap in candle history at {}, re-warming indicators.", candle.getTimestamp());
+                engine = new StreamingIndicators(periods);
+            }
+            previous = candle.getTimestamp();
+            double[] values = engine.update(candle.getHigh(), candle.getLow(), candle.getClose());
+            if (values == null) {
+                continue;
+            }
+            IndicatorRow row = new IndicatorRow(candle.getTimestamp(), values[0], values[1], values[2], values[3],
+                    values[4], values[5]);
+            timestamps[rows.size()] = candle.getTimestamp();
+            rows.add(FeatureMatrix.featureRow(candle, row));
+        }
+
+        return new FeatureMatrix(Arrays.copyOf(timestamps, rows.size()), rows.toArray(new double[0][]));
+    }
+
+    /** Прогоняет все конфигурации; результаты в порядке configs. */
+    public List<Result> run(List<Config> configs) throws InterruptedException {
+        List<Callable<WindowResult>> tasks = new ArrayList<>();
+        List<Integer> windowCounts = new ArrayList<>();
+        for (Config config : configs) {
+            int count = 0;
+            for (int testFrom = config.trainWindow; testFrom < history.size(); testFrom += config.testWindow) {
+                int trainFrom = testFrom - config.trainWindow;
+                int testTo = Math.min(testFrom + config.testWindow, history.size());
+                int from = testFrom;
+                tasks.add(() -> runWindow(config, trainFrom, from, testTo));
+                count++;
+            }
+            windowCounts.add(count);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<Future<WindowResult>> futures;
+        try {
+            futures = pool.invokeAll(tasks);
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Result> results = new ArrayList<>(configs.size());
+        int next = 0;
+        for (int c = 0; c < configs.size(); c++) {
+            List<WindowResult> windows = new ArrayList<>(windowCounts.get(c));
+            for (int w = 0; w < windowCounts.get(c); w++) {
+                try {
+                    WindowResult window = futures.get(next++).get();
+                    if (window != null) {
+                        windows.add(window);
+                    }
+                } catch (ExecutionException e) {
+                    log.error("Backtest window failed for {}", configs.get(c), e.getCause());
+                }
+            }
+            results.add(new Result(configs.get(c), windows));
+        }
+        return results;
+    }
+
+    /** Обучение на строках [trainFrom, testFrom) и прогноз целей [testFrom, testTo); null, если обучить не удалось. */
+    private WindowResult runWindow(Config config, int trainFrom, int testFrom, int testTo) {
+        NeuralNetwork network = NeuralNetwork.offline(stream, config.settings);
+
+        long trainStart = System.nanoTime();
+        boolean trained = network.trainOn(history.slice(trainFrom, testFrom));
+        long trainNanos = System.nanoTime() - trainStart;
+        if (!trained) {
+            return null;
+        }
+
+        long predictStart = System.nanoTime();
+        double[] predicted = network.predictTargets(history, testFrom, testTo);
+        long predictNanos = System.nanoTime() - predictStart;
+
+        double absErrorSum = 0;
+        double squaredErrorSum = 0;
+        int correctDirections = 0;
+        for (int i = 0; i < predicted.length; i++) {
+            double actual = history.getClose(testFrom + i);
+            double previousClose = history.getClose(testFrom + i - 1);
+            double error = predicted[i] - actual;
+            absErrorSum += Math.abs(error);
+            squaredErrorSum += error * error;
+            if (Math.signum(predicted[i] - previousClose) == Math.signum(actual - previousClose)) {
+                correctDirections++;
+            }
+        }
+        return new WindowResult(history.getTimestamp(testFrom), predicted.length, absErrorSum, squaredErrorSum,
+                correctDirections, trainNanos, predictNanos);
+    }
+}
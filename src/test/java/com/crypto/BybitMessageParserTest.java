@@ -0,0 +1,236 @@
+package com.crypto;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BybitMessageParser против прежнего разбора через org.json (BybitClient.onMessage до потокового
+ * парсера): на одном и том же сообщении оба должны выдать одни и те же события с побитово
+ * равными числами.
+ */
+class BybitMessageParserTest {
+    private static final MarketStream STREAM = new MarketStream("BTCUSDT", "5");
+
+    static final String KLINE_CONFIRMED = "{\"topic\":\"kline.5.BTCUSDT\",\"data\":[{\"start\":1700000000000," +
+            "\"end\":1700000299999,\"interval\":\"5\",\"open\":\"60000.5\",\"close\":\"60050.1\"," +
+            "\"high\":\"60100.9\",\"low\":\"59950.2\",\"volume\":\"123.456\",\"turnover\":\"7412345.67\"," +
+            "\"confirm\":true,\"timestamp\":1700000299999}],\"ts\":1700000299999,\"type\":\"snapshot\"}";
+    static final String LIQUIDATION = "{\"topic\":\"liquidation.BTCUSDT\",\"type\":\"snapshot\"," +
+            "\"ts\":1700000123456,\"data\":{\"updatedTime\":1700000123456,\"symbol\":\"BTCUSDT\"," +
+            "\"side\":\"Buy\",\"size\":\"0.015\",\"price\":\"60010.0\"}}";
+
+    private final BybitMessageParser parser = new BybitMessageParser(List.of(STREAM), Set.of("BTCUSDT"));
+
+    private sealed interface Event permits Kline, Liquidation {
+    }
+
+    private record Kline(MarketStream stream, long start, double open, double high, double low, double close,
+                         double volume) implements Event {
+    }
+
+    private record Liquidation(String symbol, long timestamp, String side, double size) implements Event {
+    }
+
+    @Test
+    void matchesOrgJsonOnConfirmedKline() {
+        assertSameEvents(KLINE_CONFIRMED, 1);
+    }
+
+    @Test
+    void matchesOrgJsonOnLiquidation() {
+        List<Event> events = assertSameEvents(LIQUIDATION, 1);
+        assertEquals(new Liquidation("BTCUSDT", 1700000123456L, "short", 0.015), events.get(0));
+        assertSameEvents(LIQUIDATION.replace("\"Buy\"", "\"Sell\""), 1);
+    }
+
+    @Test
+    void acceptsReorderedFieldsAndDataBeforeTopic() {
+        String kline = "{\"type\":\"snapshot\",\"data\":[{\"confirm\":true,\"volume\":\"1.5\",\"low\":\"9.5\"," +
+                "\"timestamp\":1700000299999,\"close\":\"10.25\",\"high\":\"11\",\"open\":\"10\"," +
+                "\"start\":\"1700000000000\"}],\"ts\":1700000299999,\"topic\":\"kline.5.BTCUSDT\"}";
+        assertEquals(List.of(new Kline(STREAM, 1700000000000L, 10, 11, 9.5, 10.25, 1.5)), assertSameEvents(kline, 1));
+
+        String liquidation = "{\"data\":{\"price\":\"60010.0\",\"size\":\"2\",\"side\":\"Sell\"}," +
+                "\"ts\":1700000123456,\"topic\":\"liquidation.BTCUSDT\"}";
+        assertEquals(List.of(new Liquidation("BTCUSDT", 1700000123456L, "long", 2)), assertSameEvents(liquidation, 1));
+    }
+
+    @Test
+    void handlesWhitespaceAndEscapedStrings() {
+        String kline = "{ \"topic\" : \"kline.5.BTCUSDT\" ,\n \"note\" : \"a \\\"quoted\\\" } ] \\\\ value\" ,\n" +
+                " \"data\" : [ { \"start\" : 1700000000000 , \"sym\\u0062ol\" : \"BTC\\\"USDT\" ," +
+                " \"open\" : \"1.5\" , \"high\" : \"2.5\" , \"low\" : \"0.5\" , \"close\" : \"2\" ," +
+                " \"volume\" : \"3\" , \"nested\" : {\"a\":[1,{\"b\":\"]}\"}]} , \"confirm\" : true } ] }";
+        assertSameEvents(kline, 1);
+
+        // Экранированные ключ и тема сравниваются после раскрытия, как в org.json
+        String escapedKeys = "{\"\\u0074opic\":\"kline.5.BTC\\u0055SDT\",\"data\":[{\"start\":1," +
+                "\"open\":\"1\",\"high\":\"1\",\"low\":\"1\",\"close\":\"1\",\"volume\":\"1\",\"confirm\":true}]}";
+        assertSameEvents(escapedKeys, 1);
+        String escapedSide = LIQUIDATION.replace("\"Buy\"", "\"B\\u0075y\"");
+        assertEquals("short", ((Liquidation) assertSameEvents(escapedSide, 1).get(0)).side());
+    }
+
+    @Test
+    void parsesExponentsAndLongMantissas() {
+        String[] values = {
+                "1e3", "1.5E-3", "-2.5e+2", "6.0221409e23", "1e-320", "0.000000000000000000000000001",
+                "9007199254740993", "9007199254740992.5", "123456789012345678901234567890",
+                "0.1234567890123456789", "-0.0", "0", "4.9e-324", "1.7976931348623157e308"
+        };
+        for (String value : values) {
+            List<Event> events = assertSameEvents(KLINE_CONFIRMED.replace("\"60050.1\"", "\"" + value + "\""), 1);
+            assertEquals(Double.parseDouble(value), ((Kline) events.get(0)).close(), value);
+        }
+    }
+
+    @Test
+    void matchesParseDoubleOnRandomDecimals() {
+        Random random = new Random(42);
+        for (int n = 0; n < 20_000; n++) {
+            String value = randomDecimal(random);
+            String message = KLINE_CONFIRMED.replace("\"60050.1\"", "\"" + value + "\"");
+            List<Event> events = parse(message);
+            assertEquals(1, events.size(), value);
+            // assertEquals(double, double) сравнивает через Double.compare, то есть побитово с учётом -0.0
+            assertEquals(Double.parseDouble(value), ((Kline) events.get(0)).close(), value);
+        }
+    }
+
+    @Test
+    void ignoresUnconfirmedAndEmptyKlines() {
+        assertSameEvents(KLINE_CONFIRMED.replace("\"confirm\":true", "\"confirm\":false"), 0);
+        assertSameEvents("{\"topic\":\"kline.5.BTCUSDT\",\"data\":[],\"ts\":1700000299999}", 0);
+        assertSameEvents("{\"topic\":\"kline.5.BTCUSDT\",\"data\":[ ],\"ts\":1700000299999}", 0);
+    }
+
+    @Test
+    void ignoresServiceMessagesAndUnknownTopics() {
+        assertFalse(parse("{\"success\":true,\"ret_msg\":\"pong\",\"conn_id\":\"abc\",\"op\":\"ping\"}", new ArrayList<>()));
+        assertFalse(parse("{\"success\":true,\"ret_msg\":\"\",\"op\":\"subscribe\",\"req_id\":null}", new ArrayList<>()));
+        assertFalse(parse("{}", new ArrayList<>()));
+        assertFalse(parse(KLINE_CONFIRMED.replace("kline.5.BTCUSDT", "kline.5.ETHUSDT"), new ArrayList<>()));
+        assertFalse(parse(KLINE_CONFIRMED.replace("kline.5.BTCUSDT", "kline.15.BTCUSDT"), new ArrayList<>()));
+        assertFalse(parse(LIQUIDATION.replace("liquidation.BTCUSDT", "liquidation.BTCUSDTX"), new ArrayList<>()));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        String[] malformed = {
+                "",
+                "pong",
+                "[]",
+                KLINE_CONFIRMED.substring(0, KLINE_CONFIRMED.length() / 2),
+                KLINE_CONFIRMED.substring(0, KLINE_CONFIRMED.length() - 1),
+                KLINE_CONFIRMED.replace("\"topic\":", "\"topic\""),
+                KLINE_CONFIRMED.replace("\"close\":\"60050.1\",", ""),
+                KLINE_CONFIRMED.replace("\"60050.1\"", "\"abc\""),
+                KLINE_CONFIRMED.replace("\"60050.1\"", "\"60050.1x\""),
+                KLINE_CONFIRMED.replace("\"60050.1\"", "\"1.2.3\""),
+                KLINE_CONFIRMED.replace("\"start\":1700000000000", "\"start\":\"\""),
+                KLINE_CONFIRMED.replace("\"confirm\":true", "\"confirm\":yes"),
+                LIQUIDATION.replace("\"size\":\"0.015\",", ""),
+                LIQUIDATION.replace("\"side\":\"Buy\",", ""),
+                "{\"topic\":\"liquidation.BTCUSDT\",\"data\":{\"side\":\"Buy\",\"size\":\"1\"",
+                "{\"\\u00zzopic\":\"x\"}",
+        };
+        for (String message : malformed) {
+            assertThrows(IllegalArgumentException.class, () -> parse(message, new ArrayList<>()), message);
+        }
+    }
+
+    @Test
+    void parserIsReusableAfterError() {
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"topic\":", new ArrayList<>()));
+        assertSameEvents(KLINE_CONFIRMED, 1);
+    }
+
+    /** Разбирает сообщение обоими способами, сравнивает события и проверяет их число. */
+    private List<Event> assertSameEvents(String message, int expectedCount) {
+        List<Event> expected = parseWithOrgJson(message);
+        List<Event> actual = parse(message);
+        assertEquals(expected, actual, message);
+        assertEquals(expectedCount, actual.size(), message);
+        return actual;
+    }
+
+    private List<Event> parse(String message) {
+        List<Event> events = new ArrayList<>();
+        boolean handled = parse(message, events);
+        assertEquals(!events.isEmpty(), handled, message);
+        return events;
+    }
+
+    private boolean parse(String message, List<Event> events) {
+        return parser.parse(message, new BybitMessageParser.Handler() {
+            @Override
+            public void onConfirmedKline(MarketStream stream, long start, double open, double high, double low,
+                                         double close, double volume) {
+                events.add(new Kline(stream, start, open, high, low, close, volume));
+            }
+
+            @Override
+            public void onLiquidation(String symbol, long timestamp, String side, double size) {
+                events.add(new Liquidation(symbol, timestamp, side, size));
+            }
+        });
+    }
+
+    /** Прежний разбор из BybitClient.onMessage. */
+    private static List<Event> parseWithOrgJson(String message) {
+        List<Event> events = new ArrayList<>();
+        JSONObject json = new JSONObject(message);
+        String topic = json.optString("topic", "");
+        if (topic.startsWith("liquidation.")) {
+            String symbol = topic.substring("liquidation.".length());
+            JSONObject data = json.getJSONObject("data");
+            String side = data.getString("side").equals("Buy") ? "short" : "long";
+            events.add(new Liquidation(symbol, json.getLong("ts"), side, data.getDouble("size")));
+        }
+        if (topic.startsWith("kline.")) {
+            String[] parts = topic.split("\\.");
+            MarketStream stream = new MarketStream(parts[2], parts[1]);
+            JSONArray dataArray = json.getJSONArray("data");
+            if (dataArray.length() > 0) {
+                JSONObject data = dataArray.getJSONObject(0);
+                if (data.getBoolean("confirm")) {
+                    events.add(new Kline(stream, data.getLong("start"), data.getDouble("open"),
+                            data.getDouble("high"), data.getDouble("low"), data.getDouble("close"),
+                            data.getDouble("volume")));
+                }
+            }
+        }
+        return events;
+    }
+
+    /** Десятичная запись вроде цен и объёмов Bybit: до 20 значащих цифр, иногда со знаком и экспонентой. */
+    private static String randomDecimal(Random random) {
+        StringBuilder value = new StringBuilder();
+        if (random.nextInt(10) == 0) {
+            value.append('-');
+        }
+        int digits = 1 + random.nextInt(20);
+        int point = random.nextInt(digits + 1);
+        for (int i = 0; i < digits; i++) {
+            if (i == point && i > 0) {
+                value.append('.');
+            }
+            value.append((char) ('0' + random.nextInt(10)));
+        }
+        if (random.nextInt(8) == 0) {
+            value.append('e').append(random.nextInt(61) - 30);
+        }
+        return value.toString();
+    }
+}
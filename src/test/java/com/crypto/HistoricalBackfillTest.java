@@ -0,0 +1,245 @@
+package com.crypto;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HistoricalBackfill против локального mock-сервера /v5/market/kline: страницы отдаются
+ * от новых к старым, как у Bybit, отдельные запросы сценарием отвечают 5xx или retCode != 0.
+ * Проверяется точный набор свечей, переданных в saveCandles.
+ */
+class HistoricalBackfillTest {
+    private static final MarketStream STREAM = new MarketStream("BTCUSDT", "1");
+    private static final long STEP = STREAM.getTimeframeMillis();
+    private static final long START = 1_700_000_000_000L / STEP * STEP;
+    private static final int PAGE_SIZE = 200;
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private String baseUrl;
+    private HttpClient client;
+    private DatabaseManager dbManager;
+    private final List<Candle> flushed = Collections.synchronizedList(new ArrayList<>());
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<>());
+    // Ответы по start страницы, которые отдаются раньше нормального: код HTTP или тело с retCode
+    private final Map<Long, Deque<String>> failures = new HashMap<>();
+
+    private record Request(long start, long end, long receivedNanos) {
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v5/market/kline", this::handle);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        client = HttpClient.newHttpClient();
+        dbManager = new DatabaseManager("jdbc:sqlite:" + tempDir.resolve("backfill.db")) {
+            @Override
+            public void saveCandles(MarketStream stream, List<Candle> candles) {
+                flushed.addAll(candles);
+            }
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        dbManager.close();
+    }
+
+    @Test
+    void loadsEveryCandleOnceAcrossPageBoundaries() {
+        long end = START + 700 * STEP;
+        HistoricalBackfill.Result result = backfill(4, 100, 0, 250).load(STREAM, START, end);
+
+        assertEquals(700, result.getLoaded());
+        assertTrue(result.getFailedRanges().isEmpty());
+        assertEquals(timestamps(START, end), flushedTimestamps());
+        // Страницы примыкают друг к другу: end включительный, следующая начинается со следующей свечи
+        List<Request> pages = new ArrayList<>(requests);
+        pages.sort((a, b) -> Long.compare(a.start, b.start));
+        assertEquals(4, pages.size());
+        assertEquals(START, pages.get(0).start);
+        for (int i = 0; i < pages.size(); i++) {
+            Request page = pages.get(i);
+            assertTrue(page.end - page.start < PAGE_SIZE * STEP, "page " + i + " spans more than " + PAGE_SIZE);
+            long nextStart = i + 1 < pages.size() ? pages.get(i + 1).start : end;
+            assertEquals(nextStart - 1, page.end);
+        }
+    }
+
+    @Test
+    void retriesPagesAfterHttpErrorAndRateLimitCode() {
+        long end = START + 4 * PAGE_SIZE * STEP;
+        long secondPage = START + PAGE_SIZE * STEP;
+        long thirdPage = START + 2 * PAGE_SIZE * STEP;
+        failures.put(secondPage, new ArrayDeque<>(List.of("503")));
+        failures.put(thirdPage, new ArrayDeque<>(List.of(
+                "{\"retCode\":10006,\"retMsg\":\"Too many visits!\",\"result\":{}}")));
+
+        HistoricalBackfill.Result result = backfill(4, 100, 2, 1000).load(STREAM, START, end);
+
+        assertEquals(4 * PAGE_SIZE, result.getLoaded());
+        assertTrue(result.getFailedRanges().isEmpty());
+        assertEquals(timestamps(START, end), flushedTimestamps());
+        assertEquals(2, requestsFor(secondPage).size());
+        assertEquals(2, requestsFor(thirdPage).size());
+        assertEquals(1, requestsFor(START).size());
+        // Первый повтор ждёт RETRY_BACKOFF_MS
+        List<Request> retried = requestsFor(secondPage);
+        assertTrue(retried.get(1).receivedNanos - retried.get(0).receivedNanos >= TimeUnit.MILLISECONDS.toNanos(450));
+    }
+
+    @Test
+    void reportsPageWhenRetriesAreExhausted() {
+        long end = START + 3 * PAGE_SIZE * STEP;
+        long secondPage = START + PAGE_SIZE * STEP;
+        long thirdPage = secondPage + PAGE_SIZE * STEP;
+        failures.put(secondPage, new ArrayDeque<>(List.of("500", "500", "500")));
+        HistoricalBackfill backfill = backfill(4, 100, 1, 1000);
+
+        HistoricalBackfill.Result result = backfill.load(STREAM, START, end);
+
+        assertEquals(2 * PAGE_SIZE, result.getLoaded());
+        List<Long> expected = timestamps(START, secondPage);
+        expected.addAll(timestamps(thirdPage, end));
+        assertEquals(expected, flushedTimestamps());
+        assertEquals(2, requestsFor(secondPage).size());
+        assertEquals(1, result.getFailedRanges().size());
+        HistoricalBackfill.Range failed = result.getFailedRanges().get(0);
+        assertEquals(secondPage, failed.getStart());
+        assertEquals(thirdPage, failed.getEnd());
+
+        // Повторная загрузка возвращённого диапазона закрывает дыру
+        HistoricalBackfill.Result reloaded = backfill.load(STREAM, failed.getStart(), failed.getEnd());
+        assertEquals(PAGE_SIZE, reloaded.getLoaded());
+        assertTrue(reloaded.getFailedRanges().isEmpty());
+        assertEquals(timestamps(START, end), flushedTimestamps());
+    }
+
+    @Test
+    void spacesRequestsByRateLimit() {
+        long end = START + 5 * PAGE_SIZE * STEP;
+        backfill(5, 10, 0, 1000).load(STREAM, START, end);
+
+        List<Long> received = new ArrayList<>();
+        for (Request request : requests) {
+            received.add(request.receivedNanos);
+        }
+        Collections.sort(received);
+        assertEquals(5, received.size());
+        // 10 запросов в секунду: старты разнесены на 100 мс, допуск на задержку доставки
+        long span = received.get(received.size() - 1) - received.get(0);
+        assertTrue(span >= TimeUnit.MILLISECONDS.toNanos(350), "requests spanned only " + span / 1_000_000 + " ms");
+    }
+
+    private HistoricalBackfill backfill(int maxInFlight, int requestsPerSecond, int maxRetries, int flushSize) {
+        return new HistoricalBackfill(client, baseUrl, dbManager, maxInFlight, requestsPerSecond, maxRetries,
+                flushSize);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        for (String pair : exchange.getRequestURI().getQuery().split("&")) {
+            String[] parts = pair.split("=", 2);
+            query.put(parts[0], parts[1]);
+        }
+        long start = Long.parseLong(query.get("start"));
+        long end = Long.parseLong(query.get("end"));
+        requests.add(new Request(start, end, System.nanoTime()));
+
+        String failure;
+        synchronized (failures) {
+            Deque<String> scripted = failures.get(start);
+            failure = scripted == null ? null : scripted.poll();
+        }
+        if (failure != null && !failure.startsWith("{")) {
+            exchange.sendResponseHeaders(Integer.parseInt(failure), -1);
+            exchange.close();
+            return;
+        }
+        respond(exchange, failure != null ? failure : page(start, end));
+    }
+
+    /** Свечи [start, end] от новых к старым и по одной свече за каждой границей — их загрузчик отбрасывает. */
+    private static String page(long start, long end) {
+        StringBuilder list = new StringBuilder();
+        for (long timestamp = end / STEP * STEP + STEP; timestamp >= start - STEP; timestamp -= STEP) {
+            if (list.length() > 0) list.append(',');
+            double close = timestamp / STEP;
+            list.append("[\"").append(timestamp).append("\",\"").append(close - 1).append("\",\"")
+                    .append(close + 2).append("\",\"").append(close - 2).append("\",\"").append(close)
+                    .append("\",\"10.5\",\"100\"]");
+        }
+        return "{\"retCode\":0,\"retMsg\":\"OK\",\"result\":{\"category\":\"linear\",\"list\":[" + list + "]}}";
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private List<Request> requestsFor(long pageStart) {
+        List<Request> matching = new ArrayList<>();
+        synchronized (requests) {
+            for (Request request : requests) {
+                if (request.start == pageStart) matching.add(request);
+            }
+        }
+        matching.sort((a, b) -> Long.compare(a.receivedNanos, b.receivedNanos));
+        return matching;
+    }
+
+    /** Времена сохранённых свечей по возрастанию; заодно проверяет цены свечей. */
+    private List<Long> flushedTimestamps() {
+        List<Long> timestamps = new ArrayList<>();
+        synchronized (flushed) {
+            for (Candle candle : flushed) {
+                assertEquals(candle.getTimestamp() / STEP, candle.getClose(), 0.0);
+                assertEquals(10.5, candle.getVolume(), 0.0);
+                timestamps.add(candle.getTimestamp());
+            }
+        }
+        Collections.sort(timestamps);
+        return timestamps;
+    }
+
+    private static List<Long> timestamps(long from, long to) {
+        List<Long> timestamps = new ArrayList<>();
+        for (long timestamp = from; timestamp < to; timestamp += STEP) {
+            timestamps.add(timestamp);
+        }
+        return timestamps;
+    }
+}
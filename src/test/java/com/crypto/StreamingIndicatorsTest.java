@@ -0,0 +1,317 @@
+package com.crypto;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * StreamingIndicators и Indicators.update против наивного пересчёта каждого индикатора
+ * по полному окну для каждой свечи (O(n²), без общих с реализацией структур).
+ */
+class StreamingIndicatorsTest {
+    private static final double TOLERANCE = 1e-8;
+    private static final MarketStream STREAM = new MarketStream("BTCUSDT", "5");
+    private static final long STEP = STREAM.getTimeframeMillis();
+    private static final long START = 1_700_000_000_000L / STEP * STEP;
+
+    @TempDir
+    Path tempDir;
+
+    private DatabaseManager dbManager;
+
+    @AfterEach
+    void tearDown() {
+        if (dbManager != null) {
+            dbManager.close();
+        }
+    }
+
+    /** Периоды индикаторов: sma, rsi, stochK, stochK-сглаживание, stochD, stochRsi, stochRsiK, stochRsiD. */
+    private record Periods(int sma, int rsi, int stochasticK, int stochasticKSmoothing, int stochasticD,
+                           int stochRsi, int stochRsiK, int stochRsiD) {
+        StreamingIndicators newEngine() {
+            return new StreamingIndicators(sma, rsi, stochasticK, stochasticKSmoothing, stochasticD,
+                    stochRsi, stochRsiK, stochRsiD);
+        }
+
+        CryptoProperties.Indicators toProperties() {
+            CryptoProperties.Indicators properties = new CryptoProperties.Indicators();
+            properties.setSmaPeriod(sma);
+            properties.setRsiPeriod(rsi);
+            properties.setStochasticKPeriod(stochasticK);
+            properties.setStochasticKSmoothing(stochasticKSmoothing);
+            properties.setStochasticDSmoothing(stochasticD);
+            properties.setStochRsiPeriod(stochRsi);
+            properties.setStochRsiKSmoothing(stochRsiK);
+            properties.setStochRsiDSmoothing(stochRsiD);
+            return properties;
+        }
+    }
+
+    private static final Periods DEFAULT = new Periods(14, 14, 14, 3, 3, 14, 3, 3);
+    private static final Periods UNEVEN = new Periods(5, 7, 9, 2, 4, 6, 3, 2);
+
+    @Test
+    void matchesFullWindowRecomputeWithDefaultPeriods() {
+        assertMatchesNaive(DEFAULT, series(1000, 11));
+    }
+
+    @Test
+    void matchesFullWindowRecomputeWithUnevenPeriods() {
+        assertMatchesNaive(UNEVEN, series(600, 12));
+    }
+
+    @Test
+    void matchesOnSingleCandlePeriods() {
+        assertMatchesNaive(new Periods(1, 1, 1, 1, 1, 1, 1, 1), series(200, 13));
+    }
+
+    @Test
+    void incrementalUpdatesMatchRecomputeSinceWarmUp() {
+        List<Candle> candles = series(400, 21);
+        CandleBuffer buffer = new CandleBuffer(300);
+        buffer.load(candles.subList(0, 250));
+        Indicators indicators = newIndicators(buffer, DEFAULT);
+        indicators.calculateAndSaveIndicators();
+
+        // Буфер вытесняет старые свечи, но RSI Уайлдера помнит весь ряд с момента прогрева,
+        // поэтому эталон — пересчёт по всем свечам, начиная с тех, на которых прогревались
+        for (int i = 250; i < candles.size(); i++) {
+            buffer.append(candles.get(i));
+            IndicatorRow row = indicators.update(candles.get(i));
+            assertRowMatches(DEFAULT, candles.subList(0, i + 1), row);
+        }
+    }
+
+    @Test
+    void rewarmsOverBufferAfterGap() {
+        List<Candle> candles = series(300, 31);
+        CandleBuffer buffer = new CandleBuffer(200);
+        int[] batches = {0};
+        dbManager = new DatabaseManager("jdbc:sqlite:" + tempDir.resolve("indicators.db")) {
+            @Override
+            public void saveIndicatorsBatch(MarketStream stream, List<IndicatorRow> rows) {
+                batches[0]++;
+            }
+
+            @Override
+            public void saveIndicators(MarketStream stream, long timestamp, double sma, double rsi,
+                                       double stochasticK, double stochasticD, double stochRsiK, double stochRsiD) {
+            }
+        };
+        Indicators indicators = new Indicators(STREAM, dbManager, buffer, DEFAULT.toProperties(), PipelineMetrics.noop());
+        buffer.load(candles.subList(0, 150));
+        indicators.calculateAndSaveIndicators();
+        assertEquals(1, batches[0]);
+
+        // Пропущенная свеча: следующая приходит через два интервала
+        for (Candle candle : candles.subList(151, 170)) {
+            Candle shifted = shift(candle, STEP);
+            buffer.append(shifted);
+            IndicatorRow row = indicators.update(shifted);
+            assertRowMatches(DEFAULT, bufferCandles(buffer), row);
+        }
+        // Прогрев после разрыва — один полный пересчёт, дальше снова инкрементально
+        assertEquals(2, batches[0]);
+
+        // Индикаторы в колонках буфера — те же, что даёт пересчёт с нуля по его содержимому
+        List<Candle> contents = bufferCandles(buffer);
+        CandleBuffer.View view = buffer.view(buffer.capacity());
+        for (int i = 0; i < contents.size(); i++) {
+            double[] expected = naive(DEFAULT, contents, i);
+            if (expected != null) {
+                assertArrayEquals(expected, new double[]{view.getSma(i), view.getRsi(i), view.getStochasticK(i),
+                        view.getStochasticD(i), view.getStochRsiK(i), view.getStochRsiD(i)}, TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    void duplicateCandleReturnsLastRowWithoutAdvancing() {
+        List<Candle> candles = series(120, 41);
+        CandleBuffer buffer = new CandleBuffer(200);
+        buffer.load(candles.subList(0, 100));
+        Indicators indicators = newIndicators(buffer, DEFAULT);
+        indicators.calculateAndSaveIndicators();
+
+        Candle next = candles.get(100);
+        buffer.append(next);
+        IndicatorRow row = indicators.update(next);
+        assertRowMatches(DEFAULT, bufferCandles(buffer), row);
+        // Повтор той же свечи не сдвигает состояние: значения те же, следующая свеча снова совпадает с пересчётом
+        assertRowMatches(DEFAULT, bufferCandles(buffer), indicators.update(next));
+        Candle after = candles.get(101);
+        buffer.append(after);
+        assertRowMatches(DEFAULT, bufferCandles(buffer), indicators.update(after));
+    }
+
+    private Indicators newIndicators(CandleBuffer buffer, Periods periods) {
+        dbManager = new DatabaseManager("jdbc:sqlite:" + tempDir.resolve("indicators.db"));
+        return new Indicators(STREAM, dbManager, buffer, periods.toProperties(), PipelineMetrics.noop());
+    }
+
+    private static void assertMatchesNaive(Periods periods, List<Candle> candles) {
+        StreamingIndicators engine = periods.newEngine();
+        for (int i = 0; i < candles.size(); i++) {
+            Candle candle = candles.get(i);
+            double[] actual = engine.update(candle.getHigh(), candle.getLow(), candle.getClose());
+            double[] expected = naive(periods, candles, i);
+            if (expected == null) {
+                assertNull(actual, "candle " + i);
+            } else {
+                assertNotNull(actual, "candle " + i);
+                assertArrayEquals(expected, actual, TOLERANCE, "candle " + i);
+            }
+        }
+    }
+
+    /** Строка последней свечи против наивного пересчёта по всем candles. */
+    private static void assertRowMatches(Periods periods, List<Candle> candles, IndicatorRow row) {
+        double[] expected = naive(periods, candles, candles.size() - 1);
+        if (expected == null) {
+            assertNull(row);
+            return;
+        }
+        assertNotNull(row);
+        assertEquals(candles.get(candles.size() - 1).getTimestamp(), row.getTimestamp());
+        assertArrayEquals(expected, new double[]{row.getSma(), row.getRsi(), row.getStochasticK(),
+                row.getStochasticD(), row.getStochRsiK(), row.getStochRsiD()}, TOLERANCE);
+    }
+
+    /** {sma, rsi, stochK, stochD, stochRsiK, stochRsiD} свечи i по свечам [0, i], null — пока не все определены. */
+    private static double[] naive(Periods p, List<Candle> candles, int i) {
+        double sma = mean(i, p.sma, t -> candles.get(t).getClose());
+        double stochasticD = mean(i, p.stochasticD,
+                t -> mean(t, p.stochasticKSmoothing, u -> rawStochastic(candles, u, p.stochasticK)));
+        double stochasticK = mean(i, p.stochasticKSmoothing, t -> rawStochastic(candles, t, p.stochasticK));
+        double rsi = rsi(candles, i, p.rsi);
+        double stochRsiD = mean(i, p.stochRsiD,
+                t -> mean(t, p.stochRsiK, u -> rawStochRsi(candles, u, p.rsi, p.stochRsi)));
+        double stochRsiK = mean(i, p.stochRsiK, t -> rawStochRsi(candles, t, p.rsi, p.stochRsi));
+        double[] values = {sma, rsi, stochasticK, stochasticD, stochRsiK, stochRsiD};
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                return null;
+            }
+        }
+        return values;
+    }
+
+    private interface Series {
+        double at(int index);
+    }
+
+    /** Среднее значений в [i - period + 1, i]; NaN, если окно не помещается или значение не определено. */
+    private static double mean(int i, int period, Series series) {
+        if (i - period + 1 < 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (int t = i - period + 1; t <= i; t++) {
+            sum += series.at(t);
+        }
+        return sum / period;
+    }
+
+    private static double rawStochastic(List<Candle> candles, int t, int period) {
+        if (t - period + 1 < 0) {
+            return Double.NaN;
+        }
+        double lowest = Double.MAX_VALUE;
+        double highest = -Double.MAX_VALUE;
+        for (int u = t - period + 1; u <= t; u++) {
+            lowest = Math.min(lowest, candles.get(u).getLow());
+            highest = Math.max(highest, candles.get(u).getHigh());
+        }
+        return percent(candles.get(t).getClose(), lowest, highest);
+    }
+
+    private static double rawStochRsi(List<Candle> candles, int t, int rsiPeriod, int period) {
+        if (t - period + 1 < rsiPeriod) {
+            return Double.NaN;
+        }
+        double lowest = Double.MAX_VALUE;
+        double highest = -Double.MAX_VALUE;
+        for (int u = t - period + 1; u <= t; u++) {
+            double value = rsi(candles, u, rsiPeriod);
+            lowest = Math.min(lowest, value);
+            highest = Math.max(highest, value);
+        }
+        return percent(rsi(candles, t, rsiPeriod), lowest, highest);
+    }
+
+    private static double percent(double value, double lowest, double highest) {
+        return highest != lowest ? (value - lowest) / (highest - lowest) * 100 : 50;
+    }
+
+    /** RSI Уайлдера свечи i заново от начала ряда: среднее первых period изменений, затем сглаживание. */
+    private static double rsi(List<Candle> candles, int i, int period) {
+        if (i < period) {
+            return Double.NaN;
+        }
+        double gains = 0;
+        double losses = 0;
+        for (int t = 1; t <= period; t++) {
+            double change = candles.get(t).getClose() - candles.get(t - 1).getClose();
+            gains += Math.max(change, 0);
+            losses += Math.max(-change, 0);
+        }
+        double avgGain = gains / period;
+        double avgLoss = losses / period;
+        for (int t = period + 1; t <= i; t++) {
+            double change = candles.get(t).getClose() - candles.get(t - 1).getClose();
+            avgGain = (avgGain * (period - 1) + Math.max(change, 0)) / period;
+            avgLoss = (avgLoss * (period - 1) + Math.max(-change, 0)) / period;
+        }
+        return avgLoss == 0 ? 100 : 100 - 100 / (1 + avgGain / avgLoss);
+    }
+
+    /**
+     * Случайное блуждание с участками, на которых стохастики вырождаются: сначала только рост
+     * (RSI = 100), затем плоский участок (high = low, диапазон нулевой).
+     */
+    private static List<Candle> series(int count, long seed) {
+        Random random = new Random(seed);
+        List<Candle> candles = new ArrayList<>(count);
+        double close = 100;
+        for (int i = 0; i < count; i++) {
+            double open = close;
+            if (i < 30) {
+                close += 0.5 + random.nextDouble();
+            } else if (i >= 60 && i < 100) {
+                close = open;
+            } else {
+                close = Math.max(1, close + random.nextGaussian() * 2);
+            }
+            boolean flat = i >= 60 && i < 100;
+            double high = flat ? close : Math.max(open, close) + random.nextDouble();
+            double low = flat ? close : Math.min(open, close) - random.nextDouble();
+            candles.add(new Candle(START + i * STEP, open, high, low, close, 1 + random.nextDouble() * 10));
+        }
+        return candles;
+    }
+
+    private static Candle shift(Candle candle, long offset) {
+        return new Candle(candle.getTimestamp() + offset, candle.getOpen(), candle.getHigh(), candle.getLow(),
+                candle.getClose(), candle.getVolume());
+    }
+
+    private static List<Candle> bufferCandles(CandleBuffer buffer) {
+        CandleBuffer.View view = buffer.view(buffer.capacity());
+        List<Candle> candles = new ArrayList<>(view.size());
+        for (int i = 0; i < view.size(); i++) {
+            candles.add(view.getCandle(i));
+        }
+        return candles;
+    }
+}